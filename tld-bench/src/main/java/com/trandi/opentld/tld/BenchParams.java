@@ -0,0 +1,49 @@
+/**
+ * Copyright 2013 Dan Oprescu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trandi.opentld.tld;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+/**
+ * The parameters the app ships with (tld-main/res/raw/parameters.properties, copied on the classpath by the build)
+ */
+final class BenchParams {
+	private BenchParams(){
+	}
+	
+	static Properties load(){
+		final InputStream in = BenchParams.class.getResourceAsStream("/parameters.properties");
+		if(in == null){
+			throw new IllegalStateException("parameters.properties NOT found on the classpath");
+		}
+		try{
+			final Properties result = new Properties();
+			result.load(in);
+			return result;
+		}catch(IOException e){
+			throw new IllegalStateException("Can't read parameters.properties", e);
+		}finally{
+			try{
+				in.close();
+			}catch(IOException e){
+				// nothing we can do
+			}
+		}
+	}
+}
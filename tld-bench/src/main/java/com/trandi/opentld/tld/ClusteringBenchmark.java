@@ -0,0 +1,74 @@
+/**
+ * Copyright 2013 Dan Oprescu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trandi.opentld.tld;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Clustering of the NN confident detections, as in Tld.clusterConfidentIndices()
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ClusteringBenchmark {
+	@Param({"10", "100", "1000"})
+	public int detections;
+	
+	private final DetectionClusterer _clusterer = new DetectionClusterer();
+	private int[] _x, _y, _width, _height, _labels;
+	
+	@Setup
+	public void setUp(){
+		// a few objects, each detected several times at slightly different positions and scales
+		final Random rnd = new Random(42);
+		_x = new int[detections];
+		_y = new int[detections];
+		_width = new int[detections];
+		_height = new int[detections];
+		_labels = new int[detections];
+		final int objects = Math.max(1, detections / 10);
+		for(int i = 0; i < detections; i++){
+			final int object = rnd.nextInt(objects);
+			final int size = 40 + object % 5 * 10;
+			_x[i] = object * 37 % 600 + rnd.nextInt(8);
+			_y[i] = object * 53 % 440 + rnd.nextInt(8);
+			_width[i] = size + rnd.nextInt(6);
+			_height[i] = size + rnd.nextInt(6);
+		}
+	}
+	
+	@Benchmark
+	public int cluster(){
+		return _clusterer.cluster(_x, _y, _width, _height, detections, _labels);
+	}
+}
@@ -0,0 +1,131 @@
+/**
+ * Copyright 2013 Dan Oprescu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trandi.opentld.tld;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.trandi.opentld.tld.Util.Pair;
+
+/**
+ * The first 2 stages of the detection cascade, over ALL the boxes of the grid, i.e. 1 full scan of a frame.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class DetectionBenchmark {
+	@Param({"320x240", "640x480", "1280x720"})
+	public String resolution;
+	
+	private Grid _grid;
+	private int[] _iisum;
+	private double[] _iisqsum;
+	private int _iiCols;
+	private byte[] _frameData;
+	private int _cols;
+	private FernEnsembleClassifier _classifier;
+	private int[] _fernCodes;
+	
+	@Setup
+	public void setUp(){
+		SyntheticFrames.loadOpenCV();
+		final Size size = SyntheticFrames.parseResolution(resolution);
+		final Mat frame = SyntheticFrames.frame(size, 42);
+		final Rect trackedBox = SyntheticFrames.trackedBox(size);
+		_grid = new Grid(frame, trackedBox, 15);
+		_grid.updateGoodBadBoxes(trackedBox, 10);
+		
+		// same as FrameContext.updateIntegralImgs()
+		final Mat sum = new Mat(), sqsum = new Mat();
+		Imgproc.integral2(frame, sum, sqsum);
+		_iiCols = frame.cols();
+		_iisum = Arrays.copyOf(Util.getIntArray(sum), frame.rows() * _iiCols);
+		_iisqsum = Arrays.copyOf(Util.getDoubleArray(sqsum), frame.rows() * _iiCols);
+		
+		_frameData = Util.getByteArray(frame, null);
+		_cols = frame.cols();
+		_classifier = new FernEnsembleClassifier(BenchParams.load());
+		_classifier.init(_grid.getTrackedBoxScales(), SyntheticFrames.rng(42));
+		_classifier.prepareFrame(_cols);
+		_fernCodes = new int[_grid.getSize() * _classifier.getNumFerns()];
+		
+		// trained as in Tld.init(), so that the posteriors aren't all 0
+		final List<Pair<int[], Boolean>> ferns = new ArrayList<Pair<int[], Boolean>>();
+		for(BoundingBox box : _grid.getGoodBoxes()){
+			ferns.add(new Pair<int[], Boolean>(fernCodes(box), true));
+		}
+		for(BoundingBox box : _grid.getBadBoxes()){
+			ferns.add(new Pair<int[], Boolean>(fernCodes(box), false));
+		}
+		_classifier.trainF(ferns, 2);
+		fernHashCodes();
+	}
+	
+	private int[] fernCodes(final BoundingBox box){
+		return _classifier.getAllFernsHashCodesInFrame(_frameData, box.y * _cols + box.x, box.scaleIdx, new int[_classifier.getNumFerns()], 0);
+	}
+	
+	@Benchmark
+	public double variance(){
+		final Grid grid = _grid;
+		double result = 0;
+		for(int i = 0; i < grid.getSize(); i++){
+			result += Util.getVar(grid.x[i], grid.y[i], grid.w[i], grid.h[i], _iisum, _iisqsum, _iiCols);
+		}
+		return result;
+	}
+	
+	@Benchmark
+	public int[] fernHashCodes(){
+		final Grid grid = _grid;
+		final int numFerns = _classifier.getNumFerns();
+		for(int i = 0; i < grid.getSize(); i++){
+			_classifier.getAllFernsHashCodesInFrame(_frameData, grid.y[i] * _cols + grid.x[i], grid.scale[i], _fernCodes, i * numFerns);
+		}
+		return _fernCodes;
+	}
+	
+	@Benchmark
+	public void averagePosterior(Blackhole blackhole){
+		final int numFerns = _classifier.getNumFerns();
+		for(int i = 0; i < _grid.getSize(); i++){
+			blackhole.consume(_classifier.averagePosterior(_fernCodes, i * numFerns));
+		}
+	}
+}
@@ -0,0 +1,74 @@
+/**
+ * Copyright 2013 Dan Oprescu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trandi.opentld.tld;
+
+import java.util.concurrent.TimeUnit;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.Size;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The grid of boxes, built once per init() and its good / bad boxes updated at each learning
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class GridBenchmark {
+	@Param({"320x240", "640x480", "1280x720"})
+	public String resolution;
+	
+	private Mat _frame;
+	private Rect _trackedBox;
+	private Rect _movedBox;
+	private Grid _grid;
+	
+	@Setup
+	public void setUp(){
+		SyntheticFrames.loadOpenCV();
+		final Size size = SyntheticFrames.parseResolution(resolution);
+		_frame = SyntheticFrames.frame(size, 42);
+		_trackedBox = SyntheticFrames.trackedBox(size);
+		_movedBox = new Rect(_trackedBox.x + 7, _trackedBox.y - 5, _trackedBox.width + 4, _trackedBox.height + 3);
+		_grid = new Grid(_frame, _trackedBox, 15);
+	}
+	
+	@Benchmark
+	public Grid construct(){
+		return new Grid(_frame, _trackedBox, 15);
+	}
+	
+	@Benchmark
+	public Grid updateGoodBadBoxes(){
+		_grid.updateGoodBadBoxes(_movedBox, 10);
+		return _grid;
+	}
+}
@@ -0,0 +1,71 @@
+/**
+ * Copyright 2013 Dan Oprescu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trandi.opentld.tld;
+
+import java.util.concurrent.TimeUnit;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.Size;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Forward-backward Lucas Kanade tracking of the tracked box points between 2 frames, as in Tld.track()
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class LKTrackerBenchmark {
+	@Param({"320x240", "640x480", "1280x720"})
+	public String resolution;
+	
+	private LKTracker _tracker;
+	private Mat _lastFrame;
+	private Mat _currentFrame;
+	private final PointBuffer _lastPoints = new PointBuffer();
+	private final PointBuffer _resultLast = new PointBuffer();
+	private final PointBuffer _resultCurrent = new PointBuffer();
+	
+	@Setup
+	public void setUp(){
+		SyntheticFrames.loadOpenCV();
+		_tracker = new LKTracker();
+		final Size size = SyntheticFrames.parseResolution(resolution);
+		_lastFrame = SyntheticFrames.frame(size, 42);
+		_currentFrame = SyntheticFrames.shifted(_lastFrame, 3.5, -2.25);
+		final Rect box = SyntheticFrames.trackedBox(size);
+		new BoundingBox(box.x, box.y, box.width, box.height, 0, 0).points(_lastPoints);
+	}
+	
+	@Benchmark
+	public boolean track(){
+		return _tracker.track(_lastFrame, _currentFrame, _lastPoints, _resultLast, _resultCurrent);
+	}
+}
@@ -0,0 +1,96 @@
+/**
+ * Copyright 2013 Dan Oprescu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trandi.opentld.tld;
+
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.trandi.opentld.tld.Util.NNConfStruct;
+
+/**
+ * Scoring of the detected candidates against all the positive and negative examples, as in Tld.detect()
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class NNClassifierBenchmark {
+	@Param({"10", "100", "1000"})
+	public int examples;		// positive AND negative
+	@Param({"1", "100"})
+	public int candidates;		// 1 is the tracked box, 100 is Tld.MAX_DETECTED
+	
+	private NNClassifier _classifier;
+	private float[] _candidates;
+	
+	@Setup
+	public void setUp(){
+		final Properties props = BenchParams.load();
+		// unbounded, so that the examples count is the one asked for
+		props.setProperty("nn_max_positive_examples", "0");
+		props.setProperty("nn_max_negative_examples", "0");
+		_classifier = new NNClassifier(props);
+		
+		final Random rnd = new Random(42);
+		final int patchSize = Integer.parseInt(props.getProperty("patch_size"));
+		final int dim = patchSize * patchSize;
+		for(int i = 0; i < examples; i++){
+			_classifier.pExamples.add(randomPatterns(rnd, 1, dim), 0, dim);
+			_classifier.nExamples.add(randomPatterns(rnd, 1, dim), 0, dim);
+		}
+		_candidates = randomPatterns(rnd, candidates, dim);
+	}
+	
+	/**
+	 * @return zero mean patterns, as produced by Tld.resizeZeroMeanStdev()
+	 */
+	private static float[] randomPatterns(final Random rnd, final int count, final int dim){
+		final float[] result = new float[count * dim];
+		for(int c = 0; c < count; c++){
+			float mean = 0;
+			for(int i = 0; i < dim; i++){
+				result[c * dim + i] = rnd.nextInt(256);
+				mean += result[c * dim + i];
+			}
+			mean /= dim;
+			for(int i = 0; i < dim; i++){
+				result[c * dim + i] -= mean;
+			}
+		}
+		return result;
+	}
+	
+	@Benchmark
+	public NNConfStruct[] nnConf(){
+		return _classifier.nnConf(_candidates, candidates);
+	}
+}
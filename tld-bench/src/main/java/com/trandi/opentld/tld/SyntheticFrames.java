@@ -0,0 +1,118 @@
+/**
+ * Copyright 2013 Dan Oprescu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trandi.opentld.tld;
+
+import java.util.Random;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import com.trandi.opentld.tld.Util.RNG;
+
+/**
+ * Reproducible frames and helpers shared by the benchmarks
+ */
+final class SyntheticFrames {
+	private static boolean _openCVLoaded;
+	
+	private SyntheticFrames(){
+	}
+	
+	/**
+	 * Loads the native OpenCV bundled with the openpnp jar, once per JVM (JMH forks a new one per benchmark)
+	 */
+	static synchronized void loadOpenCV(){
+		if(!_openCVLoaded){
+			nu.pattern.OpenCV.loadLocally();
+			_openCVLoaded = true;
+		}
+	}
+	
+	/**
+	 * @param resolution WIDTHxHEIGHT, e.g. 640x480
+	 */
+	static Size parseResolution(String resolution){
+		final String[] parts = resolution.split("x");
+		if(parts.length != 2){
+			throw new IllegalArgumentException("Expected resolution WIDTHxHEIGHT, got: " + resolution);
+		}
+		return new Size(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]));
+	}
+	
+	/**
+	 * Grey level frame with some texture (blurred noise) and a few high contrast rectangles, so that the 
+	 * variance filter and the ferns behave like on a real frame rather than on a flat or pure noise image.
+	 */
+	static Mat frame(final Size size, final long seed){
+		final int cols = (int)size.width;
+		final int rows = (int)size.height;
+		final Random rnd = new Random(seed);
+		final byte[] data = new byte[cols * rows];
+		rnd.nextBytes(data);
+		
+		final Mat noise = new Mat(rows, cols, CvType.CV_8U);
+		noise.put(0, 0, data);
+		final Mat result = new Mat();
+		Imgproc.GaussianBlur(noise, result, new Size(7, 7), 2);
+		for(int r = 0; r < 20; r++){
+			final int w = 10 + rnd.nextInt(cols / 4);
+			final int h = 10 + rnd.nextInt(rows / 4);
+			final Rect rect = new Rect(rnd.nextInt(cols - w), rnd.nextInt(rows - h), w, h);
+			result.submat(rect).setTo(new Scalar(rnd.nextInt(256)));
+		}
+		return result;
+	}
+	
+	/**
+	 * @return the frame moved by (dx, dy) pixels, as the next frame of a tracking sequence
+	 */
+	static Mat shifted(final Mat frame, final double dx, final double dy){
+		final Mat transform = new Mat(2, 3, CvType.CV_64F);
+		transform.put(0, 0, 1, 0, dx, 0, 1, dy);
+		final Mat result = new Mat();
+		Imgproc.warpAffine(frame, result, transform, frame.size());
+		return result;
+	}
+	
+	/**
+	 * @return a box about the size the users select, in the middle of the frame
+	 */
+	static Rect trackedBox(final Size size){
+		final int w = (int)(size.width / 6);
+		final int h = (int)(size.height / 5);
+		return new Rect((int)(size.width - w) / 2, (int)(size.height - h) / 2, w, h);
+	}
+	
+	static RNG rng(final long seed){
+		final Random rnd = new Random(seed);
+		return new RNG() {
+			@Override
+			public float nextFloat() {
+				return rnd.nextFloat();
+			}
+			
+			@Override
+			public int nextInt() {
+				return rnd.nextInt();
+			}
+		};
+	}
+}
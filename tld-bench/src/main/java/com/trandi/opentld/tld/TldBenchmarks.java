@@ -0,0 +1,63 @@
+/**
+ * Copyright 2013 Dan Oprescu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trandi.opentld.tld;
+
+import java.io.IOException;
+
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Same command line as the JMH one (e.g. -p resolution=640x480 DetectionBenchmark), but the results are ALWAYS 
+ * written as JSON, to tld-bench.json unless -rf / -rff say otherwise, so that runs can be compared by scripts.
+ */
+public class TldBenchmarks {
+	static final String DEFAULT_RESULT_FILE = "tld-bench.json";
+	
+	public static void main(String[] args) throws RunnerException, IOException {
+		final CommandLineOptions cmdOptions;
+		try{
+			cmdOptions = new CommandLineOptions(args);
+		}catch(CommandLineOptionException e){
+			System.err.println("Error parsing command line: " + e.getMessage());
+			System.exit(1);
+			return;
+		}
+		if(cmdOptions.shouldHelp() || cmdOptions.shouldList() || cmdOptions.shouldListWithParams() 
+				|| cmdOptions.shouldListProfilers() || cmdOptions.shouldListResultFormats()){
+			// nothing to run, JMH knows best
+			Main.main(args);
+			return;
+		}
+		
+		final ChainedOptionsBuilder options = new OptionsBuilder().parent(cmdOptions);
+		if(!cmdOptions.getResultFormat().hasValue()){
+			options.resultFormat(ResultFormatType.JSON);
+		}
+		if(!cmdOptions.getResult().hasValue()){
+			options.result(DEFAULT_RESULT_FILE);
+		}
+		
+		new Runner(options.build()).run();
+	}
+}
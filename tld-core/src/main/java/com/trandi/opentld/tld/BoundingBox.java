@@ -16,15 +16,10 @@
 
 package com.trandi.opentld.tld;
 
-import java.util.ArrayList;
-import java.util.List;
-
 import org.opencv.core.Mat;
 import org.opencv.core.Point;
 import org.opencv.core.Rect;
 
-import android.util.Log;
-
 
 public class BoundingBox extends Rect{
 	private static final int POINTS_MAX_COUNT = 10;
@@ -50,83 +45,121 @@ public class BoundingBox extends Rect{
 	}
 	
 	float calcOverlap(final Rect other){
-		if(x > other.x + other.width || y > other.y + other.height || x + width < other.x || y + height < other.y){
+		return calcOverlap(x, y, width, height, other);
+	}
+	
+	/**
+	 * Same as above, for a box given by its coordinates (e.g. from the Grid arrays)
+	 */
+	static float calcOverlap(final int x, final int y, final int width, final int height, final Rect other){
+		return calcOverlap(x, y, width, height, other.x, other.y, other.width, other.height);
+	}
+	
+	static float calcOverlap(final int x, final int y, final int width, final int height, final int otherX, final int otherY, final int otherWidth, final int otherHeight){
+		if(x > otherX + otherWidth || y > otherY + otherHeight || x + width < otherX || y + height < otherY){
 			// obvious case where these 2 boxes do not overlap at all !
 			return 0f;
 		}else{
-			final float colIntersection =  Math.min(x + width, other.x + other.width) - Math.max(x, other.x);
-			final float rowIntersection =  Math.min(y + height, other.y + other.height) - Math.max(y, other.y);
+			final float colIntersection =  Math.min(x + width, otherX + otherWidth) - Math.max(x, otherX);
+			final float rowIntersection =  Math.min(y + height, otherY + otherHeight) - Math.max(y, otherY);
 			
 			final float intersection = colIntersection * rowIntersection;
 			final float myArea = width * height;
-			final float otherArea = other.width * other.height;
+			final float otherArea = otherWidth * otherHeight;
 			
 			return intersection / (myArea + otherArea - intersection);			
 		}
 	}
 	
 	
+	/**
+	 * Copies all of other's fields
+	 * @return this
+	 */
+	BoundingBox set(final BoundingBox other){
+		return set(other.x, other.y, other.width, other.height, other.overlap, other.scaleIdx);
+	}
+	
+	BoundingBox set(int x, int y, int width, int height, float overlap, int scaleIdx){
+		this.x = x;
+		this.y = y;
+		this.width = width;
+		this.height = height;
+		this.overlap = overlap;
+		this.scaleIdx = scaleIdx;
+		return this;
+	}
+	
+	
 	Point[] points(){
-		final List<Point> result = new ArrayList<Point>();
+		final PointBuffer result = new PointBuffer();
+		points(result);
+		return result.toArray();
+	}
+	
+	/**
+	 * Same as above, into a re-used buffer
+	 */
+	void points(final PointBuffer result){
+		result.clear();
 		final int stepx = (int) Math.ceil((width - 2 * POINTS_MARGIN_H) / POINTS_MAX_COUNT);
 		final int stepy = (int) Math.ceil((height - 2 * POINTS_MARGIN_V) / POINTS_MAX_COUNT);	
 		for(int j = y + POINTS_MARGIN_V; j < y + height - POINTS_MARGIN_V; j += stepy){
 			for(int i = x + POINTS_MARGIN_H; i < x + width - POINTS_MARGIN_H; i += stepx){
-				result.add(new Point(i, j));
+				result.add(i, j);
 			}
 		}
-		Log.i(Util.TAG, "Points in BB: " + this + " stepx=" + stepx + " stepy=" + stepy + " RES size=" + result.size());			
-		return result.toArray(new Point[result.size()]);
+		if(TldLog.DEBUG){
+			TldLog.d("Points in BB: " + this + " stepx=" + stepx + " stepy=" + stepy + " RES size=" + result.size());
+		}
 	}
 	
 	
-	BoundingBox predict(final Point[] points1, final Point[] points2){
+	BoundingBox predict(final Point[] points1, final Point[] points2, final RobustStats stats){
 		if(points1.length != points2.length) throw new IllegalArgumentException("The 2 arrays of points must be of the same lenght ! (" + points1.length + ", " + points2.length + ")");
 		
-		final int npoints = points1.length;
-		Log.i(Util.TAG, "Tracked points: " + npoints);
-		
-		final float[] xoff = new float[npoints];
-		final float[] yoff = new float[npoints];
-		for(int i = 0; i < npoints; i++){
-			xoff[i] = (float) (points2[i].x - points1[i].x);
-			yoff[i] = (float) (points2[i].y - points1[i].y);
+		return predict(points1, points2, points1.length, stats, new BoundingBox());
+	}
+	
+	/**
+	 * Same as above, for the first npoints of each array
+	 * @param result OUTPUT
+	 * @return result
+	 */
+	BoundingBox predict(final Point[] points1, final Point[] points2, final int npoints, final RobustStats stats, final BoundingBox result){
+		if(TldLog.DEBUG){
+			TldLog.d("Tracked points: " + npoints);
 		}
-		final float dx = Util.median(xoff);
-		final float dy = Util.median(yoff);
 		
-		float s = 1f;
-		if(npoints > 1){
-			final float[] d = new float[npoints * (npoints - 1) / 2];
-			int idx = 0;
-			for(int i = 0; i < npoints; i++){
-				for(int j = i + 1; j < npoints; j++){
-					d[idx++] = Util.norm(points2[i], points2[j]) / Util.norm(points1[i], points1[j]);
-				}
-			}
-			s = Util.median(d);
-		}
+		final float dx = stats.medianShift(points1, points2, npoints, true);
+		final float dy = stats.medianShift(points1, points2, npoints, false);
+		final float s = npoints > 1 ? stats.pairwiseScale(points1, points2, npoints) : 1f;
 		
 		final float s1 = 0.5f * (s - 1) * width;
 		final float s2 = 0.5f * (s - 1) * height;
-		final BoundingBox result = new BoundingBox();
-		result.x = Math.max(Math.round(x + dx - s1), 0);
-		result.y = Math.max(Math.round(y + dy - s2), 0);
-		result.width = Math.round(width * s);
-		result.height = Math.round(height * s);
+		result.set(Math.max(Math.round(x + dx - s1), 0), Math.max(Math.round(y + dy - s2), 0), Math.round(width * s), Math.round(height * s), -1, -1);
 		
-		Log.i(Util.TAG, "Current BB: " + this + ", Predicted BB: " + result);
+		if(TldLog.DEBUG){
+			TldLog.d("Current BB: " + this + ", Predicted BB: " + result);
+		}
 		
 		return result;
 	}
 	
 	
 	BoundingBox intersect(final Mat img){
-		final BoundingBox result = new BoundingBox();
+		return intersect(img, new BoundingBox());
+	}
+	
+	/**
+	 * @param result OUTPUT, can't be this
+	 * @return result
+	 */
+	BoundingBox intersect(final Mat img, final BoundingBox result){
 		result.x = Math.max(x, 0);
 		result.y = Math.max(y, 0);
-		result.width = (int) Math.min(Math.min(img.cols() - x, width), Math.min(width, br().x));
-		result.height = (int) Math.min(Math.min(img.rows() - y, height), Math.min(height, br().y));
+		result.width = Math.min(Math.min(img.cols() - x, width), Math.min(width, x + width));
+		result.height = Math.min(Math.min(img.rows() - y, height), Math.min(height, y + height));
 		return result;
 	}
 	
@@ -0,0 +1,163 @@
+/**
+ * Copyright 2013 Dan Oprescu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trandi.opentld.tld;
+
+import java.util.Arrays;
+
+/**
+ * Single linkage clustering of the detected boxes: 2 boxes end up in the same cluster if they are linked by a chain
+ * of boxes, each overlapping the next one by at least MIN_OVERLAP.
+ * 
+ * The clusters are the connected components of the overlap graph, found with a union-find.
+ * A spatial hash (cells as big as the biggest box) makes sure only boxes in neighbouring cells get compared, as boxes further
+ * apart can't overlap at all.
+ * 
+ * NOT thread safe, the buffers are reused from 1 call to the next.
+ */
+class DetectionClusterer {
+	static final float MIN_OVERLAP = 0.5f;
+	
+	private int[] _parent = new int[0];
+	private int[] _rootLabel = new int[0];
+	private int[] _cell = new int[0];
+	private int[] _cellStart = new int[0];
+	private int[] _cellBoxes = new int[0];
+	
+	
+	/**
+	 * @param x, y, width, height the count boxes to cluster
+	 * @param labels OUTPUT, the cluster of each box, numbered in the order in which they first appear in the input
+	 * @return the clusters count
+	 */
+	int cluster(final int[] x, final int[] y, final int[] width, final int[] height, final int count, final int[] labels){
+		if(count == 0){
+			return 0;
+		}
+		ensureCapacity(count);
+		
+		// 1. spatial hash, boxes sorted by cell (counting sort)
+		int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE, cellSize = 1;
+		for(int i = 0; i < count; i++){
+			minX = Math.min(minX, x[i]);
+			minY = Math.min(minY, y[i]);
+			maxX = Math.max(maxX, x[i]);
+			maxY = Math.max(maxY, y[i]);
+			cellSize = Math.max(cellSize, Math.max(width[i], height[i]));
+		}
+		final int cellsX = (maxX - minX) / cellSize + 1;
+		final int cellsY = (maxY - minY) / cellSize + 1;
+		final int cellsCount = cellsX * cellsY;
+		if(_cellStart.length < cellsCount + 1){
+			_cellStart = new int[cellsCount + 1];
+		}else{
+			Arrays.fill(_cellStart, 0, cellsCount + 1, 0);
+		}
+		
+		for(int i = 0; i < count; i++){
+			_cell[i] = ((y[i] - minY) / cellSize) * cellsX + (x[i] - minX) / cellSize;
+			_cellStart[_cell[i]]++;
+		}
+		// cumulative, each entry is now the END of its cell...
+		for(int c = 1; c <= cellsCount; c++){
+			_cellStart[c] += _cellStart[c - 1];
+		}
+		// ...and going backwards brings it to the START, keeping the input order inside each cell
+		for(int i = count - 1; i >= 0; i--){
+			_cellBoxes[--_cellStart[_cell[i]]] = i;
+		}
+		
+		
+		// 2. union-find, comparing each box ONLY with the later boxes from the same and neighbouring cells
+		for(int i = 0; i < count; i++){
+			_parent[i] = i;
+		}
+		for(int i = 0; i < count; i++){
+			final int cellX = _cell[i] % cellsX;
+			final int cellY = _cell[i] / cellsX;
+			for(int cy = Math.max(0, cellY - 1); cy <= Math.min(cellsY - 1, cellY + 1); cy++){
+				for(int cx = Math.max(0, cellX - 1); cx <= Math.min(cellsX - 1, cellX + 1); cx++){
+					final int cell = cy * cellsX + cx;
+					for(int k = _cellStart[cell]; k < _cellStart[cell + 1]; k++){
+						final int j = _cellBoxes[k];
+						// same distance (1 - overlap) and threshold as the original agglomerative clustering
+						if(j > i && 1 - BoundingBox.calcOverlap(x[i], y[i], width[i], height[i], x[j], y[j], width[j], height[j]) <= 1 - MIN_OVERLAP){
+							union(i, j);
+						}
+					}
+				}
+			}
+		}
+		
+		
+		// 3. label the clusters, in order of appearance
+		Arrays.fill(_rootLabel, 0, count, -1);
+		int clusters = 0;
+		for(int i = 0; i < count; i++){
+			final int root = find(i);
+			if(_rootLabel[root] < 0){
+				_rootLabel[root] = clusters++;
+			}
+			labels[i] = _rootLabel[root];
+		}
+		
+		return clusters;
+	}
+	
+	/**
+	 * Sizes the buffers up front, so that cluster() doesn't allocate anything later on
+	 * @param maxCount the most boxes clustered at once
+	 * @param cols, rows, minSize the frame size and the smallest box side, which bound the number of cells
+	 */
+	void reserve(final int maxCount, final int cols, final int rows, final int minSize){
+		ensureCapacity(maxCount);
+		final int maxCells = (cols / minSize + 1) * (rows / minSize + 1);
+		if(_cellStart.length < maxCells + 1){
+			_cellStart = new int[maxCells + 1];
+		}
+	}
+	
+	private int find(int i){
+		while(_parent[i] != i){
+			// path halving
+			_parent[i] = _parent[_parent[i]];
+			i = _parent[i];
+		}
+		return i;
+	}
+	
+	private void union(final int i, final int j){
+		final int rootI = find(i);
+		final int rootJ = find(j);
+		if(rootI != rootJ){
+			// the smallest index becomes the root, keeps it deterministic
+			if(rootI < rootJ){
+				_parent[rootJ] = rootI;
+			}else{
+				_parent[rootI] = rootJ;
+			}
+		}
+	}
+	
+	private void ensureCapacity(final int count){
+		if(_parent.length < count){
+			_parent = new int[count];
+			_rootLabel = new int[count];
+			_cell = new int[count];
+			_cellBoxes = new int[count];
+		}
+	}
+}
@@ -0,0 +1,154 @@
+/**
+ * Copyright 2013 Dan Oprescu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trandi.opentld.tld;
+
+import org.opencv.core.Rect;
+import org.opencv.core.Size;
+
+/**
+ * Decides which grid boxes the detector scans in each frame.
+ * 
+ * While the tracker is confident, only the boxes around its predicted box and at the nearby scales are scanned.
+ * A full scan is done every fullScanInterval frames, and whenever the tracking is lost or not confident, so that re-detection still happens.
+ */
+class DetectionScheduler {
+	private final int _fullScanInterval;
+	private final float _roiMargin;	// relative to the predicted box size, on each side
+	private final int _roiScales;	// how many scales around the predicted box's one
+	
+	private Grid _grid;
+	private Size[] _scales;
+	private int[] _allBoxes;	// identity, for the full scans
+	private int[] _roiBoxes;
+	private int _framesSinceFullScan;
+	
+	// stats
+	private int _lastScanned;
+	private boolean _lastFullScan;
+	private long _frames;
+	private long _fullScans;
+	private long _totalScanned;
+	
+	
+	/**
+	 * @param fullScanInterval 1 means every frame is a full scan
+	 */
+	DetectionScheduler(int fullScanInterval, float roiMargin, int roiScales){
+		if(fullScanInterval < 1) throw new IllegalArgumentException("The full scan interval has to be at least 1, got: " + fullScanInterval);
+		_fullScanInterval = fullScanInterval;
+		_roiMargin = roiMargin;
+		_roiScales = roiScales;
+	}
+	
+	void init(final Grid grid){
+		_grid = grid;
+		_scales = grid.getTrackedBoxScales();
+		_allBoxes = new int[grid.getSize()];
+		for(int i = 0; i < _allBoxes.length; i++){
+			_allBoxes[i] = i;
+		}
+		_roiBoxes = new int[grid.getSize()];
+		_framesSinceFullScan = 0;
+	}
+	
+	
+	/**
+	 * @param predictedBox the tracker's prediction, null if not tracking
+	 * @return the grid box indexes to scan, in ASCENDING order. Only the first {@link #getLastScanned()} are valid.
+	 */
+	int[] schedule(final Rect predictedBox, final float trackingConf, final float validThreshold){
+		_frames++;
+		_framesSinceFullScan++;
+		
+		if(predictedBox == null || trackingConf <= validThreshold || _framesSinceFullScan >= _fullScanInterval){
+			_framesSinceFullScan = 0;
+			_fullScans++;
+			return setStats(_allBoxes, _allBoxes.length, true);
+		}
+		
+		// Region of interest around the predicted box
+		final int marginX = Math.round(_roiMargin * predictedBox.width);
+		final int marginY = Math.round(_roiMargin * predictedBox.height);
+		final int minX = predictedBox.x - marginX;
+		final int minY = predictedBox.y - marginY;
+		final int maxX = predictedBox.x + predictedBox.width + marginX;
+		final int maxY = predictedBox.y + predictedBox.height + marginY;
+		final int predictedScale = closestScale(predictedBox);
+		
+		final Grid grid = _grid;
+		int count = 0;
+		for(int i = 0; i < grid.getSize(); i++){
+			if(Math.abs(grid.scale[i] - predictedScale) <= _roiScales){
+				final int centreX = grid.x[i] + grid.w[i] / 2;
+				final int centreY = grid.y[i] + grid.h[i] / 2;
+				if(centreX >= minX && centreX <= maxX && centreY >= minY && centreY <= maxY){
+					_roiBoxes[count++] = i;
+				}
+			}
+		}
+		
+		return setStats(_roiBoxes, count, false);
+	}
+	
+	private int[] setStats(final int[] boxes, final int count, final boolean fullScan){
+		_lastScanned = count;
+		_lastFullScan = fullScan;
+		_totalScanned += count;
+		return boxes;
+	}
+	
+	/**
+	 * The scales are in ascending size order, compare the areas on a log scale.
+	 */
+	private int closestScale(final Rect box){
+		final double boxArea = Math.log(Math.max(1d, box.area()));
+		int result = 0;
+		double minDiff = Double.MAX_VALUE;
+		for(int s = 0; s < _scales.length; s++){
+			final double diff = Math.abs(Math.log(_scales[s].area()) - boxArea);
+			if(diff < minDiff){
+				minDiff = diff;
+				result = s;
+			}
+		}
+		return result;
+	}
+	
+	
+	int getLastScanned(){
+		return _lastScanned;
+	}
+	
+	boolean isLastFullScan(){
+		return _lastFullScan;
+	}
+	
+	/**
+	 * @return average number of scanned boxes per frame, since the beginning
+	 */
+	float getAverageScanned(){
+		return _frames == 0 ? 0f : (float) _totalScanned / _frames;
+	}
+	
+	long getFullScans(){
+		return _fullScans;
+	}
+	
+	long getFrames(){
+		return _frames;
+	}
+}
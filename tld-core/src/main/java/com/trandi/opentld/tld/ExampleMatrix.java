@@ -0,0 +1,370 @@
+/**
+ * Copyright 2013 Dan Oprescu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trandi.opentld.tld;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * The NN examples (patterns of patch_size x patch_size floats) as the rows of 1 contiguous Java matrix, with their norms pre-calculated.
+ * 
+ * Scoring candidates against all the examples is then a plain matrix product, without any native call.
+ * 
+ * With a capacity > 0 the matrix never grows beyond it, the {@link EvictionPolicy} chooses which row to drop to make room for a new example.
+ * The rows keep their insertion order, so the oldest examples are always first.
+ */
+class ExampleMatrix {
+	/**
+	 * Chooses the example to evict when the matrix is full.
+	 */
+	interface EvictionPolicy {
+		/**
+		 * @return the index of the row to remove, in [0, examples.size())
+		 */
+		int selectVictim(ExampleMatrix examples);
+	}
+	
+	/**
+	 * Evicts the example that has been the closest one to a candidate the longest time ago.
+	 */
+	static final EvictionPolicy LEAST_RECENTLY_MATCHED = new EvictionPolicy() {
+		@Override
+		public int selectVictim(final ExampleMatrix examples) {
+			int result = 0;
+			for(int row = 1; row < examples._rows; row++){
+				if(examples._lastMatched[row] < examples._lastMatched[result]){
+					result = row;
+				}
+			}
+			return result;
+		}
+	};
+	
+	/**
+	 * Evicts the example that is the most similar (highest NCC) to another example, so the one bringing the least information.
+	 */
+	static final EvictionPolicy MOST_REDUNDANT = new EvictionPolicy() {
+		@Override
+		public int selectVictim(final ExampleMatrix examples) {
+			int result = 0;
+			for(int row = 1; row < examples._rows; row++){
+				if(examples._redundancy[row] > examples._redundancy[result]){
+					result = row;
+				}
+			}
+			return result;
+		}
+	};
+	
+	static EvictionPolicy getEvictionPolicy(final String name){
+		if("least_recently_matched".equals(name)){
+			return LEAST_RECENTLY_MATCHED;
+		}else if("most_redundant".equals(name)){
+			return MOST_REDUNDANT;
+		}
+		
+		throw new IllegalArgumentException("Unknown NN eviction policy: " + name);
+	}
+	
+	// lower than any NCC, for the rows with NO other example to compare to
+	private static final float NO_REDUNDANCY = -2f;
+	
+	private final int _capacity;	// 0 means unbounded
+	private EvictionPolicy _evictionPolicy;
+	
+	private int _dim = -1;	// set by the 1st example
+	private float[] _data = new float[0];
+	private double[] _norms = new double[0];
+	private int _rows = 0;
+	
+	// book keeping for the eviction policies
+	private long[] _lastMatched = new long[0];
+	private float[] _redundancy = new float[0];	// highest NCC with any other row, ONLY maintained when bounded
+	private int[] _nearest = new int[0];			// the row giving that highest NCC, -1 if none
+	private long _clock = 0;
+	private long _evictions = 0;
+	private float[] _rowScores = new float[0];
+	private float[] _rowCopy = new float[0];
+	private final double[] _rowNorm = new double[1];
+	
+	
+	ExampleMatrix(){
+		this(0, LEAST_RECENTLY_MATCHED);
+	}
+	
+	ExampleMatrix(final int capacity, final EvictionPolicy evictionPolicy){
+		if(capacity < 0){
+			throw new IllegalArgumentException("The capacity has to be >= 0 (0 means unbounded), got: " + capacity);
+		}
+		if(evictionPolicy == null){
+			throw new IllegalArgumentException("NULL eviction policy");
+		}
+		_capacity = capacity;
+		_evictionPolicy = evictionPolicy;
+	}
+	
+	
+	/**
+	 * Deep copy, with the same capacity, policy and eviction counter
+	 */
+	ExampleMatrix(final ExampleMatrix other){
+		_capacity = other._capacity;
+		_evictionPolicy = other._evictionPolicy;
+		_dim = other._dim;
+		_data = other._data.clone();
+		_norms = other._norms.clone();
+		_rows = other._rows;
+		_lastMatched = other._lastMatched.clone();
+		_redundancy = other._redundancy.clone();
+		_nearest = other._nearest.clone();
+		_clock = other._clock;
+		_evictions = other._evictions;
+	}
+	
+	
+	/**
+	 * Adds a copy of example[offset, offset + dim) as the last row, evicting another row first if the matrix is full.
+	 */
+	void add(final float[] example, final int offset, final int dim){
+		if(_dim < 0){
+			_dim = dim;
+		}else if(dim != _dim){
+			throw new IllegalArgumentException("All the examples must have the same size: " + _dim + ", got: " + dim);
+		}
+		
+		if(_capacity > 0 && _rows >= _capacity){
+			remove(_evictionPolicy.selectVictim(this));
+			_evictions++;
+		}
+		
+		if((_rows + 1) * _dim > _data.length){
+			final int capacity = _capacity > 0 ? Math.min(_capacity, Math.max(16, _rows * 2)) : Math.max(16, _rows * 2);
+			_data = Arrays.copyOf(_data, capacity * _dim);
+			_norms = Arrays.copyOf(_norms, capacity);
+			_lastMatched = Arrays.copyOf(_lastMatched, capacity);
+			_redundancy = Arrays.copyOf(_redundancy, capacity);
+			_nearest = Arrays.copyOf(_nearest, capacity);
+		}
+		
+		final int newRow = _rows;
+		System.arraycopy(example, offset, _data, newRow * _dim, _dim);
+		_norms[newRow] = norm(example, offset, _dim);
+		_lastMatched[newRow] = ++_clock;
+		_redundancy[newRow] = NO_REDUNDANCY;
+		_nearest[newRow] = -1;
+		_rows++;
+		
+		if(_capacity > 0){
+			// the new row may be the nearest neighbour of existing rows
+			correlateRow(newRow);
+			for(int row = 0; row < newRow; row++){
+				final float ncc = _rowScores[row];
+				if(ncc > _redundancy[row]){
+					_redundancy[row] = ncc;
+					_nearest[row] = newRow;
+				}
+				if(ncc > _redundancy[newRow]){
+					_redundancy[newRow] = ncc;
+					_nearest[newRow] = row;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Removes the row, shifting the following ones up to keep the insertion order.
+	 */
+	private void remove(final int victim){
+		final int following = _rows - victim - 1;
+		System.arraycopy(_data, (victim + 1) * _dim, _data, victim * _dim, following * _dim);
+		System.arraycopy(_norms, victim + 1, _norms, victim, following);
+		System.arraycopy(_lastMatched, victim + 1, _lastMatched, victim, following);
+		System.arraycopy(_redundancy, victim + 1, _redundancy, victim, following);
+		System.arraycopy(_nearest, victim + 1, _nearest, victim, following);
+		_rows--;
+		
+		if(_capacity > 0){
+			for(int row = 0; row < _rows; row++){
+				if(_nearest[row] > victim){
+					_nearest[row]--;
+				}else if(_nearest[row] == victim){
+					// lost its nearest neighbour, find the new one
+					refreshRedundancy(row);
+				}
+			}
+		}
+	}
+	
+	private void refreshRedundancy(final int row){
+		correlateRow(row);
+		_redundancy[row] = NO_REDUNDANCY;
+		_nearest[row] = -1;
+		for(int other = 0; other < _rows; other++){
+			if(other != row && _rowScores[other] > _redundancy[row]){
+				_redundancy[row] = _rowScores[other];
+				_nearest[row] = other;
+			}
+		}
+	}
+	
+	/**
+	 * OUTPUT : _rowScores, the NCC of the row with ALL the rows
+	 */
+	private void correlateRow(final int row){
+		if(_rowScores.length < _rows){
+			_rowScores = new float[_rows];
+		}
+		if(_rowCopy.length < _dim){
+			_rowCopy = new float[_dim];
+		}
+		System.arraycopy(_data, row * _dim, _rowCopy, 0, _dim);
+		_rowNorm[0] = _norms[row];
+		correlate(_rowCopy, _rowNorm, 1, _rowScores);
+	}
+	
+	/**
+	 * The row has been the closest example to a candidate
+	 */
+	void matched(final int row){
+		_lastMatched[row] = ++_clock;
+	}
+	
+	void clear(){
+		_rows = 0;
+	}
+	
+	int size(){
+		return _rows;
+	}
+	
+	boolean isEmpty(){
+		return _rows == 0;
+	}
+	
+	int getDim(){
+		return _dim;
+	}
+	
+	int getCapacity(){
+		return _capacity;
+	}
+	
+	/**
+	 * @return how many examples have been evicted to make room for new ones, since the creation
+	 */
+	long getEvictions(){
+		return _evictions;
+	}
+	
+	/**
+	 * @return how many bytes {@link #writeSnapshot(ByteBuffer)} writes
+	 */
+	int getSnapshotSize(){
+		return 4 + TldSnapshot.sizeOf(_data, _rows * Math.max(_dim, 0)) + TldSnapshot.sizeOf(_lastMatched, _rows) + 8 + 8;
+	}
+	
+	/**
+	 * The examples and their eviction book keeping, the norms and redundancies are re-calculated when reading
+	 */
+	void writeSnapshot(final ByteBuffer buffer){
+		buffer.putInt(_dim);
+		TldSnapshot.putFloats(buffer, _data, _rows * Math.max(_dim, 0));
+		TldSnapshot.putLongs(buffer, _lastMatched, _rows);
+		buffer.putLong(_clock);
+		buffer.putLong(_evictions);
+	}
+	
+	/**
+	 * Replaces all the examples, keeps this matrix's capacity and eviction policy
+	 */
+	void readSnapshot(final ByteBuffer buffer){
+		final int dim = buffer.getInt();
+		final float[] data = TldSnapshot.getFloats(buffer);
+		final long[] lastMatched = TldSnapshot.getLongs(buffer);
+		final int rows = lastMatched.length;
+		if(data.length != rows * Math.max(dim, 0)){
+			throw new IllegalArgumentException("Corrupted snapshot, " + data.length + " values for " + rows + " examples of " + dim);
+		}
+		if(_capacity > 0 && rows > _capacity){
+			throw new IllegalArgumentException("The snapshot has " + rows + " examples, more than the capacity: " + _capacity);
+		}
+		
+		_dim = dim;
+		_rows = rows;
+		_data = data;
+		_lastMatched = lastMatched;
+		_clock = buffer.getLong();
+		_evictions = buffer.getLong();
+		_norms = new double[rows];
+		_redundancy = new float[rows];
+		_nearest = new int[rows];
+		for(int row = 0; row < rows; row++){
+			_norms[row] = norm(_data, row * _dim, _dim);
+		}
+		for(int row = 0; row < rows; row++){
+			if(_capacity > 0){
+				refreshRedundancy(row);
+			}else{
+				_redundancy[row] = NO_REDUNDANCY;
+				_nearest[row] = -1;
+			}
+		}
+	}
+	
+	void setEvictionPolicy(final EvictionPolicy evictionPolicy){
+		if(evictionPolicy == null){
+			throw new IllegalArgumentException("NULL eviction policy");
+		}
+		_evictionPolicy = evictionPolicy;
+	}
+	
+	
+	/**
+	 * Normalised cross correlation (same as Imgproc.TM_CCORR_NORMED on same size patches) of count candidates with ALL the examples, in 1 pass.
+	 * The outer loop is on the examples, so each row is read once and stays in the cache for all the candidates.
+	 * 
+	 * @param candidates count rows of dim floats
+	 * @param candidatesNorms pre-calculated with {@link #norm(float[], int, int)}
+	 * @param result OUTPUT, count x size() matrix: result[candidate * size() + example]
+	 */
+	void correlate(final float[] candidates, final double[] candidatesNorms, final int count, final float[] result){
+		final int dim = _dim;
+		for(int row = 0; row < _rows; row++){
+			final int rowOffset = row * dim;
+			final double rowNorm = _norms[row];
+			for(int c = 0; c < count; c++){
+				final int cOffset = c * dim;
+				double dot = 0;
+				for(int i = 0; i < dim; i++){
+					dot += (double) _data[rowOffset + i] * candidates[cOffset + i];
+				}
+				
+				final double denominator = rowNorm * candidatesNorms[c];
+				result[c * _rows + row] = denominator > Double.MIN_NORMAL ? (float) Math.max(-1d, Math.min(1d, dot / denominator)) : 0f;
+			}
+		}
+	}
+	
+	
+	static double norm(final float[] data, final int offset, final int dim){
+		double result = 0;
+		for(int i = offset; i < offset + dim; i++){
+			result += (double) data[i] * data[i];
+		}
+		return Math.sqrt(result);
+	}
+}
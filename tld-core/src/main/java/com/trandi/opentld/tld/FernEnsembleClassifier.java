@@ -0,0 +1,563 @@
+/**
+ * Copyright 2013 Dan Oprescu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trandi.opentld.tld;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+
+import com.trandi.opentld.tld.Parameters.ParamsClassifiers;
+import com.trandi.opentld.tld.Util.Pair;
+import com.trandi.opentld.tld.Util.RNG;
+
+
+class FernEnsembleClassifier {
+	ParamsClassifiers params;
+	private Fern[] ferns;
+	private int _frameCols = -1; // the width for which the features offsets have been calculated
+	
+	// Cascade mode: the ferns are evaluated one by one, most discriminative first, until the box can't be accepted anymore
+	private static final double CASCADE_EPSILON = 1e-9;	// only reject when sure, the accepted boxes have to be the same as without cascade
+	private static final double CASCADE_SCORE_DECAY = 0.9;
+	private int[] _cascadeOrder;
+	private double[] _cascadeScores;	// per fern, running average of (1 - posterior), the higher the more it rejects
+	
+	// the patch copy of getAllFernsHashCodes(Mat), each copy has its own
+	private static final int PATCH = 0;	// bytes
+	private final ScratchBuffers _scratch = new ScratchBuffers(1);
+	
+//	final List<Mat> pExamples = new ArrayList<Mat>();
+//	final List<Mat> nExamples = new ArrayList<Mat>();
+
+	FernEnsembleClassifier(){
+	}
+	
+	FernEnsembleClassifier(Properties props) {
+		params = new ParamsClassifiers(props);
+	}
+
+
+	/**
+	 * @return a deep copy of the learnt posteriors (and the cascade state), which can be trained while this one keeps being used by the detection.
+	 * The features are shared, they never change after init().
+	 */
+	FernEnsembleClassifier copy(){
+		final FernEnsembleClassifier result = new FernEnsembleClassifier();
+		result.params = params;
+		result.ferns = new Fern[ferns.length];
+		for(int i=0; i<ferns.length; i++){
+			result.ferns[i] = new Fern(ferns[i]);
+		}
+		result._frameCols = _frameCols;
+		result._cascadeOrder = _cascadeOrder.clone();
+		result._cascadeScores = _cascadeScores.clone();
+		return result;
+	}
+	
+	/**
+	 * The cascade order keeps being adapted by the detection while a copy is trained, so carry it over when the copy replaces this one
+	 */
+	void copyCascadeState(final FernEnsembleClassifier from){
+		System.arraycopy(from._cascadeOrder, 0, _cascadeOrder, 0, _cascadeOrder.length);
+		System.arraycopy(from._cascadeScores, 0, _cascadeScores, 0, _cascadeScores.length);
+	}
+	
+
+	void init(Size[] scales, RNG rng){
+		ferns = new Fern[params.numFerns];
+		for(int i=0; i<ferns.length; i++){
+			ferns[i] = new Fern(params.numFeaturesPerFern, scales, rng);
+		}
+		_frameCols = -1;
+		
+		_cascadeOrder = new int[ferns.length];
+		_cascadeScores = new double[ferns.length];
+		for(int i=0; i<ferns.length; i++){
+			_cascadeOrder[i] = i;
+		}
+	}
+	
+	
+	/**
+	 * @return how many bytes {@link #writeSnapshot(ByteBuffer)} writes
+	 */
+	int getSnapshotSize(){
+		int result = 8 + 4 + 4 + 4 + 4;	// thresholds, ferns count, features per fern, scales count
+		for(Fern fern : ferns){
+			for(int[] scaleFeatures : fern.features){
+				result += TldSnapshot.sizeOf(scaleFeatures, scaleFeatures.length);
+			}
+			result += TldSnapshot.sizeOf(fern.posteriorProbabilities, fern.posteriorProbabilities.length);
+			result += TldSnapshot.sizeOf(fern.pCounter, fern.pCounter.length) + TldSnapshot.sizeOf(fern.nCounter, fern.nCounter.length);
+		}
+		return result + TldSnapshot.sizeOf(_cascadeOrder, ferns.length) + TldSnapshot.sizeOf(_cascadeScores, ferns.length);
+	}
+	
+	/**
+	 * The thresholds and everything init() and the training have set up, the features offsets are re-calculated by prepareFrame()
+	 */
+	void writeSnapshot(final ByteBuffer buffer){
+		buffer.putDouble(params.pos_thr_fern);
+		buffer.putFloat(params.neg_thr_fern);
+		buffer.putInt(ferns.length);
+		buffer.putInt(params.numFeaturesPerFern);
+		buffer.putInt(ferns[0].features.length);
+		for(Fern fern : ferns){
+			for(int[] scaleFeatures : fern.features){
+				TldSnapshot.putInts(buffer, scaleFeatures, scaleFeatures.length);
+			}
+			TldSnapshot.putDoubles(buffer, fern.posteriorProbabilities, fern.posteriorProbabilities.length);
+			TldSnapshot.putLongs(buffer, fern.pCounter, fern.pCounter.length);
+			TldSnapshot.putLongs(buffer, fern.nCounter, fern.nCounter.length);
+		}
+		TldSnapshot.putInts(buffer, _cascadeOrder, ferns.length);
+		TldSnapshot.putDoubles(buffer, _cascadeScores, ferns.length);
+	}
+	
+	/**
+	 * Instead of init() + training, the parameters have to be the same as the snapshot's
+	 */
+	void readSnapshot(final ByteBuffer buffer){
+		final double posThreshold = buffer.getDouble();
+		final float negThreshold = buffer.getFloat();
+		final int numFerns = buffer.getInt();
+		final int featuresPerFern = buffer.getInt();
+		if(numFerns != params.numFerns || featuresPerFern != params.numFeaturesPerFern){
+			throw new IllegalArgumentException("The snapshot has " + numFerns + " ferns of " + featuresPerFern + " features, the parameters " 
+					+ params.numFerns + " ferns of " + params.numFeaturesPerFern + " features");
+		}
+		
+		final int scales = buffer.getInt();
+		final Fern[] readFerns = new Fern[numFerns];
+		for(int i = 0; i < numFerns; i++){
+			final int[][] features = new int[scales][];
+			for(int s = 0; s < scales; s++){
+				features[s] = TldSnapshot.getInts(buffer);
+				if(features[s].length != featuresPerFern * 4){
+					throw new IllegalArgumentException("Corrupted snapshot, fern " + i + " has " + features[s].length / 4 + " features at scale " + s);
+				}
+			}
+			readFerns[i] = new Fern(features, TldSnapshot.getDoubles(buffer), TldSnapshot.getLongs(buffer), TldSnapshot.getLongs(buffer));
+			if(readFerns[i].posteriorProbabilities.length != 1 << featuresPerFern){
+				throw new IllegalArgumentException("Corrupted snapshot, fern " + i + " has " + readFerns[i].posteriorProbabilities.length + " posteriors");
+			}
+		}
+		final int[] cascadeOrder = TldSnapshot.getInts(buffer);
+		final double[] cascadeScores = TldSnapshot.getDoubles(buffer);
+		if(cascadeOrder.length != numFerns || cascadeScores.length != numFerns){
+			throw new IllegalArgumentException("Corrupted snapshot, cascade state of " + cascadeOrder.length + " ferns instead of " + numFerns);
+		}
+		
+		params.pos_thr_fern = posThreshold;
+		params.neg_thr_fern = negThreshold;
+		ferns = readFerns;
+		_frameCols = -1;
+		_cascadeOrder = cascadeOrder;
+		_cascadeScores = cascadeScores;
+	}
+	
+	
+	/**
+	 * Updates the POSITIVE Ferns
+	 * The threshold for Positive results has to be > to the average of negative posteriors
+	 */
+	void evaluateThreshold(final List<Pair<int[], Boolean>> nFernsTest){
+		for(Pair<int[], Boolean> fern : nFernsTest){
+			// here we know/hope that fern.second is always FALSE, as they are all NEGATIVE examples
+			final double averagePosterior = averagePosterior(fern.first);
+			if(averagePosterior > params.pos_thr_fern){
+				params.pos_thr_fern = averagePosterior;
+			}
+		}
+	}
+	
+	
+	void trainF(final List<Pair<int[], Boolean>> ferns, int resample){
+		for(int i = 0; i < resample; i++){
+			for(Pair<int[], Boolean> fern : ferns){
+				// the THRESHOLDS are here to make sure we don't increase/decrease the probabilities beyond given limits, to give other hashCodes a chance
+				if(fern.second){ // if it's a positive fern
+					if(averagePosterior(fern.first) <= params.pos_thr_fern){
+						updatePosteriors(fern.first, true);
+					}
+				}else if(averagePosterior(fern.first) >= params.neg_thr_fern){
+					updatePosteriors(fern.first, false);
+				}
+			}
+		}
+	}
+	
+	private void updatePosteriors(final int[] fernsHashCodes, boolean positive){
+		assert(params.numFerns == fernsHashCodes.length);
+		
+		for(int fern = 0; fern < fernsHashCodes.length; fern++){
+			ferns[fern].addCountUpdatePosteriors(fernsHashCodes[fern], positive);
+		}
+	}
+	
+
+	/**
+	 * @return conf
+	 */
+	double averagePosterior(final int[] fernsHashCodes){
+		assert(params.numFerns == fernsHashCodes.length);
+		
+		double result = 0;
+		for(int fern = 0; fern < fernsHashCodes.length; fern++){
+			result += ferns[fern].posteriorProbabilities[fernsHashCodes[fern]];
+		}
+		return result / fernsHashCodes.length;
+	}
+	
+	/**
+	 * Same as above, for the hash codes stored in a bigger table, starting at the given offset
+	 */
+	double averagePosterior(final int[] fernsHashCodes, final int offset){
+		double result = 0;
+		for(int fern = 0; fern < ferns.length; fern++){
+			result += ferns[fern].posteriorProbabilities[fernsHashCodes[offset + fern]];
+		}
+		return result / ferns.length;
+	}
+	
+	
+	/**
+	 * Cascaded version of getAllFernsHashCodesInFrame() + averagePosterior(): the ferns are calculated and accumulated one at a time 
+	 * in the cascade order, and the box is rejected as soon as the remaining ferns (posteriors are at most 1) can't lift the average above the threshold.
+	 * 
+	 * @param result OUTPUT all the hash codes, from resultOffset, ONLY valid if the box hasn't been rejected
+	 * @param stats OUTPUT, the number of evaluated ferns and their rejection scores, for {@link #updateCascadeOrder(CascadeStats)}
+	 * @return the average posterior, exactly the same as averagePosterior(), or -1 if the box has been rejected early
+	 */
+	double cascadePosterior(final byte[] frameData, final int boxOffset, final int scaleIdx, final int[] result, final int resultOffset, final double threshold, final CascadeStats stats){
+		final int numFerns = ferns.length;
+		final double needed = threshold * numFerns - CASCADE_EPSILON;
+		double sum = 0;
+		stats.windows++;
+		for(int k = 0; k < numFerns; k++){
+			final int fern = _cascadeOrder[k];
+			result[resultOffset + fern] = ferns[fern].calculateFrameHashCode(scaleIdx, frameData, boxOffset);
+			final double posterior = ferns[fern].posteriorProbabilities[result[resultOffset + fern]];
+			sum += posterior;
+			stats.fernsEvaluated++;
+			stats.scores[fern] += 1 - posterior;
+			stats.evaluations[fern]++;
+			
+			final int remaining = numFerns - k - 1;
+			if(remaining > 0 && sum + remaining < needed){
+				return -1;
+			}
+		}
+		
+		// all the ferns went through, re-calculate it in the natural order so that it's bit identical to the non cascaded mode
+		return averagePosterior(result, resultOffset);
+	}
+	
+	/**
+	 * Adaptive ordering, called once per frame with all the detection stats: the ferns with the lowest posteriors on the 
+	 * scanned boxes (i.e. that reject most of the background) are moved at the front of the cascade.
+	 */
+	void updateCascadeOrder(final CascadeStats stats){
+		for(int fern = 0; fern < ferns.length; fern++){
+			if(stats.evaluations[fern] > 0){
+				_cascadeScores[fern] = CASCADE_SCORE_DECAY * _cascadeScores[fern] + (1 - CASCADE_SCORE_DECAY) * stats.scores[fern] / stats.evaluations[fern];
+			}
+		}
+		
+		// only a few ferns, insertion sort in DESCENDING score order
+		for(int i = 1; i < _cascadeOrder.length; i++){
+			final int fern = _cascadeOrder[i];
+			int j = i - 1;
+			while(j >= 0 && _cascadeScores[_cascadeOrder[j]] < _cascadeScores[fern]){
+				_cascadeOrder[j + 1] = _cascadeOrder[j];
+				j--;
+			}
+			_cascadeOrder[j + 1] = fern;
+		}
+	}
+	
+	boolean isCascade(){
+		return params.fern_cascade;
+	}
+	
+	
+	/**
+	 * The numbers in this array can be up to 2^params.structSize as we shift left once of each feature
+	 */
+	int[] getAllFernsHashCodes(final Mat patch, int scaleIdx){
+		return getAllFernsHashCodes(_scratch.byteArray(PATCH, patch), patch.cols(), scaleIdx);
+	}
+	
+	/**
+	 * Same as above, but works on the patch data already copied in Java, so several threads can each use their own buffer.
+	 */
+	int[] getAllFernsHashCodes(final byte[] imageData, final int cols, int scaleIdx){
+		final int[] result = new int[ferns.length];
+		for(int fern = 0; fern < ferns.length; fern++){
+			result[fern] = ferns[fern].calculateHashCode(scaleIdx, imageData, cols);
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * Has to be called before the frame level {@link #getAllFernsHashCodesInFrame(byte[], int, int, int[], int)}, it pre-calculates
+	 * the absolute offsets of all the features for the given frame width. Cheap if the width hasn't changed.
+	 */
+	void prepareFrame(final int frameCols){
+		if(frameCols == _frameCols){
+			return;
+		}
+		
+		for(Fern fern : ferns){
+			fern.calculateOffsets(frameCols);
+		}
+		_frameCols = frameCols;
+	}
+	
+	/**
+	 * Frame level version: works directly on the WHOLE frame copied once in Java, without any per box sub matrix or native call.
+	 * 
+	 * @param frameData the whole frame, whose width has been given to {@link #prepareFrame(int)}
+	 * @param boxOffset position of the box's top left corner in frameData (y * cols + x)
+	 * @param result OUTPUT, the hash codes are written from resultOffset
+	 */
+	int[] getAllFernsHashCodesInFrame(final byte[] frameData, final int boxOffset, final int scaleIdx, final int[] result, final int resultOffset){
+		for(int fern = 0; fern < ferns.length; fern++){
+			result[resultOffset + fern] = ferns[fern].calculateFrameHashCode(scaleIdx, frameData, boxOffset);
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * Warp sampling version: the features are read from the randomly warped patch the sampler is set up for, no image is built
+	 * 
+	 * @param boxX, boxY the box's top left corner in the frame
+	 */
+	int[] getAllFernsHashCodesWarped(final WarpSampler sampler, final int boxX, final int boxY, final int scaleIdx, final int[] result){
+		for(int fern = 0; fern < ferns.length; fern++){
+			result[fern] = ferns[fern].calculateWarpedHashCode(scaleIdx, sampler, boxX, boxY);
+		}
+		
+		return result;
+	}
+
+
+	
+	/**
+	 * Cascade counters, 1 instance per detection partition, merged at the end of the frame.
+	 */
+	static final class CascadeStats {
+		int windows = 0;
+		long fernsEvaluated = 0;
+		final double[] scores;
+		final long[] evaluations;
+		
+		CascadeStats(int numFerns){
+			scores = new double[numFerns];
+			evaluations = new long[numFerns];
+		}
+		
+		void merge(final CascadeStats other){
+			windows += other.windows;
+			fernsEvaluated += other.fernsEvaluated;
+			for(int fern = 0; fern < scores.length; fern++){
+				scores[fern] += other.scores[fern];
+				evaluations[fern] += other.evaluations[fern];
+			}
+		}
+		
+		void reset(){
+			windows = 0;
+			fernsEvaluated = 0;
+			Arrays.fill(scores, 0);
+			Arrays.fill(evaluations, 0);
+		}
+		
+		/**
+		 * @return how many ferns have been evaluated for each window, on average
+		 */
+		float getAverageFernsEvaluated(){
+			return windows == 0 ? 0f : (float) fernsEvaluated / windows;
+		}
+	}
+	
+	
+	static class Fern {
+		// per scaleIdx, the features (pixel comparisons) packed as x1, y1, x2, y2 relative to the box
+		private final int[][] features;
+		// per scaleIdx, the same features packed as pos1, pos2 relative to the box's top left corner in the whole frame
+		private final int[][] offsets;
+		// per HASHCODE
+		final double[] posteriorProbabilities;	// the probability that it's our image
+		final long[] nCounter;  	// the number of NEGATIVE patches
+		final long[] pCounter;		// the number of POSITIVE patches
+		
+		
+		Fern(int featuresPerFern, Size[] scales, RNG rng) {
+			// 1. Define random features
+			features = new int[scales.length][featuresPerFern * 4];
+			offsets = new int[scales.length][featuresPerFern * 2];
+			for (int i=0; i<featuresPerFern; i++){
+				final float x1f = rng.nextFloat();
+				final float y1f = rng.nextFloat();
+				final float x2f = rng.nextFloat();
+				final float y2f = rng.nextFloat();
+				for (int s=0; s<scales.length; s++){
+					features[s][i * 4] = (int) (x1f * scales[s].width);
+					features[s][i * 4 + 1] = (int) (y1f * scales[s].height);
+					features[s][i * 4 + 2] = (int) (x2f * scales[s].width);
+					features[s][i * 4 + 3] = (int) (y2f * scales[s].height);
+				}
+			}			
+			
+			// 2. Initialise Posteriors
+			final int MAX_HASHCODE = (int)Math.pow(2d, featuresPerFern);
+			posteriorProbabilities = new double[MAX_HASHCODE];
+			pCounter = new long[MAX_HASHCODE];
+			nCounter = new long[MAX_HASHCODE];
+		}
+		
+		/**
+		 * From a snapshot
+		 */
+		Fern(final int[][] features, final double[] posteriorProbabilities, final long[] pCounter, final long[] nCounter){
+			if(pCounter.length != posteriorProbabilities.length || nCounter.length != posteriorProbabilities.length){
+				throw new IllegalArgumentException("Corrupted snapshot, " + posteriorProbabilities.length + " posteriors for " 
+						+ pCounter.length + " / " + nCounter.length + " counters");
+			}
+			this.features = features;
+			offsets = new int[features.length][];
+			for(int s = 0; s < features.length; s++){
+				offsets[s] = new int[features[s].length / 2];
+			}
+			this.posteriorProbabilities = posteriorProbabilities;
+			this.pCounter = pCounter;
+			this.nCounter = nCounter;
+		}
+		
+		Fern(final Fern other){
+			features = other.features;
+			offsets = new int[other.offsets.length][];
+			for(int s=0; s<offsets.length; s++){
+				offsets[s] = other.offsets[s].clone();
+			}
+			posteriorProbabilities = other.posteriorProbabilities.clone();
+			pCounter = other.pCounter.clone();
+			nCounter = other.nCounter.clone();
+		}
+		
+		void addCountUpdatePosteriors(int fernHashCode, boolean positive) {
+			if(positive){
+				pCounter[fernHashCode] ++;
+			}else{
+				nCounter[fernHashCode] ++;
+			}
+			
+			posteriorProbabilities[fernHashCode] = ((double)pCounter[fernHashCode]) / (pCounter[fernHashCode] + nCounter[fernHashCode]);
+		}
+		
+		
+		/**
+		 * Each feature simply compares the brightness between its 2 points.
+		 * Assumes channels = 1 (hence only multiplying with cols).
+		 */
+		int calculateHashCode(int scaleIdx, byte[] imageData, int cols) {
+			final int[] scaleFeatures = features[scaleIdx];
+			int fernHashCode = 0;
+			for(int f = 0; f < scaleFeatures.length; f += 4){
+				final int pos1 = scaleFeatures[f + 1] * cols + scaleFeatures[f];
+				final int pos2 = scaleFeatures[f + 3] * cols + scaleFeatures[f + 2];
+				if(pos1 >= imageData.length || pos2 >= imageData.length) {
+					if(TldLog.isLoggable(TldLog.LEVEL_WARN)){
+						TldLog.w("Bad patch of size: " + imageData.length + " cols: " + cols + " to compare Feature: " 
+								+ scaleFeatures[f] + ", " + scaleFeatures[f + 1] + ", " + scaleFeatures[f + 2] + ", " + scaleFeatures[f + 3]);
+					}
+					fernHashCode <<= 1;
+				}else{
+					// compare returns 0 / 1
+					fernHashCode = (fernHashCode << 1) + (imageData[pos1] > imageData[pos2] ? 1 : 0);
+				}
+			}
+			
+			return fernHashCode;
+		}
+		
+		/**
+		 * No bounds checks here, the features are always inside the box, which is inside the frame.
+		 */
+		int calculateFrameHashCode(int scaleIdx, byte[] frameData, int boxOffset) {
+			final int[] scaleOffsets = offsets[scaleIdx];
+			int fernHashCode = 0;
+			for(int f = 0; f < scaleOffsets.length; f += 2){
+				fernHashCode = (fernHashCode << 1) + (frameData[boxOffset + scaleOffsets[f]] > frameData[boxOffset + scaleOffsets[f + 1]] ? 1 : 0);
+			}
+			
+			return fernHashCode;
+		}
+		
+		int calculateWarpedHashCode(int scaleIdx, WarpSampler sampler, int boxX, int boxY) {
+			final int[] scaleFeatures = features[scaleIdx];
+			int fernHashCode = 0;
+			for(int f = 0; f < scaleFeatures.length; f += 4){
+				// compared as signed bytes, the same as the other versions
+				final byte val1 = (byte) sampler.sample(boxX + scaleFeatures[f], boxY + scaleFeatures[f + 1]);
+				final byte val2 = (byte) sampler.sample(boxX + scaleFeatures[f + 2], boxY + scaleFeatures[f + 3]);
+				fernHashCode = (fernHashCode << 1) + (val1 > val2 ? 1 : 0);
+			}
+			
+			return fernHashCode;
+		}
+		
+		void calculateOffsets(int frameCols){
+			for(int s = 0; s < features.length; s++){
+				for(int i = 0; i < offsets[s].length / 2; i++){
+					offsets[s][i * 2] = features[s][i * 4 + 1] * frameCols + features[s][i * 4];
+					offsets[s][i * 2 + 1] = features[s][i * 4 + 3] * frameCols + features[s][i * 4 + 2];
+				}
+			}
+		}
+	}
+	
+	
+	int getNumFerns(){
+		return params.numFerns;
+	}
+	
+	double getFernPosThreshold(){
+		return params.pos_thr_fern;
+	}
+	
+	
+	
+	// TODO use to display the positive examples used by learning...
+//	public Mat getPosExamples(){
+//		if(pExamples == null || pExamples.size() == 0) return null;
+//			
+//		final int exRows = pExamples.get(0).rows();
+//		final int exCols = pExamples.get(0).cols();
+//		
+//		// create a Matrix that can contain vertically all the positive examples
+//		final Mat result = new Mat(pExamples.size() * exRows, exCols, CvType.CV_8U);
+//		Imgproc.
+//	}
+}
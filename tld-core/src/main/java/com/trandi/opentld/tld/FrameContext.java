@@ -0,0 +1,78 @@
+/**
+ * Copyright 2013 Dan Oprescu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trandi.opentld.tld;
+
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * What the detection needs from a frame, whatever the object: the integral images for the variance filter 
+ * and the blurred frame for the Fern features and the NN patches, with their Java copies.
+ * Calculated once per frame by {@link #prepare(Mat)}, and then only read, so it can be shared by several Tld instances 
+ * tracking different objects on the same frames, see {@link MultiTld}.
+ * 
+ * The buffers are re-used from 1 frame to the next. NOT thread safe while being prepared.
+ */
+final class FrameContext {
+	// Integral Images
+	int rows;
+	int cols;
+	private final Mat _iisum = new Mat();
+	private final Mat _iisqsum = new Mat();
+	// for performance reasons, duplicate the data directly in Java, to avoid too many native code invocations
+	int[] iisumJava = new int[0];
+	double[] iisqsumJava = new double[0];
+	
+	// the blurred frame, copied ONCE per frame in Java so that the Fern features don't need any native call
+	final Mat blurred = new Mat();
+	byte[] blurredJava;
+	
+	
+	/**
+	 * Integral images AND blurred frame
+	 */
+	void prepare(final Mat frame){
+		updateIntegralImgs(frame);
+		Imgproc.GaussianBlur(frame, blurred, Tld.BLUR_SIZE, 1.5);
+		blurredJava = Util.getByteArray(blurred, blurredJava);
+	}
+	
+	/**
+	 * Only the integral images, the arrays are re-allocated if the frame size changes
+	 */
+	void updateIntegralImgs(final Mat frame){
+		rows = frame.rows();
+		cols = frame.cols();
+		if(iisumJava.length != rows * cols){
+			iisumJava = new int[rows * cols];
+			iisqsumJava = new double[rows * cols];
+		}
+		
+		Imgproc.integral2(frame, _iisum, _iisqsum);
+		_iisum.get(0, 0, iisumJava);
+		_iisqsum.get(0, 0, iisqsumJava);
+	}
+	
+	/**
+	 * Frees the native buffers, it can still be prepared again afterwards
+	 */
+	void release(){
+		_iisum.release();
+		_iisqsum.release();
+		blurred.release();
+	}
+}
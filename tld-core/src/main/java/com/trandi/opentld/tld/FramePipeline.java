@@ -0,0 +1,216 @@
+/**
+ * Copyright 2013 Dan Oprescu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trandi.opentld.tld;
+
+import org.opencv.core.Mat;
+
+/**
+ * Decouples the capture thread from the (slower) tracking:
+ * 
+ * 	capture thread:		pipeline.submit(frame);	// copies it and returns straight away
+ * 	worker thread:		processor.process(latestFrame, result);
+ * 	render thread:		overlay(pipeline.latestResult());
+ * 
+ * Frames and results are handed over through 2 {@link TripleBuffer}s, so nobody ever waits for anybody else (apart from the idle worker)
+ * and the worker always processes the most recent frame: the ones submitted while it was busy are dropped and counted.
+ * Capture and display run at camera rate, tracking runs as fast as it can, the overlay is the result of the most recent processed frame.
+ * 
+ * Once started, submit() is to be called from 1 thread only and latestResult() from 1 thread only (can be the same).
+ * Nothing is allocated per frame, provided the frames keep the same size and type.
+ */
+public final class FramePipeline<R> {
+	/**
+	 * The slow part, only ever called from the worker thread.
+	 */
+	public static interface Processor<R> {
+		/**
+		 * Called 3 times at construction, the results are re-used from 1 frame to the next.
+		 */
+		R newResult();
+		
+		/**
+		 * @param frame the latest submitted frame, owned by the pipeline, don't keep a reference to it
+		 * @param frameNumber of this frame in the order of submission, starting at 0, with gaps for the dropped frames
+		 * @param result to be filled, it's what {@link FramePipeline#latestResult()} hands to the renderer afterwards
+		 */
+		void process(Mat frame, long frameNumber, R result);
+	}
+	
+	
+	private final Processor<R> _processor;
+	private final Frame[] _frameSlots = {new Frame(), new Frame(), new Frame()};
+	private final TripleBuffer<Frame> _frames = new TripleBuffer<Frame>(_frameSlots[0], _frameSlots[1], _frameSlots[2]);
+	private final TripleBuffer<R> _results;
+	private boolean _hasResult;	// render thread only
+	private final Object _lock = new Object();	// the idle worker waits on it
+	
+	private final String _threadName;
+	private Thread _worker;
+	private volatile boolean _running;
+	
+	// each one has a single writer thread
+	private volatile long _submitted;
+	private volatile long _dropped;
+	private volatile long _processed;
+	private volatile long _failed;
+	
+	
+	public FramePipeline(final Processor<R> processor, final String threadName){
+		if(processor == null){
+			throw new IllegalArgumentException("No processor");
+		}
+		_processor = processor;
+		_results = new TripleBuffer<R>(processor.newResult(), processor.newResult(), processor.newResult());
+		_threadName = threadName;
+	}
+	
+	public synchronized void start(){
+		if(_worker != null){
+			throw new IllegalStateException("Already started");
+		}
+		
+		_running = true;
+		_worker = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				work();
+			}
+		}, _threadName);
+		_worker.setDaemon(true);
+		_worker.start();
+	}
+	
+	/**
+	 * Stops the worker, once it has finished the frame it's processing, the frame pending if any is dropped. 
+	 * The frame buffers are freed, nothing is to be submitted until it's started again.
+	 */
+	public synchronized void stop(){
+		if(_worker == null){
+			return;
+		}
+		
+		_running = false;
+		synchronized(_lock){
+			_lock.notify();
+		}
+		try{
+			_worker.join();
+		}catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+		}
+		_worker = null;
+		
+		for(Frame frame : _frameSlots){
+			frame.mat.release();
+		}
+	}
+	
+	/**
+	 * Capture thread. Copies the frame and hands it over to the worker, dropping the previous one if it hasn't been picked up yet.
+	 * @return false if a frame has been dropped
+	 */
+	public boolean submit(final Mat frame){
+		final Frame slot = _frames.writeSlot();
+		frame.copyTo(slot.mat);
+		slot.number = _submitted;
+		
+		final boolean dropped = _frames.publish();
+		_submitted++;
+		if(dropped){
+			_dropped++;
+		}
+		synchronized(_lock){
+			_lock.notify();
+		}
+		return !dropped;
+	}
+	
+	/**
+	 * Render thread.
+	 * @return the result of the most recently processed frame, null until the 1st one has been processed. 
+	 * It's not touched by the worker until the next call.
+	 */
+	public R latestResult(){
+		if(_results.update()){
+			_hasResult = true;
+		}
+		return _hasResult ? _results.readSlot() : null;
+	}
+	
+	private void work(){
+		while(true){
+			synchronized(_lock){
+				while(_running && !_frames.hasNew()){
+					try{
+						_lock.wait();
+					}catch(InterruptedException e){
+						_running = false;
+					}
+				}
+			}
+			if(!_running){
+				return;
+			}
+			
+			_frames.update();
+			final Frame frame = _frames.readSlot();
+			try{
+				_processor.process(frame.mat, frame.number, _results.writeSlot());
+				_results.publish();
+				_processed++;
+			}catch(RuntimeException e){
+				_failed++;
+				TldLog.e("Frame processing failed, moving to the next frame", e);
+			}
+		}
+	}
+	
+	
+	/**
+	 * @return how many frames have been submitted so far
+	 */
+	public long getSubmitted(){
+		return _submitted;
+	}
+	
+	/**
+	 * @return how many submitted frames have been overwritten by a more recent one before the worker could pick them up
+	 */
+	public long getDropped(){
+		return _dropped;
+	}
+	
+	/**
+	 * @return how many frames have been processed successfully, their results published
+	 */
+	public long getProcessed(){
+		return _processed;
+	}
+	
+	/**
+	 * @return how many frames the processor has thrown for
+	 */
+	public long getFailed(){
+		return _failed;
+	}
+	
+	
+	private static final class Frame {
+		final Mat mat = new Mat();
+		long number;
+	}
+}
@@ -0,0 +1,312 @@
+/**
+ * Copyright 2013 Dan Oprescu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trandi.opentld.tld;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.Size;
+
+
+
+class Grid implements Iterable<BoundingBox>{	
+	static final float GOOD_OVERLAP = 0.6f;
+	static final float BAD_OVERLAP = 0.2f;
+	
+	private static final float SHIFT = 0.1f;
+	private static final float[] SCALES = {
+	  			0.16151f, 0.19381f, 0.23257f, 0.27908f, 0.33490f, 0.40188f, 0.48225f,
+	  			0.57870f, 0.69444f, 0.83333f, 1f, 1.20000f, 1.44000f, 1.72800f,
+	  			2.07360f, 2.48832f, 2.98598f, 3.58318f, 4.29982f, 5.15978f, 6.19174f};	
+	
+	
+	// the grid boxes, as a structure of arrays addressed by the box index, rather than 1 BoundingBox object per window
+	private int size = 0;
+	int[] x = new int[0];
+	int[] y = new int[0];
+	int[] w = new int[0];
+	int[] h = new int[0];
+	int[] scale = new int[0];
+	float[] overlap = new float[0];	// overlap with the last tracked box
+	
+	private final List<Size> trackedBoxScales = new ArrayList<Size>();
+	private int[] goodBoxes = new int[0];	// indexes of the bboxes with overlap > GOOD_OVERLAP
+	private int goodBoxesCount = 0;
+	private int[] badBoxes = new int[0];	// indexes of the bboxes with overlap < BAD_OVERLAP
+	private int badBoxesCount = 0;
+	BoundingBox bbHull = new BoundingBox(); // hull of good_boxes
+	private int bestBox = -1; // index of the maximum overlapping bbox
+	
+	Grid(){
+	}
+	
+	
+	Grid(Mat img, Rect trackedBox, int minWinSide){
+		this(img.cols(), img.rows(), trackedBox, minWinSide);
+	}
+	
+	/**
+	 * Only the frame size matters, e.g. when restoring a snapshot
+	 */
+	Grid(int cols, int rows, Rect trackedBox, int minWinSide){
+		// TODO why do we generate so many BAD boxes, only to remove them later on !?
+		// OR do we need them to re-asses which ones are bad later on ?
+		// 1st pass only counts the boxes, so that the arrays are allocated once with the exact size
+		ensureCapacity(scanScales(cols, rows, trackedBox, minWinSide, false));
+		scanScales(cols, rows, trackedBox, minWinSide, true);
+	}
+	
+	/**
+	 * @return the number of boxes in the grid
+	 */
+	private int scanScales(int cols, int rows, Rect trackedBox, int minWinSide, boolean fill){
+		int count = 0;
+		for(int s=0; s<SCALES.length; s++){
+			final int width = Math.round(trackedBox.width * SCALES[s]);
+			final int height = Math.round(trackedBox.height * SCALES[s]);
+			final int minBbSide = Math.min(height, width);
+			
+			// continue ONLY if the future box is "reasonable": bigger than the min window and smaller than the full image !
+			if(minBbSide >= minWinSide && width <= cols && height <= rows){
+				if(fill){
+					trackedBoxScales.add(new Size(width, height));
+				}
+				final int shift = Math.round(SHIFT * minBbSide);
+				
+				for(int row=1; row<(rows - height); row+=shift){
+					for(int col=1; col<(cols - width); col+=shift){
+						if(fill){
+							add(col, row, width, height, trackedBoxScales.size() - 1); // currently last one in this list
+						}
+						count++;
+					}
+				}
+			}
+		}
+		
+		return count;
+	}
+	
+	
+	void add(final BoundingBox box){
+		ensureCapacity(size + 1);
+		add(box.x, box.y, box.width, box.height, box.scaleIdx);
+		overlap[size - 1] = box.overlap;
+	}
+	
+	private void add(int boxX, int boxY, int width, int height, int scaleIdx){
+		x[size] = boxX;
+		y[size] = boxY;
+		w[size] = width;
+		h[size] = height;
+		scale[size] = scaleIdx;
+		overlap[size] = -1;
+		size++;
+	}
+	
+	private void ensureCapacity(int capacity){
+		if(capacity > x.length){
+			x = Arrays.copyOf(x, capacity);
+			y = Arrays.copyOf(y, capacity);
+			w = Arrays.copyOf(w, capacity);
+			h = Arrays.copyOf(h, capacity);
+			scale = Arrays.copyOf(scale, capacity);
+			overlap = Arrays.copyOf(overlap, capacity);
+			goodBoxes = new int[capacity];
+			badBoxes = new int[capacity];
+		}
+	}
+	
+	
+	/**
+	 * goodBoxes OUTPUT
+	 * badBoxes OUTPUT
+	 * 
+	 * This should be called AFTER updateOverlap(lastBox) so that the overlap numbers are relative to this lastBox, NOT the initial one...
+	 */
+	void updateGoodBadBoxes(final Rect trackedBox, final int numClosest) {
+		goodBoxesCount = 0;
+		badBoxesCount = 0;
+		
+		float maxOverlap = 0f;
+		for(int i = 0; i < size; i++){
+			// start by updating the overlap numbers
+			overlap[i] = BoundingBox.calcOverlap(x[i], y[i], w[i], h[i], trackedBox);
+			
+			if(overlap[i] > maxOverlap){
+				maxOverlap = overlap[i];
+				bestBox = i;
+			}
+			
+			if(overlap[i] > GOOD_OVERLAP){
+				goodBoxes[goodBoxesCount++] = i;
+			}else if(overlap[i] < BAD_OVERLAP){
+				badBoxes[badBoxesCount++] = i;
+			}
+		}
+		
+		// keep only the best numClosest (10) items in goodBoxes
+		keepBestGoodBoxes(numClosest);
+		
+		if(TldLog.DEBUG){
+			TldLog.d("Found " + goodBoxesCount + " good boxes, " + badBoxesCount + " bad boxes.");
+			TldLog.d("Best Box: " + getBestBox());
+		}
+		
+		updateBBHull();
+		if(TldLog.DEBUG){
+			TldLog.d("Bounding box hull " + bbHull);
+		}
+	}
+	
+	/**
+	 * Same as Util.keepBestN on the indexes: if there are too many, sort them in ASCENDING overlap order (stable, there are only a few of them) 
+	 * and keep the last n.
+	 */
+	private void keepBestGoodBoxes(final int n){
+		if(goodBoxesCount <= n){
+			// nothing to do, sorting is not a requirement
+			return;
+		}
+		
+		for(int i = 1; i < goodBoxesCount; i++){
+			final int box = goodBoxes[i];
+			int j = i - 1;
+			while(j >= 0 && overlap[goodBoxes[j]] > overlap[box]){
+				goodBoxes[j + 1] = goodBoxes[j];
+				j--;
+			}
+			goodBoxes[j + 1] = box;
+		}
+		System.arraycopy(goodBoxes, goodBoxesCount - n, goodBoxes, 0, n);
+		goodBoxesCount = n;
+	}
+	
+	
+	private void updateBBHull(){
+		//if(goodBoxes.isEmpty()) throw new IllegalStateException("Can't Calculate the BBHull without at least 1 good box !");			
+		int x1 = Integer.MAX_VALUE, x2 = 0;
+		int y1 = Integer.MAX_VALUE, y2 = 0;
+		for (int i = 0; i < goodBoxesCount; i++) {
+			final int goodBox = goodBoxes[i];
+			x1 = Math.min(x[goodBox], x1);
+			y1 = Math.min(y[goodBox], y1);
+			x2 = Math.max(x[goodBox] + w[goodBox], x2);
+			y2 = Math.max(y[goodBox] + h[goodBox], y2);
+		}
+		
+		bbHull.x = x1;
+		bbHull.y = y1;
+		bbHull.width = x2 - x1;
+		bbHull.height = y2 - y1;
+	}
+	
+	
+	BoundingBox[] getGoodBoxes(){
+		return getBoxes(goodBoxes, goodBoxesCount);
+	}
+	
+	/**
+	 * Creates a BoundingBox for each of them, prefer {@link #getBadBoxIndexes()} on the hot paths.
+	 */
+	BoundingBox[] getBadBoxes(){
+		return getBoxes(badBoxes, badBoxesCount);
+	}
+	
+	/**
+	 * @return the internal array, only the first {@link #getBadBoxesCount()} are valid, do NOT modify
+	 */
+	int[] getBadBoxIndexes(){
+		return badBoxes;
+	}
+	
+	int getBadBoxesCount(){
+		return badBoxesCount;
+	}
+	
+	private BoundingBox[] getBoxes(final int[] indexes, final int count){
+		final BoundingBox[] result = new BoundingBox[count];
+		for(int i = 0; i < count; i++){
+			result[i] = getBox(indexes[i]);
+		}
+		return result;
+	}
+	
+	BoundingBox getBestBox(){
+		return bestBox < 0 ? null : getBox(bestBox);
+	}
+	
+	BoundingBox getBBhull(){
+		return bbHull;
+	}
+	
+	Size[] getTrackedBoxScales(){
+		return trackedBoxScales.toArray(new Size[trackedBoxScales.size()]);
+	}
+	
+	public int getSize(){
+		return size;
+	}
+	
+	/**
+	 * @return a NEW BoundingBox, a copy of the idx grid box
+	 */
+	BoundingBox getBox(int idx){
+		return new BoundingBox(x[idx], y[idx], w[idx], h[idx], overlap[idx], scale[idx]);
+	}
+	
+	/**
+	 * Same as above, into an existing box
+	 */
+	BoundingBox getBox(int idx, BoundingBox result){
+		return result.set(x[idx], y[idx], w[idx], h[idx], overlap[idx], scale[idx]);
+	}
+
+
+	/**
+	 * For existing callers only, it creates a BoundingBox for each grid box. Hot paths should use the arrays and indexes directly.
+	 */
+	@Override
+	public Iterator<BoundingBox> iterator() {
+		return new Iterator<BoundingBox>() {
+			private int idx = 0;
+			
+			@Override
+			public boolean hasNext() {
+				return idx < size;
+			}
+
+			@Override
+			public BoundingBox next() {
+				if(idx >= size){
+					throw new NoSuchElementException();
+				}
+				return getBox(idx++);
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException("The grid is read only");
+			}
+		};
+	}
+}
@@ -0,0 +1,337 @@
+/**
+ * Copyright 2013 Dan Oprescu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trandi.opentld.tld;
+
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.core.MatOfFloat;
+import org.opencv.core.MatOfPoint2f;
+import org.opencv.core.Point;
+import org.opencv.core.Size;
+import org.opencv.core.TermCriteria;
+import org.opencv.video.Video;
+
+import com.trandi.opentld.tld.Util.Pair;
+
+class LKTracker {
+	private static final int MAX_COUNT = 20;
+	private static final double EPSILON = 0.03;
+	private static final Size WINDOW_SIZE = new Size(4, 4);
+	private static final int MAX_LEVEL = 5;
+	private static final float LAMBDA = 0f; // minEigenThreshold
+	private static final int CROSS_CORR_PATCH_WIDTH = 10;
+	private static final int CROSS_CORR_PATCH_HEIGHT = 10;
+	
+	private final TermCriteria termCriteria;
+	float errFBMed;
+	
+	// native buffers, reused from 1 frame to the next
+	private final MatOfPoint2f _lastPointsMat = new MatOfPoint2f();
+	private final MatOfPoint2f _currentPointsMat = new MatOfPoint2f();
+	private final MatOfPoint2f _trackedPointsMat = new MatOfPoint2f();
+	private final MatOfPoint2f _pointsFBMat = new MatOfPoint2f();
+	private final MatOfByte _statusMat = new MatOfByte();
+	private final MatOfFloat _errSimilarityMat = new MatOfFloat();
+	private final MatOfByte _statusFBMat = new MatOfByte();
+	private final MatOfFloat _errSimilarityFBMat = new MatOfFloat();
+	
+	// Java scratch buffers: copies of the frames for the cross correlation, and the per point arrays below
+	private static final int FRAME_0 = 0, FRAME_1 = 1, STATUS = 2;	// bytes, the 2 frame slots alternate between last and current
+	private static final int SIMILARITY = 0, ERR_FB = 1, FILTERED_ERR_FB = 2, LAST_COORDS = 3, CURRENT_COORDS = 4, TRACKED_COORDS = 5, COORDS_FB = 6;	// floats
+	private static final int FILTERED_IDX = 0;	// ints
+	private final ScratchBuffers _scratch = new ScratchBuffers(7);
+	private final int[] _lastPatch = new int[CROSS_CORR_PATCH_WIDTH * CROSS_CORR_PATCH_HEIGHT];
+	private final int[] _currentPatch = new int[CROSS_CORR_PATCH_WIDTH * CROSS_CORR_PATCH_HEIGHT];
+	// the current frame of the last cross correlation, usually the next one's last frame, and the slot of its copy
+	private Mat _copiedImg;
+	private long _copiedImgAddr;
+	private int _copiedImgSlot = FRAME_0;
+	
+	// points filtering
+	private final RobustStats _stats = new RobustStats();
+	private float[] _similarity;
+	private float[] _errFB;
+	private float[] _filteredErrFB;
+	private int[] _filteredIdx;
+	private byte[] _status;
+	// x, y of each point, in and out of the native buffers
+	private float[] _lastCoords;
+	private float[] _currentCoords;
+	private float[] _trackedCoords;
+	private float[] _coordsFB;
+	
+
+	
+	LKTracker(){
+		termCriteria = new TermCriteria(TermCriteria.COUNT + TermCriteria.EPS, MAX_COUNT, EPSILON);
+	}
+	
+	
+	/**
+	 * When lastImg is the previous call's currentImg, the copy of its pixels made by that call is re-used: 
+	 * the caller must not have written to it in place since, pass a different Mat for a modified frame.
+	 * 
+	 * @return Pair of new, FILTERED, last and current POINTS, or null if it hasn't managed to track anything.
+	 */
+	Pair<Point[], Point[]> track(final Mat lastImg, final Mat currentImg, Point[] lastPoints){
+		final PointBuffer resultLast = new PointBuffer();
+		final PointBuffer resultCurrent = new PointBuffer();
+		if(!track(lastImg, currentImg, new PointBuffer(lastPoints), resultLast, resultCurrent)){
+			return null;
+		}
+		return new Pair<Point[], Point[]>(resultLast.toArray(), resultCurrent.toArray());
+	}
+	
+	/**
+	 * Same as above, without any allocation once the buffers are big enough, and with the same contract on lastImg
+	 * 
+	 * @param resultLast OUTPUT, the FILTERED last points
+	 * @param resultCurrent OUTPUT, the FILTERED current points
+	 * @return false if it hasn't managed to track anything
+	 */
+	boolean track(final Mat lastImg, final Mat currentImg, final PointBuffer lastPoints, final PointBuffer resultLast, final PointBuffer resultCurrent){
+		resultLast.clear();
+		resultCurrent.clear();
+		final int size = lastPoints.size();
+		ensureCapacity(size);
+		
+		//Forward-Backward tracking
+		// The Java calcOpticalFlowPyrLK only takes plain images (no pre-built pyramids from buildOpticalFlowPyramid), so each call
+		// builds its own pyramids. What we can avoid is tracking backwards the points that were already lost going forward.
+		// The points go in and out of the native buffers as float coordinates, rather than through fromArray() / toArray() which create new Points
+		final float[] lastCoords = _lastCoords;
+		for(int i = 0; i < size; i++){
+			final Point point = lastPoints.get(i);
+			lastCoords[2 * i] = (float) point.x;
+			lastCoords[2 * i + 1] = (float) point.y;
+		}
+		_lastPointsMat.create(size, 1, CvType.CV_32FC2);
+		_lastPointsMat.put(0, 0, lastCoords);
+		Video.calcOpticalFlowPyrLK(lastImg, currentImg, _lastPointsMat, _currentPointsMat, 
+				_statusMat, _errSimilarityMat, WINDOW_SIZE, MAX_LEVEL, termCriteria, 0, LAMBDA);
+		
+		final byte[] status = _status;
+		_statusMat.get(0, 0, status);
+		final float[] currCoords = _currentCoords;
+		_currentPointsMat.get(0, 0, currCoords);
+		
+		int trackedCount = 0;
+		for(int i = 0; i < size; i++){
+			if(status[i] == 1){
+				_trackedCoords[2 * trackedCount] = currCoords[2 * i];
+				_trackedCoords[2 * trackedCount + 1] = currCoords[2 * i + 1];
+				trackedCount++;
+			}
+		}
+		if(trackedCount == 0){
+			TldLog.i("NO point tracked forward");
+			return false;
+		}
+		_trackedPointsMat.create(trackedCount, 1, CvType.CV_32FC2);
+		_trackedPointsMat.put(0, 0, _trackedCoords);
+		Video.calcOpticalFlowPyrLK(currentImg, lastImg, _trackedPointsMat, _pointsFBMat, 
+				_statusFBMat, _errSimilarityFBMat, WINDOW_SIZE, MAX_LEVEL, termCriteria, 0, LAMBDA);
+		
+		// compute the real FB error (relative to LAST points not the current ones...
+		// the points lost going forward are filtered out on their status anyway
+		final float[] errSimilarityFB = _errFB;
+		final float[] coordsFB = _coordsFB;
+		_pointsFBMat.get(0, 0, coordsFB);
+		for(int i = 0, t = 0; i < size; i++){
+			if(status[i] == 1){
+				errSimilarityFB[i] = Util.norm(coordsFB[2 * t], coordsFB[2 * t + 1], lastCoords[2 * i], lastCoords[2 * i + 1]);
+				t++;
+			}else{
+				errSimilarityFB[i] = Float.MAX_VALUE;
+			}
+		}
+		
+		// compute real similarity error
+		final float[] errSimilarity = normCrossCorrelation(lastImg, currentImg, lastCoords, currCoords, size, status);
+		
+		
+		//TODO  errSimilarityFB has problem != from C++
+		// filter out points with fwd-back error > the median AND points with similarity error > median
+		return filterPts(lastCoords, currCoords, size, errSimilarity, errSimilarityFB, status, resultLast, resultCurrent);
+	}
+	
+	
+	/**
+	 * Same as getRectSubPix + matchTemplate(TM_CCOEFF_NORMED) for each point, but on Java copies of the 2 frames,
+	 * so only 2 native calls per frame instead of ~4 per point. Only 1 in the usual sequence, where lastImg is the previous call's currentImg 
+	 * (the same Mat, not modified in between), whose copy is kept.
+	 * 
+	 * @param lastCoords, currentCoords x, y of each point
+	 * @return real similarities errors, in a buffer reused from 1 frame to the next
+	 */
+	private float[] normCrossCorrelation(final Mat lastImg, final Mat currentImg, final float[] lastCoords, final float[] currentCoords, final int count, final byte[] status){
+		final float[] similarity = _similarity;
+		
+		final int lastSlot = _copiedImgSlot;
+		final int currentSlot = lastSlot == FRAME_0 ? FRAME_1 : FRAME_0;
+		final byte[] lastImgData = lastImg == _copiedImg && lastImg.dataAddr() == _copiedImgAddr ? _scratch.bytes(lastSlot, 0) : _scratch.byteArray(lastSlot, lastImg);
+		final byte[] currentImgData = _scratch.byteArray(currentSlot, currentImg);
+		_copiedImg = currentImg;
+		_copiedImgAddr = currentImg.dataAddr();
+		_copiedImgSlot = currentSlot;
+		
+		for(int i = 0; i < count; i++){
+			if(status[i] == 1){
+				getRectSubPix(lastImgData, lastImg.cols(), lastImg.rows(), lastCoords[2 * i], lastCoords[2 * i + 1], CROSS_CORR_PATCH_WIDTH, CROSS_CORR_PATCH_HEIGHT, _lastPatch);
+				getRectSubPix(currentImgData, currentImg.cols(), currentImg.rows(), currentCoords[2 * i], currentCoords[2 * i + 1], CROSS_CORR_PATCH_WIDTH, CROSS_CORR_PATCH_HEIGHT, _currentPatch);
+				similarity[i] = ccoeffNormed(_lastPatch, _currentPatch, CROSS_CORR_PATCH_WIDTH * CROSS_CORR_PATCH_HEIGHT);
+			}else{
+				similarity[i] = 0f;
+			}
+		}
+		
+		return similarity;
+	}
+	
+	
+	/**
+	 * Java version of Imgproc.getRectSubPix for a CV_8U image: bilinear interpolation, replicated border, rounded back to 8 bits.
+	 * 
+	 * @param img the image data, rows x cols
+	 * @param patch OUTPUT, width x height pixels (0 - 255) around the centre
+	 */
+	static void getRectSubPix(final byte[] img, final int cols, final int rows, final Point centre, final int width, final int height, final int[] patch){
+		getRectSubPix(img, cols, rows, centre.x, centre.y, width, height, patch);
+	}
+	
+	static void getRectSubPix(final byte[] img, final int cols, final int rows, final double centreX, final double centreY, final int width, final int height, final int[] patch){
+		final double left = centreX - (width - 1) * 0.5;
+		final double top = centreY - (height - 1) * 0.5;
+		final int ix = (int) Math.floor(left);
+		final int iy = (int) Math.floor(top);
+		final float a = (float) (left - ix);
+		final float b = (float) (top - iy);
+		final float a11 = (1f - a) * (1f - b), a12 = a * (1f - b), a21 = (1f - a) * b, a22 = a * b;
+		
+		for(int row = 0; row < height; row++){
+			final int y1 = clamp(iy + row, rows) * cols;
+			final int y2 = clamp(iy + row + 1, rows) * cols;
+			for(int col = 0; col < width; col++){
+				final int x1 = clamp(ix + col, cols);
+				final int x2 = clamp(ix + col + 1, cols);
+				patch[row * width + col] = Math.round((img[y1 + x1] & 0xFF) * a11 + (img[y1 + x2] & 0xFF) * a12
+						+ (img[y2 + x1] & 0xFF) * a21 + (img[y2 + x2] & 0xFF) * a22);
+			}
+		}
+	}
+	
+	private static int clamp(final int val, final int size){
+		return val < 0 ? 0 : (val >= size ? size - 1 : val);
+	}
+	
+	/**
+	 * Same as Imgproc.matchTemplate(TM_CCOEFF_NORMED) on 2 patches of the same size, including its handling of flat patches.
+	 */
+	static float ccoeffNormed(final int[] patch1, final int[] patch2, final int size){
+		long sum1 = 0, sum2 = 0;
+		for(int i = 0; i < size; i++){
+			sum1 += patch1[i];
+			sum2 += patch2[i];
+		}
+		final double mean1 = (double) sum1 / size;
+		final double mean2 = (double) sum2 / size;
+		
+		double cross = 0, sq1 = 0, sq2 = 0;
+		for(int i = 0; i < size; i++){
+			final double d1 = patch1[i] - mean1;
+			final double d2 = patch2[i] - mean2;
+			cross += d1 * d2;
+			sq1 += d1 * d1;
+			sq2 += d2 * d2;
+		}
+		
+		final double norm = Math.sqrt(sq1 * sq2);
+		if(Math.abs(cross) < norm){
+			return (float) (cross / norm);
+		}else if(Math.abs(cross) < norm * 1.125){
+			return cross > 0 ? 1f : -1f;
+		}
+		return 0f;
+	}
+	
+	
+	/**
+	 * Keeps the points with similarity > median and FB error <= median
+	 * @return false if none were valid
+	 */
+	private boolean filterPts(final float[] lastCoords, final float[] currentCoords, final int count, final float[] similarity, final float[] errFB, final byte[] status, 
+			final PointBuffer resultLast, final PointBuffer resultCurrent){
+		final float similarityMed = _stats.median(similarity, count);
+		if(TldLog.DEBUG){
+			TldLog.d("Filter points MED SIMILARITY: " + similarityMed);
+		}
+		
+		int filteredCount = 0;
+		for(int i = 0; i < count; i++){
+			if(status[i] == 1 && similarity[i] > similarityMed){
+				_filteredIdx[filteredCount] = i;
+				_filteredErrFB[filteredCount] = errFB[i];
+				filteredCount++;
+			}
+		}
+		
+		int resultCount = 0;
+		if(filteredCount > 0){
+			// re-orders _filteredErrFB, the original values are still in errFB
+			errFBMed = RobustStats.medianInPlace(_filteredErrFB, filteredCount);
+			
+			for(int k = 0; k < filteredCount; k++){
+				// status has already been checked
+				if(errFB[_filteredIdx[k]] <= errFBMed){
+					_filteredIdx[resultCount++] = _filteredIdx[k];
+				}
+			}
+			
+			if(TldLog.DEBUG){
+				TldLog.d("Filter points MED ErrFB: " + errFBMed + " K count=" + resultCount);
+			}
+		}
+		
+		for(int k = 0; k < resultCount; k++){
+			final int i = _filteredIdx[k];
+			resultLast.add(lastCoords[2 * i], lastCoords[2 * i + 1]);
+			resultCurrent.add(currentCoords[2 * i], currentCoords[2 * i + 1]);
+		}
+		return resultCount > 0;
+	}
+	
+	/**
+	 * Gets the per point buffers, big enough for this many points
+	 */
+	private void ensureCapacity(final int size){
+		_similarity = _scratch.floats(SIMILARITY, size);
+		_errFB = _scratch.floats(ERR_FB, size);
+		_filteredErrFB = _scratch.floats(FILTERED_ERR_FB, size);
+		_filteredIdx = _scratch.ints(FILTERED_IDX, size);
+		_status = _scratch.bytes(STATUS, size);
+		_lastCoords = _scratch.floats(LAST_COORDS, 2 * size);
+		_currentCoords = _scratch.floats(CURRENT_COORDS, 2 * size);
+		_trackedCoords = _scratch.floats(TRACKED_COORDS, 2 * size);
+		_coordsFB = _scratch.floats(COORDS_FB, 2 * size);
+	}
+	
+	float getMedianErrFB(){
+		return errFBMed;
+	}
+}
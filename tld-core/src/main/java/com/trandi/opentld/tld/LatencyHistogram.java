@@ -0,0 +1,143 @@
+/**
+ * Copyright 2013 Dan Oprescu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trandi.opentld.tld;
+
+import java.util.Arrays;
+
+/**
+ * HDR style histogram of latencies (in nanoseconds): log-linear buckets, i.e. each power of 2 is split in SUB_BUCKETS / 2 linear buckets,
+ * so the relative error is bounded (~3%) whatever the value, from a few ns to hours, in a fixed ~8KB.
+ * Recording is a couple of shifts and an array increment, no allocation.
+ *
+ * NOT thread safe, see TldMetrics.
+ */
+public class LatencyHistogram {
+	private static final int SUB_BUCKET_BITS = 5;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int HALF_SUB_BUCKETS = SUB_BUCKETS >> 1;
+	private static final int BUCKETS = SUB_BUCKETS + (63 - SUB_BUCKET_BITS) * HALF_SUB_BUCKETS;
+
+	private final long[] _counts;
+	private long _totalCount;
+	private long _sum;
+	private long _min = Long.MAX_VALUE;
+	private long _max;
+
+
+	LatencyHistogram(){
+		_counts = new long[BUCKETS];
+	}
+
+	LatencyHistogram(LatencyHistogram other){
+		_counts = Arrays.copyOf(other._counts, BUCKETS);
+		_totalCount = other._totalCount;
+		_sum = other._sum;
+		_min = other._min;
+		_max = other._max;
+	}
+
+	/**
+	 * @param value negative values are recorded as 0
+	 */
+	void record(long value){
+		if(value < 0){
+			value = 0;
+		}
+		_counts[bucketIndex(value)]++;
+		_totalCount++;
+		_sum += value;
+		_min = Math.min(_min, value);
+		_max = Math.max(_max, value);
+	}
+
+	void reset(){
+		Arrays.fill(_counts, 0L);
+		_totalCount = 0;
+		_sum = 0;
+		_min = Long.MAX_VALUE;
+		_max = 0;
+	}
+
+	public long getCount(){
+		return _totalCount;
+	}
+
+	/**
+	 * @return 0 if empty
+	 */
+	public long getMin(){
+		return _totalCount == 0 ? 0 : _min;
+	}
+
+	public long getMax(){
+		return _max;
+	}
+
+	public double getMean(){
+		return _totalCount == 0 ? 0 : (double)_sum / _totalCount;
+	}
+
+	/**
+	 * @param percentile in [0, 100]
+	 * @return the highest value equivalent (i.e. in the same bucket) to the recorded value at this percentile, capped by the max. 0 if empty
+	 */
+	public long getValueAtPercentile(double percentile){
+		if(percentile < 0 || percentile > 100){
+			throw new IllegalArgumentException("Percentile has to be in [0, 100], got: " + percentile);
+		}
+		if(_totalCount == 0){
+			return 0;
+		}
+
+		final long rank = Math.max(1, (long)Math.ceil(percentile / 100 * _totalCount));
+		long seen = 0;
+		for(int i = 0; i < BUCKETS; i++){
+			seen += _counts[i];
+			if(seen >= rank){
+				return Math.min(highestEquivalentValue(i), _max);
+			}
+		}
+		return _max;
+	}
+
+
+	/**
+	 * Values below SUB_BUCKETS have their own bucket, above that each [2^n, 2^(n+1)) range is split in HALF_SUB_BUCKETS buckets
+	 */
+	static int bucketIndex(final long value){
+		if(value < SUB_BUCKETS){
+			return (int)value;
+		}
+		final int msb = 63 - Long.numberOfLeadingZeros(value);
+		// so that value >>> shift is in [HALF_SUB_BUCKETS, SUB_BUCKETS)
+		final int shift = msb - SUB_BUCKET_BITS + 1;
+		return SUB_BUCKETS + (shift - 1) * HALF_SUB_BUCKETS + (int)(value >>> shift) - HALF_SUB_BUCKETS;
+	}
+
+	static long lowestEquivalentValue(final int bucket){
+		if(bucket < SUB_BUCKETS){
+			return bucket;
+		}
+		final int shift = (bucket - SUB_BUCKETS) / HALF_SUB_BUCKETS + 1;
+		final long subBucket = (bucket - SUB_BUCKETS) % HALF_SUB_BUCKETS + HALF_SUB_BUCKETS;
+		return subBucket << shift;
+	}
+
+	static long highestEquivalentValue(final int bucket){
+		return bucket == BUCKETS - 1 ? Long.MAX_VALUE : lowestEquivalentValue(bucket + 1) - 1;
+	}
+}
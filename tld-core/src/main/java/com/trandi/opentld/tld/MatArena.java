@@ -0,0 +1,231 @@
+/**
+ * Copyright 2013 Dan Oprescu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trandi.opentld.tld;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+
+/**
+ * Pool of the temporary Mats of a frame, handed out and given back in stack order:
+ * 
+ * 	final int scope = arena.mark();
+ * 	try{
+ * 		final Mat tmp = arena.acquire();
+ * 		...
+ * 	}finally{
+ * 		arena.release(scope);
+ * 	}
+ * 
+ * Released Mats go back to the pool WITHOUT freeing their native buffer, and as the same code path acquires them in the same order
+ * from 1 frame to the next, each one keeps its size / type and OpenCV's create() has nothing to do. Otherwise every new Mat() of a frame
+ * is a native buffer which is only freed when the GC gets round to finalizing it.
+ * Views (submat) can't be pooled, they are only released at the end of their scope, so they don't keep their parent's buffer alive.
+ * 
+ * NOT thread safe, 1 arena per thread.
+ */
+final class MatArena {
+	private final boolean _leakTracking;
+	private final List<Mat> _pool = new ArrayList<Mat>();
+	private int _used;	// _pool[0, _used) are acquired
+	private final List<Mat> _views = new ArrayList<Mat>();
+	// the open scopes, with the acquired Mats and views counts when they were opened
+	private int _scopes;
+	private int[] _scopeUsed = new int[8];
+	private int[] _scopeViews = new int[8];
+	
+	// leak tracking counters, only with leakTracking
+	private long[] _dataAddr = new long[16];	// native buffer of each acquired Mat, when it was acquired
+	private long[] _shape = new long[16];	// and its rows / cols / type, as a freed buffer's address can be re-used straight away
+	private long _allocations;	// native buffers (re)allocated in pooled Mats
+	private long _viewsCreated, _viewsReleased;
+	private int _maxUsed;
+	
+	
+	/**
+	 * @param leakTracking counts the native buffers (re)allocated by the pooled Mats and the views not released yet, e.g. TldLog.DEBUG
+	 */
+	MatArena(final boolean leakTracking){
+		_leakTracking = leakTracking;
+	}
+	
+	/**
+	 * Opens a scope.
+	 * @return to be given back to {@link #release(int)} at the end of the scope
+	 */
+	int mark(){
+		if(_scopes == _scopeUsed.length){
+			_scopeUsed = Arrays.copyOf(_scopeUsed, _scopes * 2);
+			_scopeViews = Arrays.copyOf(_scopeViews, _scopes * 2);
+		}
+		_scopeUsed[_scopes] = _used;
+		_scopeViews[_scopes] = _views.size();
+		return _scopes++;
+	}
+	
+	/**
+	 * @return a pooled Mat, with whatever size, type and content it had last time, to be used as an OpenCV output
+	 */
+	Mat acquire(){
+		checkScope();
+		if(_used == _pool.size()){
+			_pool.add(new Mat());
+		}
+		if(_used == _dataAddr.length){
+			_dataAddr = Arrays.copyOf(_dataAddr, _used * 2);
+			_shape = Arrays.copyOf(_shape, _used * 2);
+		}
+		
+		final Mat result = _pool.get(_used);
+		if(_leakTracking){
+			_dataAddr[_used] = result.dataAddr();
+			_shape[_used] = shape(result);
+			_maxUsed = Math.max(_maxUsed, _used + 1);
+		}
+		_used++;
+		return result;
+	}
+	
+	/**
+	 * @return a pooled Mat of this size and type, content undefined
+	 */
+	Mat acquire(final int rows, final int cols, final int type){
+		final Mat result = acquire();
+		result.create(rows, cols, type);
+		return result;
+	}
+	
+	/**
+	 * @return parent.submat(roi), released at the end of the current scope
+	 */
+	Mat view(final Mat parent, final Rect roi){
+		checkScope();
+		final Mat result = parent.submat(roi);
+		_views.add(result);
+		if(_leakTracking){
+			_viewsCreated++;
+		}
+		return result;
+	}
+	
+	private void checkScope(){
+		if(_scopes == 0){
+			throw new IllegalStateException("No open scope, call mark() first");
+		}
+	}
+	
+	/**
+	 * Closes the scope, and the ones opened inside it and not closed yet: gives back everything acquired since its mark(), 
+	 * the pooled Mats keep their native buffer, the views are released.
+	 */
+	void release(final int scope){
+		if(scope < 0 || scope >= _scopes){
+			throw new IllegalStateException("Scope " + scope + " is not open (" + _scopes + " open scopes), released twice or out of order ?");
+		}
+		
+		releaseViews(_scopeViews[scope]);
+		final int used = _scopeUsed[scope];
+		if(_leakTracking){
+			for(int i = used; i < _used; i++){
+				final Mat mat = _pool.get(i);
+				if(mat.dataAddr() != _dataAddr[i] || shape(mat) != _shape[i]){
+					_allocations++;
+				}
+			}
+		}
+		_used = used;
+		_scopes = scope;
+	}
+	
+	private static long shape(final Mat mat){
+		return ((long) mat.rows() << 36) | ((long) mat.cols() << 8) | mat.type();
+	}
+	
+	private void releaseViews(final int from){
+		for(int i = _views.size() - 1; i >= from; i--){
+			_views.remove(i).release();
+			if(_leakTracking){
+				_viewsReleased++;
+			}
+		}
+	}
+	
+	/**
+	 * Frees all the native buffers. The arena can still be used afterwards, it starts again from an empty pool.
+	 */
+	void close(){
+		if(_scopes > 0){
+			TldLog.w("MatArena closed with " + _scopes + " scopes still open");
+		}
+		releaseViews(0);
+		for(Mat mat : _pool){
+			mat.release();
+		}
+		_pool.clear();
+		_used = 0;
+		_scopes = 0;
+	}
+	
+	/**
+	 * @return how many Mats are pooled, i.e. hold a native buffer
+	 */
+	int getPooled(){
+		return _pool.size();
+	}
+	
+	/**
+	 * @return how many pooled Mats are currently acquired
+	 */
+	int getAcquired(){
+		return _used;
+	}
+	
+	/**
+	 * @return the total size of the pooled native buffers
+	 */
+	long getPooledBytes(){
+		long result = 0;
+		for(Mat mat : _pool){
+			result += mat.total() * mat.elemSize();
+		}
+		return result;
+	}
+	
+	/**
+	 * @return how many times a pooled Mat got a new native buffer, flat in the steady state. Only with leakTracking.
+	 */
+	long getAllocations(){
+		return _allocations;
+	}
+	
+	/**
+	 * @return the views created and not released yet. Only with leakTracking.
+	 */
+	long getLiveViews(){
+		return _viewsCreated - _viewsReleased;
+	}
+	
+	/**
+	 * @return the most Mats acquired at the same time. Only with leakTracking.
+	 */
+	int getMaxAcquired(){
+		return _maxUsed;
+	}
+}
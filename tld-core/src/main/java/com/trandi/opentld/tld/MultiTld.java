@@ -0,0 +1,208 @@
+/**
+ * Copyright 2013 Dan Oprescu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trandi.opentld.tld;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+
+import com.trandi.opentld.tld.Tld.DaemonThreadFactory;
+import com.trandi.opentld.tld.Tld.ProcessFrameStruct;
+
+/**
+ * Tracks several objects on the same frames, 1 Tld per object (target).
+ * What only depends on the frame (integral images, blurred frame and its Java copy, see {@link FrameContext}) is calculated once per frame 
+ * and shared, then each target's track / detect / learn runs as 1 task on the worker pool.
+ * 
+ * The LK pyramids are still built by each target: the Java calcOpticalFlowPyrLK only takes plain images, not pre-built pyramids.
+ * Each target's detection is sequential (detection_threads is ignored), the parallelism is across the targets.
+ * 
+ * NOT thread safe, to be used from 1 thread.
+ */
+public final class MultiTld {
+	private final Properties _targetParameters;
+	private final List<Target> _targets = new ArrayList<Target>();	// null for the removed ones, so that the indexes don't change
+	private ProcessFrameStruct[] _results = new ProcessFrameStruct[0];
+	private final FrameContext _context = new FrameContext();
+	
+	// null means all the targets one after the other on the calling thread
+	private ExecutorService _executor;
+	private final boolean _ownsExecutor;
+	private final List<Target> _running = new ArrayList<Target>();
+	
+	
+	/**
+	 * @param threads how many worker threads are created, 1 to process all the targets on the calling thread
+	 */
+	public MultiTld(final Properties parameters, final int threads){
+		this(parameters, threads > 1 ? Executors.newFixedThreadPool(threads, new DaemonThreadFactory("TLD-multi-")) : null, true);
+	}
+	
+	/**
+	 * @param executor where the targets are processed, left alone by {@link #shutdown()}. Null to process them on the calling thread
+	 */
+	public MultiTld(final Properties parameters, final ExecutorService executor){
+		this(parameters, executor, false);
+	}
+	
+	private MultiTld(final Properties parameters, final ExecutorService executor, final boolean ownsExecutor){
+		_targetParameters = new Properties();
+		_targetParameters.putAll(parameters);
+		_targetParameters.setProperty("detection_threads", "1");
+		_executor = executor;
+		_ownsExecutor = ownsExecutor;
+	}
+	
+	/**
+	 * Initialises a new Tld on this object, see {@link Tld#init(Mat, Rect)}. The frames passed to {@link #processFrame(Mat, Mat)} must have the same size.
+	 * @return the index of the target, where its results are in the array returned by {@link #processFrame(Mat, Mat)}
+	 */
+	public int addTarget(final Mat frame, final Rect trackedBox){
+		final Tld tld = new Tld(_targetParameters);
+		try{
+			tld.init(frame, trackedBox);
+		}catch(RuntimeException e){
+			tld.shutdown();
+			throw e;
+		}
+		
+		final int result = _targets.size();
+		_targets.add(new Target(tld));
+		_results = new ProcessFrameStruct[_targets.size()];
+		return result;
+	}
+	
+	/**
+	 * Stops tracking this target, its result will be null from now on. The other targets keep their indexes.
+	 */
+	public void removeTarget(final int target){
+		if(target < 0 || target >= _targets.size() || _targets.get(target) == null){
+			throw new IllegalArgumentException("No target " + target);
+		}
+		
+		_targets.get(target).tld.shutdown();
+		_targets.set(target, null);
+		_results[target] = null;
+	}
+	
+	/**
+	 * @return how many targets have been added, including the removed ones
+	 */
+	public int getTargetCount(){
+		return _targets.size();
+	}
+	
+	/**
+	 * @return the Tld of this target, null if it's been removed
+	 */
+	public Tld getTarget(final int target){
+		final Target result = _targets.get(target);
+		return result == null ? null : result.tld;
+	}
+	
+	/**
+	 * Same contract on the frames as {@link Tld#processFrame(Mat, Mat)}: lastImg must not have been written to in place since it was passed as currentImg.
+	 * @return the result of each target, by index, null for the removed ones. Owned by this instance and overwritten by the next call
+	 */
+	public ProcessFrameStruct[] processFrame(final Mat lastImg, final Mat currentImg){
+		// once for all the targets
+		_context.prepare(currentImg);
+		
+		_running.clear();
+		for(Target target : _targets){
+			if(target != null){
+				target.frame(lastImg, currentImg);
+				_running.add(target);
+			}
+		}
+		
+		if(_executor == null || _running.size() < 2){
+			for(Target target : _running){
+				target.call();
+			}
+		}else{
+			try{
+				for(Future<ProcessFrameStruct> done : _executor.invokeAll(_running)){
+					done.get();
+				}
+			}catch(InterruptedException e){
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while waiting for the targets", e);
+			}catch(ExecutionException e){
+				throw new IllegalStateException("Target processing failed", e.getCause());
+			}
+		}
+		
+		for(int i = 0; i < _targets.size(); i++){
+			final Target target = _targets.get(i);
+			_results[i] = target == null ? null : target.result;
+		}
+		return _results;
+	}
+	
+	/**
+	 * Stops all the targets, and the worker threads if they have been created by this instance
+	 */
+	public void shutdown(){
+		for(Target target : _targets){
+			if(target != null){
+				target.tld.shutdown();
+			}
+		}
+		_targets.clear();
+		_results = new ProcessFrameStruct[0];
+		if(_ownsExecutor && _executor != null){
+			_executor.shutdown();
+		}
+		_executor = null;
+		_context.release();
+	}
+	
+	
+	/**
+	 * 1 target's processing of the current frame, re-used from 1 frame to the next
+	 */
+	private final class Target implements Callable<ProcessFrameStruct> {
+		final Tld tld;
+		private Mat _lastImg;
+		private Mat _currentImg;
+		ProcessFrameStruct result;
+		
+		Target(Tld tld){
+			this.tld = tld;
+		}
+		
+		void frame(final Mat lastImg, final Mat currentImg){
+			_lastImg = lastImg;
+			_currentImg = currentImg;
+		}
+		
+		@Override
+		public ProcessFrameStruct call() {
+			result = tld.processFrame(_lastImg, _currentImg, _context);
+			return result;
+		}
+	}
+}
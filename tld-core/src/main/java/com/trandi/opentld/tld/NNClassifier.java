@@ -0,0 +1,265 @@
+package com.trandi.opentld.tld;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Properties;
+
+import org.opencv.core.Mat;
+
+import com.trandi.opentld.tld.Parameters.ParamsClassifiers;
+import com.trandi.opentld.tld.Util.NNConfStruct;
+
+/**
+ * 
+ * Nearest Neighbour classifier
+ * 
+ */
+public class NNClassifier {
+	ParamsClassifiers params;
+	
+	final ExampleMatrix pExamples;
+	final ExampleMatrix nExamples;
+	
+	// scratch buffers for the scores of the candidates against all the examples, each copy has its own
+	private static final int SCORES_P = 0, SCORES_N = 1;	// floats
+	private static final int NORMS = 0;	// doubles
+	private final ScratchBuffers _scratch = new ScratchBuffers(2);
+	
+	NNClassifier(Properties props) {
+		params = new ParamsClassifiers(props);
+		
+		final ExampleMatrix.EvictionPolicy evictionPolicy = ExampleMatrix.getEvictionPolicy(params.nn_eviction_policy);
+		pExamples = new ExampleMatrix(params.nn_max_positive_examples, evictionPolicy);
+		nExamples = new ExampleMatrix(params.nn_max_negative_examples, evictionPolicy);
+	}
+	
+	private NNClassifier(final NNClassifier other){
+		params = other.params;
+		pExamples = new ExampleMatrix(other.pExamples);
+		nExamples = new ExampleMatrix(other.nExamples);
+	}
+	
+	/**
+	 * @return a deep copy of the examples, which can be trained while this one keeps being used
+	 */
+	NNClassifier copy(){
+		return new NNClassifier(this);
+	}
+	
+	/**
+	 * OUTPUT (updates) : pExamples, nExamples
+	 */
+	void trainNN(final Mat pExampleIn, final List<Mat> nExamplesIn){
+		float[] example = toArray(pExampleIn);
+		NNConfStruct nnConf = nnConf(example, 1)[0];
+		if(nnConf.relativeSimilarity <= params.pos_thr_nn){
+			if(nnConf.isin == null || nnConf.isin.idxPosSet < 0){
+				pExamples.clear();
+			}
+			pExamples.add(example, 0, example.length);
+		}
+		
+		for(Mat nEx : nExamplesIn){
+			example = toArray(nEx);
+			nnConf = nnConf(example, 1)[0];
+			if(nnConf.relativeSimilarity > params.neg_thr_nn){
+				nExamples.add(example, 0, example.length);
+			}
+		}
+		
+		if(TldLog.isInfo()){
+			TldLog.i("Trained NN examples: " + pExamples.size() + " positive " + nExamples.size() + " negative");
+		}
+	}
+	
+	
+	/**
+	 * INPUTs : pExamples, nExamples
+	 * @param example NN patch
+	 * @return Relative Similarity (rsconf), Conservative Similarity (csconf), In pos. set|Id pos set|In neg. set (isin)
+	 */
+	NNConfStruct nnConf(final Mat example) {
+		if(example == null){
+			TldLog.e("NNClass.nnConf() - Null example received, stop here");
+			return new NNConfStruct(null, 0, 0);
+		}
+		
+		return nnConf(toArray(example), 1)[0];
+	}
+	
+	/**
+	 * Batched version, scores ALL the candidates against all the examples in 1 pass.
+	 * 
+	 * @param candidates count NN patches, 1 per row of patch_size x patch_size floats
+	 * @return 1 NNConfStruct per candidate, the same as the ones from {@link #nnConf(Mat)}
+	 */
+	NNConfStruct[] nnConf(final float[] candidates, final int count) {
+		final NNConfStruct[] result = new NNConfStruct[count];
+		for(int c = 0; c < count; c++){
+			result[c] = new NNConfStruct();
+		}
+		nnConf(candidates, count, result);
+		return result;
+	}
+	
+	/**
+	 * Same as above, without allocating anything once the scratch buffers are big enough
+	 * @param result OUTPUT, its first count entries are overwritten
+	 */
+	void nnConf(final float[] candidates, final int count, final NNConfStruct[] result) {
+		if(pExamples.isEmpty()){
+			// IF positive examples in the model are not defined THEN everything is negative
+			for(int c = 0; c < count; c++){
+				result[c].set(0, 0);
+			}
+			return;
+		}
+		
+		if(nExamples.isEmpty()){
+			// IF negative examples in the model are not defined THEN everything is positive
+			for(int c = 0; c < count; c++){
+				result[c].set(1, 1);
+			}
+			return;
+		}
+		
+		// 1. measure NCC to ALL the positive and negative examples
+		final int dim = pExamples.getDim();
+		final double[] norms = _scratch.doubles(NORMS, count);
+		for(int c = 0; c < count; c++){
+			norms[c] = ExampleMatrix.norm(candidates, c * dim, dim);
+		}
+		final float[] scoresP = _scratch.floats(SCORES_P, count * pExamples.size());
+		final float[] scoresN = _scratch.floats(SCORES_N, count * nExamples.size());
+		pExamples.correlate(candidates, norms, count, scoresP);
+		nExamples.correlate(candidates, norms, count, scoresN);
+		
+		// 2. put together the result of each candidate
+		for(int c = 0; c < count; c++){
+			nnConf(scoresP, c * pExamples.size(), scoresN, c * nExamples.size(), result[c]);
+		}
+	}
+	
+	private void nnConf(final float[] scoresP, final int offsetP, final float[] scoresN, final int offsetN, final NNConfStruct result){
+		float nccP=0, csmaxP=0, maxP=0;
+		boolean anyP = false;
+		int maxPidx = 0;
+		final int validatedPart = (int) Math.ceil(pExamples.size() * params.valid);
+		for(int i = 0; i < pExamples.size(); i++){
+			nccP = (scoresP[offsetP + i] + 1) * 0.5f;
+			if(nccP > params.ncc_thesame){
+				anyP = true;
+			}
+			if(nccP > maxP){
+				maxP = nccP;
+				maxPidx = i;
+				if(i < validatedPart){
+					csmaxP = maxP;
+				}
+			}
+		}
+		
+		float nccN=0, maxN = 0;
+		boolean anyN = false;
+		int maxNidx = 0;
+		for(int i = 0; i < nExamples.size(); i++){
+			nccN = (scoresN[offsetN + i] + 1) * 0.5f;
+			if(nccN > params.ncc_thesame){
+				anyN = true;
+			}
+			if(nccN > maxN){
+				maxN = nccN;
+				maxNidx = i;
+			}
+		}
+		
+		// for the least recently matched eviction
+		if(maxP > 0){
+			pExamples.matched(maxPidx);
+		}
+		if(maxN > 0){
+			nExamples.matched(maxNidx);
+		}
+		
+		
+		//Log.i(Util.TAG, "nccP=" + nccP + ", nccN=" + nccN + ", csmaxP=" + csmaxP + ", maxP="+ maxP + ", maxN=" + maxN);
+		
+		// put together the result
+		final float dN = 1 - maxN;
+		final float dPrelative = 1 - maxP;
+		final float dPconservative = 1 - csmaxP;
+		result.set(anyP, maxPidx, anyN, dN / (dN + dPrelative), dN / (dN + dPconservative));
+	}
+	
+	/**
+	 * @return a NEW array with the pattern's data, the examples keep it
+	 */
+	private static float[] toArray(final Mat pattern){
+		return Util.getFloatArray(pattern, null);
+	}
+	
+	
+	
+	/**
+	 * Updates  NN threshold in case the negative threshold are above them.
+	 * The Pos threshold has to be > to the negative one.
+	 */
+	void evaluateThreshold(final List<Mat> nExamplesTest){
+		for(Mat ex : nExamplesTest){
+			final NNConfStruct nnConf = nnConf(ex);
+			if(nnConf.relativeSimilarity > params.pos_thr_nn){
+				params.pos_thr_nn = nnConf.relativeSimilarity;
+			}
+		}
+		if(params.pos_thr_nn > params.pos_thr_nn_valid){
+			params.pos_thr_nn_valid = params.pos_thr_nn;
+		}
+	}
+	
+	
+	
+	
+	/**
+	 * @return how many bytes {@link #writeSnapshot(ByteBuffer)} writes
+	 */
+	int getSnapshotSize(){
+		return 4 + 4 + pExamples.getSnapshotSize() + nExamples.getSnapshotSize();
+	}
+	
+	/**
+	 * The thresholds evaluateThreshold() has updated and all the examples
+	 */
+	void writeSnapshot(final ByteBuffer buffer){
+		buffer.putFloat(params.pos_thr_nn);
+		buffer.putFloat(params.pos_thr_nn_valid);
+		pExamples.writeSnapshot(buffer);
+		nExamples.writeSnapshot(buffer);
+	}
+	
+	void readSnapshot(final ByteBuffer buffer){
+		params.pos_thr_nn = buffer.getFloat();
+		params.pos_thr_nn_valid = buffer.getFloat();
+		pExamples.readSnapshot(buffer);
+		nExamples.readSnapshot(buffer);
+	}
+	
+	
+	/**
+	 * @return how many positive examples have been dropped because the memory was full
+	 */
+	long getPositiveEvictions(){
+		return pExamples.getEvictions();
+	}
+	
+	long getNegativeEvictions(){
+		return nExamples.getEvictions();
+	}
+	
+	float getNNThreshold(){
+		return params.pos_thr_nn;
+	}
+	
+	float getNNThresholdValid(){
+		return params.pos_thr_nn_valid;
+	}
+}
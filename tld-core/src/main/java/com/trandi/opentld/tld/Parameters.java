@@ -43,9 +43,29 @@ class Parameters {
 
 		// parameters for negative examples
 		float num_bad_patches;
+		// the positive examples' ferns are sampled through the random warps, without building the warped images
+		boolean warp_sampling;
+		// at most this many bad boxes rejected early by the Fern cascade get their hash codes completed per learning frame, evenly spread (0 for none).
+		// So with fern_cascade AND learning, the Fern classifier learns from fewer negatives than the plain ensemble would: a different model, not only a faster one
+		int fern_cascade_max_negatives;
 		
 		
 		float tracker_stability_FBerrMax;
+		// the box scale change uses at most this many random pairs of tracked points, 0 means ALL the pairs
+		int tracker_scale_max_pairs;
+		
+		// detection, 1 means sequential on the calling thread
+		int detection_threads;
+		// region of interest detection while the tracking is confident, a full scan every detection_full_scan_interval frames (1 means ALWAYS)
+		// The learning only gets negatives from the scanned boxes: near the object on the ROI frames, the far away background only on the full scans
+		int detection_full_scan_interval;
+		float detection_roi_margin;
+		int detection_roi_scales;
+		// inline (on the calling thread), async (background, latest model used as soon as published), deterministic (background, but waited for before the next frame)
+		// or none (only the initial model, the steady state frames don't allocate anything on the Java heap)
+		String learning_mode;
+		// per stage latency metrics of 1 frame every metrics_sample_interval, 0 means disabled
+		int metrics_sample_interval;
 		
 		protected ParamsTld(){
 			super(null);		
@@ -75,8 +95,18 @@ class Parameters {
 			scale_update = getFloat("scale_update");
 			// parameters for negative examples
 			num_bad_patches = getInt("num_bad_patches");
+			warp_sampling = getBoolean("warp_sampling", false);
+			fern_cascade_max_negatives = getInt("fern_cascade_max_negatives", 1000);
 			
 			tracker_stability_FBerrMax = getFloat("tracker_stability_FBerrMax");
+			tracker_scale_max_pairs = getInt("tracker_scale_max_pairs", 0);
+			
+			detection_threads = getInt("detection_threads", 1);
+			detection_full_scan_interval = getInt("detection_full_scan_interval", 1);
+			detection_roi_margin = getFloat("detection_roi_margin", 1f);
+			detection_roi_scales = getInt("detection_roi_scales", 2);
+			learning_mode = getString("learning_mode", "inline");
+			metrics_sample_interval = getInt("metrics_sample_interval", 0);
 		}	
 	}	
 	
@@ -91,6 +121,12 @@ class Parameters {
 		float pos_thr_nn;
 		float pos_thr_nn_valid;
 		float neg_thr_nn;
+		// same detections as the plain ensemble for less work, but see ParamsTld.fern_cascade_max_negatives for the learning
+		boolean fern_cascade;
+		// NN examples memory, 0 means unbounded
+		int nn_max_positive_examples;
+		int nn_max_negative_examples;
+		String nn_eviction_policy;
 
 		ParamsClassifiers(){
 			super(null);
@@ -108,6 +144,10 @@ class Parameters {
 			pos_thr_nn = getFloat("pos_thr_nn");
 			pos_thr_nn_valid = getFloat("pos_thr_nn_valid");
 			neg_thr_nn = getFloat("neg_thr_nn", 0.5f);
+			fern_cascade = getBoolean("fern_cascade", false);
+			nn_max_positive_examples = getInt("nn_max_positive_examples", 0);
+			nn_max_negative_examples = getInt("nn_max_negative_examples", 0);
+			nn_eviction_policy = getString("nn_eviction_policy", "most_redundant");
 		}
 	}	
 	
@@ -124,6 +164,30 @@ class Parameters {
 		throw new IllegalArgumentException("Parameter " + propName + " has NOT been provided.");
 	}
 	
+	protected int getInt(String propName, int defaultValue){
+		if(props.containsKey(propName)){
+			return Integer.valueOf(props.getProperty(propName));
+		}
+		
+		return defaultValue;
+	}
+	
+	protected boolean getBoolean(String propName, boolean defaultValue){
+		if(props.containsKey(propName)){
+			return Boolean.valueOf(props.getProperty(propName));
+		}
+		
+		return defaultValue;
+	}
+	
+	protected String getString(String propName, String defaultValue){
+		if(props.containsKey(propName)){
+			return props.getProperty(propName).trim();
+		}
+		
+		return defaultValue;
+	}
+	
 	protected float getFloat(String propName){
 		if(props.containsKey(propName)){
 			return Float.valueOf(props.getProperty(propName));
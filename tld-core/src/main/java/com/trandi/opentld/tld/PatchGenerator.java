@@ -16,10 +16,11 @@
 
 package com.trandi.opentld.tld;
 
+import java.util.Random;
+
 import org.opencv.core.Core;
 import org.opencv.core.CvType;
 import org.opencv.core.Mat;
-import org.opencv.core.MatOfDouble;
 import org.opencv.core.Point;
 import org.opencv.core.Scalar;
 import org.opencv.core.Size;
@@ -39,6 +40,15 @@ class PatchGenerator {
 	final double phiMin; 
 	final double phiMax;	
 	
+	// native buffers, reused from 1 warp to the next, so only 1 thread at a time (the learning one)
+	private final Mat _transform = new Mat();
+	private final Mat _noise = new Mat();
+	// the noise is drawn in Java, seeded from the caller's RNG: Core.randn's generator is per thread, the warps would depend on which one learns.
+	// A Gaussian per pixel is too slow in Java, so each pixel picks one of a table of randn(128, noiseRange) values saturated to 8 bits
+	private static final int NOISE_TABLE_BITS = 16;
+	private final byte[] _noiseTable;
+	private byte[] _noiseData;
+	
 
 	PatchGenerator(double backgroundMin, double backgroundMax, double noiseRange, boolean randomBlur,
             double lambdaMin, double lambdaMax, double thetaMin, double thetaMax, double phiMin, double phiMax )
@@ -53,15 +63,56 @@ class PatchGenerator {
 		this.thetaMax = thetaMax; 
 		this.phiMin = phiMin; 
 		this.phiMax = phiMax;
+		
+		_noiseTable = new byte[noiseRange > 0 ? 1 << NOISE_TABLE_BITS : 0];
+		final Random random = new Random(0);
+		for(int i = 0; i < _noiseTable.length; i++){
+			final long value = Math.round(128 + noiseRange * random.nextGaussian());
+			_noiseTable[i] = (byte) (value < 0 ? 0 : (value > 255 ? 255 : value));
+		}
 	}
 	
 	void generate(final Mat image, Point pt, Mat patch, Size patchSize, final RNG rng) {
-		final Mat T = new MatOfDouble();
-		
 		// TODO why is inverse not specified in the original C++ code
-		generateRandomTransform(pt, new Point((patchSize.width - 1) * 0.5, (patchSize.height - 1) * 0.5), T, false);
+		generateRandomTransform(pt, new Point((patchSize.width - 1) * 0.5, (patchSize.height - 1) * 0.5), _transform, false, rng);
 		
-		generate(image, T, patch, patchSize, rng);
+		generate(image, _transform, patch, patchSize, rng);
+	}
+	
+	
+	/**
+	 * Warp sampling version of the above: draws the same kind of random transform, blur and noise, but only hands them 
+	 * to the sampler, which then computes the warped patch pixels on demand.
+	 * 
+	 * @param pt centre of the patch in the frame
+	 * @param patchBox the patch position in the frame
+	 */
+	void prepareWarp(final Point pt, final BoundingBox patchBox, final WarpSampler sampler, final RNG rng){
+		generateRandomTransform(pt, new Point((patchBox.width - 1) * 0.5, (patchBox.height - 1) * 0.5), _transform, false, rng);
+		final double[] t = new double[6];
+		_transform.get(0, 0, t);
+		
+		final int ksize = randomBlurKernel(rng);
+		final long noiseSeed = Util.nextLong(rng);
+		// T maps the frame to the patch, the sampler needs the other way round
+		sampler.setWarp(invertAffine(t), patchBox.x, patchBox.y, ksize, noiseSeed);
+	}
+	
+	/**
+	 * Java version of Imgproc.invertAffineTransform, for a 2x3 matrix in row order
+	 */
+	static double[] invertAffine(final double[] t){
+		final double det = t[0] * t[4] - t[1] * t[3];
+		final double a = t[4] / det, b = -t[1] / det, d = -t[3] / det, e = t[0] / det;
+		return new double[]{a, b, -(a * t[2] + b * t[5]), d, e, -(d * t[2] + e * t[5])};
+	}
+	
+	/**
+	 * @return 0 (no blur) most of the time, otherwise a Gaussian kernel size of 3, 5 or 7
+	 */
+	int randomBlurKernel(final RNG rng){
+		final int ksize = randomBlur ? rng.nextInt() % 9 - 5 : 0;
+		return ksize > 0 ? ksize * 2 + 1 : 0;
 	}
 	
 	
@@ -82,19 +133,31 @@ class PatchGenerator {
 	    	Imgproc.warpAffine(image, patch, T, patchSize, Imgproc.INTER_LINEAR, Imgproc.BORDER_CONSTANT, new Scalar(backgroundMin));
 	    }
 
-	    int ksize = randomBlur ? rng.nextInt() % 9 - 5 : 0;
+	    final int ksize = randomBlurKernel(rng);
 	    if( ksize > 0 ) {
-	        ksize = ksize * 2 + 1;
 	        Imgproc.GaussianBlur(patch, patch, new Size(ksize, ksize), 0, 0);
 	    }
 
 	    if( noiseRange > 0 ) {
-	        final Mat noise = new Mat(patchSize, image.type());
-	        int delta = (image.depth() == CvType.CV_8U ? 128 : (image.depth() == CvType.CV_16U ? 32768 : 0));
-	        Core.randn(noise, delta, noiseRange);
+	        // the frames are always 8 bits grey, as the noise table
+	        final int delta = 128;
+	        final int size = (int) patchSize.area();
+	        if(_noiseData == null || _noiseData.length != size){
+	        	_noiseData = new byte[size];
+	        }
+	        // xorshift64, never 0
+	        long x = Util.nextLong(rng) | 1;
+	        for(int i = 0; i < size; i++){
+	        	x ^= x << 13;
+	        	x ^= x >>> 7;
+	        	x ^= x << 17;
+	        	_noiseData[i] = _noiseTable[(int) (x >>> (64 - NOISE_TABLE_BITS))];
+	        }
+	        _noise.create(patchSize, CvType.CV_8U);
+	        _noise.put(0, 0, _noiseData);
 	        
 	        // TODO this was different !!
-	        Core.addWeighted(patch, 1, noise, 1, -delta, patch);
+	        Core.addWeighted(patch, 1, _noise, 1, -delta, patch);
 	        
 //	        if( backgroundMin != backgroundMax )
 //	            addWeighted(patch, 1, noise, 1, -delta, patch);
@@ -120,17 +183,13 @@ class PatchGenerator {
 	 * @param dstCenter
 	 * @param transform OUTPUT
 	 * @param inverse
+	 * @param rng all the random parameters come from it
 	 */
-	private void generateRandomTransform(Point srcCenter, Point dstCenter, Mat transform, boolean inverse) {
-		MatOfDouble tempRand = new MatOfDouble(0d, 0d);
-		Core.randu(tempRand, lambdaMin, lambdaMax);
-		final double[] rands = tempRand.toArray();
-		final double lambda1 = rands[0];
-		final double lambda2 = rands[1];
-		Core.randu(tempRand, thetaMin, thetaMax);
-		final double theta = tempRand.toArray()[0];
-		Core.randu(tempRand, phiMin, phiMax);
-		final double phi = tempRand.toArray()[0];
+	private void generateRandomTransform(Point srcCenter, Point dstCenter, Mat transform, boolean inverse, final RNG rng) {
+		final double lambda1 = uniform(rng, lambdaMin, lambdaMax);
+		final double lambda2 = uniform(rng, lambdaMin, lambdaMax);
+		final double theta = uniform(rng, thetaMin, thetaMax);
+		final double phi = uniform(rng, phiMin, phiMax);
 		
 		
 		// Calculate random parameterized affine transformation A,
@@ -161,4 +220,8 @@ class PatchGenerator {
 	        Imgproc.invertAffineTransform(transform, transform);
 	    }
 	}
+	
+	private static double uniform(final RNG rng, final double min, final double max){
+		return min + (max - min) * rng.nextFloat();
+	}
 }
@@ -0,0 +1,112 @@
+/**
+ * Copyright 2013 Dan Oprescu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trandi.opentld.tld;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Turns the patch of a box into the NN classifier's input: resized to patch_size x patch_size, zero mean, CV_32F.
+ * 
+ * The patch is sampled straight from the whole image by warpAffine(), at the same pixel centres as resize() of a submat would, 
+ * so there's no sub matrix to allocate, and the mean / stdev are calculated on the Java copy.
+ * The buffers are re-used from 1 call to the next, NOT thread safe, 1 instance per thread.
+ */
+final class PatternSampler {
+	private static final Scalar BORDER = new Scalar(0);
+	
+	private final int _size;
+	private final Size _patternSize;
+	private final Mat _transform = new Mat(2, 3, CvType.CV_64F);
+	private final double[] _transformData = new double[6];
+	private final Mat _resized = new Mat();
+	private final byte[] _pixels;
+	private final float[] _data;
+	private double _stdev;
+	
+	
+	PatternSampler(final int patternSize){
+		_size = patternSize;
+		_patternSize = new Size(patternSize, patternSize);
+		_pixels = new byte[patternSize * patternSize];
+		_data = new float[patternSize * patternSize];
+	}
+	
+	int getPatternSize(){
+		return _size;
+	}
+	
+	/**
+	 * @param roi has to be inside img
+	 * @return the zero mean pattern, in a buffer re-used by the next call
+	 */
+	float[] sample(final Mat img, final Rect roi){
+		if(roi.width <= 0 || roi.height <= 0){
+			throw new IllegalArgumentException("Empty patch: " + roi);
+		}
+		
+		// dst(x, y) = src(scaleX * x + offsetX, scaleY * y + offsetY), pixel centres mapped onto pixel centres, as resize() does
+		final double scaleX = (double) roi.width / _size;
+		final double scaleY = (double) roi.height / _size;
+		_transformData[0] = scaleX;
+		_transformData[2] = roi.x + 0.5 * scaleX - 0.5;
+		_transformData[4] = scaleY;
+		_transformData[5] = roi.y + 0.5 * scaleY - 0.5;
+		_transform.put(0, 0, _transformData);
+		Imgproc.warpAffine(img, _resized, _transform, _patternSize, Imgproc.INTER_LINEAR | Imgproc.WARP_INVERSE_MAP, Imgproc.BORDER_REPLICATE, BORDER);
+		_resized.get(0, 0, _pixels);
+		
+		final int count = _pixels.length;
+		double sum = 0, sqSum = 0;
+		for(int i = 0; i < count; i++){
+			final int pixel = _pixels[i] & 0xFF;
+			sum += pixel;
+			sqSum += pixel * pixel;
+		}
+		final double mean = sum / count;
+		_stdev = Math.sqrt(Math.max(sqSum / count - mean * mean, 0));
+		
+		final float floatMean = (float) mean;
+		for(int i = 0; i < count; i++){
+			_data[i] = (_pixels[i] & 0xFF) - floatMean;
+		}
+		return _data;
+	}
+	
+	/**
+	 * Same as above, as a Mat
+	 * @param pattern OUTPUT, patch_size x patch_size CV_32F
+	 * @return the stdev of the patch
+	 */
+	double sample(final Mat img, final Rect roi, final Mat pattern){
+		sample(img, roi);
+		pattern.create(_size, _size, CvType.CV_32F);
+		pattern.put(0, 0, _data);
+		return _stdev;
+	}
+	
+	/**
+	 * @return the stdev of the last sampled patch, before the mean was removed
+	 */
+	double getStdev(){
+		return _stdev;
+	}
+}
@@ -0,0 +1,84 @@
+/**
+ * Copyright 2013 Dan Oprescu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trandi.opentld.tld;
+
+import java.util.Arrays;
+
+import org.opencv.core.Point;
+
+/**
+ * Growable array of Points, re-used from 1 frame to the next with its Point objects, so that the tracking doesn't allocate.
+ * Only the first size() are valid.
+ */
+final class PointBuffer {
+	private Point[] _points = new Point[0];
+	private int _size;
+	
+	
+	PointBuffer(){
+	}
+	
+	PointBuffer(final Point[] points){
+		for(Point point : points){
+			add(point.x, point.y);
+		}
+	}
+	
+	void clear(){
+		_size = 0;
+	}
+	
+	void add(final double x, final double y){
+		if(_size == _points.length){
+			_points = Arrays.copyOf(_points, Math.max(16, _size * 2));
+		}
+		Point point = _points[_size];
+		if(point == null){
+			point = new Point();
+			_points[_size] = point;
+		}
+		point.x = x;
+		point.y = y;
+		_size++;
+	}
+	
+	int size(){
+		return _size;
+	}
+	
+	Point get(final int idx){
+		return _points[idx];
+	}
+	
+	/**
+	 * @return the underlying array, which can be longer than size()
+	 */
+	Point[] array(){
+		return _points;
+	}
+	
+	/**
+	 * @return a NEW array with copies of the valid points
+	 */
+	Point[] toArray(){
+		final Point[] result = new Point[_size];
+		for(int i = 0; i < _size; i++){
+			result[i] = _points[i].clone();
+		}
+		return result;
+	}
+}
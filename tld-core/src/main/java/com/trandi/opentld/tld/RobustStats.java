@@ -0,0 +1,169 @@
+/**
+ * Copyright 2013 Dan Oprescu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trandi.opentld.tld;
+
+import org.opencv.core.Point;
+
+/**
+ * Medians (quickselect, no sorting) and the pairwise scale estimation of the tracker, on primitive scratch buffers
+ * reused from 1 call to the next, so nothing gets allocated once the buffers are big enough.
+ * 
+ * The medians are the same element as Util.median(), i.e. the one at index n/2 once sorted.
+ * 
+ * NOT thread safe.
+ */
+class RobustStats {
+	// fixed seed, so the subsampled scale is the same for the same points
+	private static final long SEED = 0x2545F4914F6CDD1DL;
+	
+	private final int _maxPairs;	// 0 means ALL the pairs
+	private float[] _scratch = new float[0];
+	private long _rndState;
+	
+	
+	RobustStats(){
+		this(0);
+	}
+	
+	/**
+	 * @param maxPairs the pairwise scale uses at most this many (random) pairs of points, 0 means ALL of them
+	 */
+	RobustStats(final int maxPairs){
+		if(maxPairs < 0){
+			throw new IllegalArgumentException("The max number of pairs has to be >= 0 (0 means ALL), got: " + maxPairs);
+		}
+		_maxPairs = maxPairs;
+	}
+	
+	
+	/**
+	 * @return the median of vals[0, count), vals is left untouched
+	 */
+	float median(final float[] vals, final int count){
+		final float[] scratch = scratch(count);
+		System.arraycopy(vals, 0, scratch, 0, count);
+		return medianInPlace(scratch, count);
+	}
+	
+	/**
+	 * @return the median of the horizontal (or vertical) moves from points1 to points2
+	 */
+	float medianShift(final Point[] points1, final Point[] points2, final int count, final boolean horizontal){
+		final float[] d = scratch(count);
+		for(int i = 0; i < count; i++){
+			d[i] = (float) (horizontal ? points2[i].x - points1[i].x : points2[i].y - points1[i].y);
+		}
+		return medianInPlace(d, count);
+	}
+	
+	/**
+	 * @return the median of the distance ratios between pairs of points, i.e. the scale change from points1 to points2
+	 */
+	float pairwiseScale(final Point[] points1, final Point[] points2, final int count){
+		final int allPairs = count * (count - 1) / 2;
+		if(allPairs == 0){
+			return 1f;
+		}
+		
+		if(_maxPairs == 0 || allPairs <= _maxPairs){
+			final float[] d = scratch(allPairs);
+			int idx = 0;
+			for(int i = 0; i < count; i++){
+				for(int j = i + 1; j < count; j++){
+					d[idx++] = Util.norm(points2[i], points2[j]) / Util.norm(points1[i], points1[j]);
+				}
+			}
+			return medianInPlace(d, allPairs);
+		}
+		
+		// bounded cost, random pairs of distinct points
+		final float[] d = scratch(_maxPairs);
+		_rndState = SEED;
+		for(int k = 0; k < _maxPairs; k++){
+			final int i = nextInt(count);
+			int j = nextInt(count - 1);
+			if(j >= i) j++;
+			d[k] = Util.norm(points2[i], points2[j]) / Util.norm(points1[i], points1[j]);
+		}
+		return medianInPlace(d, _maxPairs);
+	}
+	
+	
+	/**
+	 * Quickselect, re-orders vals[0, count)
+	 * Float.compare() gives the same order as Arrays.sort(), NaNs last.
+	 */
+	static float medianInPlace(final float[] vals, final int count){
+		if(count <= 0){
+			throw new IllegalArgumentException("Can't calculate the median of " + count + " values");
+		}
+		
+		final int k = count / 2;
+		int left = 0, right = count - 1;
+		while(right > left){
+			// median of 3 pivot, protects against the already sorted inputs
+			final int mid = (left + right) >>> 1;
+			if(Float.compare(vals[mid], vals[left]) < 0) swap(vals, mid, left);
+			if(Float.compare(vals[right], vals[left]) < 0) swap(vals, right, left);
+			if(Float.compare(vals[right], vals[mid]) < 0) swap(vals, right, mid);
+			final float pivot = vals[mid];
+			
+			int i = left, j = right;
+			while(i <= j){
+				while(Float.compare(vals[i], pivot) < 0) i++;
+				while(Float.compare(vals[j], pivot) > 0) j--;
+				if(i <= j){
+					swap(vals, i, j);
+					i++;
+					j--;
+				}
+			}
+			
+			if(k <= j){
+				right = j;
+			}else if(k >= i){
+				left = i;
+			}else{
+				break;	// between j and i everything is equal to the pivot
+			}
+		}
+		return vals[k];
+	}
+	
+	private static void swap(final float[] vals, final int i, final int j){
+		final float tmp = vals[i];
+		vals[i] = vals[j];
+		vals[j] = tmp;
+	}
+	
+	private float[] scratch(final int size){
+		if(_scratch.length < size){
+			_scratch = new float[size];
+		}
+		return _scratch;
+	}
+	
+	/**
+	 * xorshift, cheaper than java.util.Random and no allocation
+	 */
+	private int nextInt(final int bound){
+		_rndState ^= _rndState << 13;
+		_rndState ^= _rndState >>> 7;
+		_rndState ^= _rndState << 17;
+		return (int) ((_rndState >>> 33) % bound);
+	}
+}
@@ -0,0 +1,102 @@
+/**
+ * Copyright 2013 Dan Oprescu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trandi.opentld.tld;
+
+import org.opencv.core.Mat;
+
+/**
+ * Java scratch buffers re-used from 1 call to the next, instead of a new array every time (or the shared static ones Util used to have).
+ * Each owner (classifier, tracker...) numbers its own slots, and asks for the size it needs every time: 
+ * a slot is only re-allocated when it's too small, so once warmed up nothing is allocated anymore.
+ * 
+ * NOT thread safe, 1 per instance (or per thread), the content of a slot is only valid until its next use.
+ */
+final class ScratchBuffers {
+	private final byte[][] _bytes;
+	private final int[][] _ints;
+	private final float[][] _floats;
+	private final double[][] _doubles;
+	
+	
+	/**
+	 * @param slots how many buffers of each type
+	 */
+	ScratchBuffers(final int slots){
+		_bytes = new byte[slots][0];
+		_ints = new int[slots][0];
+		_floats = new float[slots][0];
+		_doubles = new double[slots][0];
+	}
+	
+	/**
+	 * @return a buffer of at least size elements, content undefined
+	 */
+	byte[] bytes(final int slot, final int size){
+		if(_bytes[slot].length < size){
+			_bytes[slot] = new byte[size];
+		}
+		return _bytes[slot];
+	}
+	
+	int[] ints(final int slot, final int size){
+		if(_ints[slot].length < size){
+			_ints[slot] = new int[size];
+		}
+		return _ints[slot];
+	}
+	
+	float[] floats(final int slot, final int size){
+		if(_floats[slot].length < size){
+			_floats[slot] = new float[size];
+		}
+		return _floats[slot];
+	}
+	
+	double[] doubles(final int slot, final int size){
+		if(_doubles[slot].length < size){
+			_doubles[slot] = new double[size];
+		}
+		return _doubles[slot];
+	}
+	
+	/**
+	 * @return the whole CV_8UC1 Mat, in a buffer of exactly its size, see {@link Util#getByteArray(Mat, byte[])}
+	 */
+	byte[] byteArray(final int slot, final Mat mat){
+		_bytes[slot] = Util.getByteArray(mat, _bytes[slot]);
+		return _bytes[slot];
+	}
+	
+	/**
+	 * @return the whole CV_32FC1 Mat, in a buffer of exactly its size, see {@link Util#getFloatArray(Mat, float[])}
+	 */
+	float[] floatArray(final int slot, final Mat mat){
+		_floats[slot] = Util.getFloatArray(mat, _floats[slot]);
+		return _floats[slot];
+	}
+	
+	/**
+	 * @return how many bytes the buffers currently hold
+	 */
+	long getSize(){
+		long result = 0;
+		for(int slot = 0; slot < _bytes.length; slot++){
+			result += _bytes[slot].length + 4L * _ints[slot].length + 4L * _floats[slot].length + 8L * _doubles[slot].length;
+		}
+		return result;
+	}
+}
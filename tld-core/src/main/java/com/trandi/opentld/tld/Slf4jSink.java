@@ -0,0 +1,39 @@
+/**
+ * Copyright 2013 Dan Oprescu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trandi.opentld.tld;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends the TLD logging to SLF4J: TldLog.setSink(new Slf4jSink()). slf4j-api is an optional dependency, only needed if this sink is used
+ */
+public class Slf4jSink implements TldLog.Sink {
+	@Override
+	public void log(int level, String tag, String msg, Throwable throwable) {
+		final Logger logger = LoggerFactory.getLogger(tag);
+		if(level >= TldLog.LEVEL_ERROR){
+			logger.error(msg, throwable);
+		}else if(level >= TldLog.LEVEL_WARN){
+			logger.warn(msg, throwable);
+		}else if(level >= TldLog.LEVEL_INFO){
+			logger.info(msg, throwable);
+		}else{
+			logger.debug(msg, throwable);
+		}
+	}
+}
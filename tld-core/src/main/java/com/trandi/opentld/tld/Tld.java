@@ -0,0 +1,1453 @@
+/**
+ * Copyright 2013 Dan Oprescu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trandi.opentld.tld;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfDouble;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import com.trandi.opentld.tld.FernEnsembleClassifier.CascadeStats;
+import com.trandi.opentld.tld.Parameters.ParamsTld;
+import com.trandi.opentld.tld.Util.DefaultRNG;
+import com.trandi.opentld.tld.Util.NNConfStruct;
+import com.trandi.opentld.tld.Util.Pair;
+import com.trandi.opentld.tld.Util.RNG;
+
+
+public class Tld {
+	private static final int MAX_DETECTED = 100;
+	// how many grid partitions per detection thread, so that a slow partition doesn't hold back the whole frame
+	private static final int PARTITIONS_PER_THREAD = 4;
+	private static final String LEARNING_INLINE = "inline";
+	private static final String LEARNING_ASYNC = "async";
+	private static final String LEARNING_DETERMINISTIC = "deterministic";
+	private static final String LEARNING_NONE = "none";
+	static final Size BLUR_SIZE = new Size(9, 9);
+	
+	
+	ParamsTld _params;
+	private Properties _parameters;	// to create the classifiers a snapshot is loaded into
+	FernEnsembleClassifier _classifierFern;
+	NNClassifier _classifierNN;
+	private final LKTracker _tracker = new LKTracker();
+	private final RobustStats _trackerStats;
+	private PatchGenerator _patchGenerator; // FIXME UNUSED, why !?
+	private final RNG _rng;
+	
+	
+	// Integral Images and blurred frame of the current frame, either its own or shared with other instances (MultiTld)
+	private final FrameContext _ownContext = new FrameContext();
+	private FrameContext _ctx = _ownContext;
+	private boolean _prepareContext = true;	// false if the shared context has already been prepared by the caller
+	private float _var; // variance of the initial patch/box. Will be used by the 1st stage of the classifier.
+	
+	// Training data
+	Mat _pExample = new Mat(); // positive NN example
+	final List<Pair<int[], Boolean>> _pFerns = new ArrayList<Pair<int[], Boolean>>();	//positive ferns <allFernsHashCodes, true>
+	private final List<Mat> _pPatterns = new ArrayList<Mat>(); //positive patches to display
+	private List<Mat> _nExamples;
+
+	// Last frame data
+	private Rect _initBox;	// the grid's configuration, with the frame size
+	private Size _frameSize;
+	private BoundingBox _lastbox;	// null or _lastboxStorage
+	private final BoundingBox _lastboxStorage = new BoundingBox();
+	private boolean _learn = true;
+	private boolean _learningDisabled;	// learning_mode none, only the model trained by init() is used
+	
+	// Detector data
+	// all ferns hash codes of each grid box, box idx * numFerns, and which ones have been calculated during the current frame (1 bit per box)
+	int[] _fernCodes;
+	long[] _fernCodesValid;
+	// the scanned boxes which passed the variance filter but were rejected by the Fern cascade before all their hash codes were calculated
+	long[] _fernCodesPartial;
+	// the boxes passing the variance filter, each detection partition uses the same range as in the scanned boxes
+	private int[] _varPassedBoxes;
+	private final DetectionClusterer _clusterer = new DetectionClusterer();
+	private int[] _clusterX = new int[0], _clusterY = new int[0], _clusterW = new int[0], _clusterH = new int[0], _clusterLabels = new int[0];
+	private int[] _clusterSumX = new int[0], _clusterSumY = new int[0], _clusterSumW = new int[0], _clusterSumH = new int[0], _clusterBoxCount = new int[0];
+	private float[] _clusterSumConf = new float[0];
+	// the result of the last clustering
+	private BoundingBox[] _clusterBoxes = new BoundingBox[0];
+	private float[] _clusterConfs = new float[0];
+	
+	// Bounding Boxes Grid
+	Grid _grid;
+	
+	// Parallel detection, null means sequential detection on the calling thread
+	private ExecutorService _detectionExecutor;
+	private boolean _ownsDetectionExecutor;
+	private int _detectionPartitions = 1;
+	private CascadeStats _lastCascadeStats;
+	private DetectionScheduler _detectionScheduler;
+	
+	// Background learning (learning_mode parameter), trains copies of the classifiers and publishes them, picked up at the start of the next frame
+	private ExecutorService _learningExecutor;	// null means inline learning on the calling thread
+	private boolean _deterministicLearning;	// wait for the learning before processing the next frame
+	private Future<?> _learning;
+	private final AtomicReference<LearnedModel> _learnedModel = new AtomicReference<LearnedModel>();
+	private int _skippedLearningFrames;
+	
+	// per stage latencies and survivor counts, of 1 frame every metrics_sample_interval
+	private final TldMetrics _metrics;
+	
+	// the temporary Mats, re-used from 1 frame to the next instead of new native buffers every frame. 1 per thread
+	private final MatArena _arena = new MatArena(TldLog.DEBUG);
+	private final MatArena _learningArena = new MatArena(TldLog.DEBUG);
+	private final Mat _learningFrame = new Mat(); // the background learning's copy of the frame
+	
+	// the per frame results and scratch structures, re-used from 1 frame to the next so that the steady state frames don't allocate anything on the Java heap
+	private PatternSampler _sampler;
+	private PatternSampler _learningSampler;
+	private final TrackingStruct _trackingStruct = new TrackingStruct();
+	private final PointBuffer _boxPoints = new PointBuffer();
+	private final BoundingBox _intersection = new BoundingBox();
+	private final NNConfStruct[] _patternConf = {new NNConfStruct()};
+	FernPartition _fernPartition;	// the Fern classifier's detections
+	private final List<Pair<int[], Boolean>> _negativeFerns = new ArrayList<Pair<int[], Boolean>>();	// the bad boxes' hash codes, from _negativeFernsPool
+	private final List<Pair<int[], Boolean>> _negativeFernsPool = new ArrayList<Pair<int[], Boolean>>();
+	private int[] _rejectedBadBoxes;	// the bad boxes the Fern cascade rejected, only a subset of them is learnt from
+	private int _learningFrames;
+	private final List<DetectionStruct> _nnMatches = new ArrayList<DetectionStruct>(MAX_DETECTED);	// the ones the NN classifier validated too
+	private float[] _candidates;
+	private NNConfStruct[] _candidatesConf;
+	private final ProcessFrameStruct _result = new ProcessFrameStruct();
+	  
+	
+	public Tld(Properties parameters){
+		this(parameters, new DefaultRNG());
+	}
+	
+	/**
+	 * @param rng draws the Fern features and the learning's warps, a seeded one makes the whole run reproducible
+	 */
+	Tld(final Properties parameters, final RNG rng){
+		_rng = rng;
+		_params = new ParamsTld(parameters);
+		_parameters = (Properties) parameters.clone();
+		_classifierFern = new FernEnsembleClassifier(parameters);
+		_classifierNN = new NNClassifier(parameters);
+		_trackerStats = new RobustStats(_params.tracker_scale_max_pairs);
+		_metrics = new TldMetrics(_params.metrics_sample_interval);
+		_patchGenerator = new PatchGenerator(0, 0, _params.noise_init, true, 1 - _params.scale_init, 1 + _params.scale_init,
+				-_params.angle_init * Math.PI / 180f, _params.angle_init * Math.PI / 180f, 
+				-_params.angle_init * Math.PI / 180f, _params.angle_init * Math.PI / 180f);
+	
+		_pExample.create(_params.patch_size, _params.patch_size, CvType.CV_64F);
+		_sampler = new PatternSampler(_params.patch_size);
+		_learningSampler = new PatternSampler(_params.patch_size);
+		_candidates = new float[MAX_DETECTED * _params.patch_size * _params.patch_size];
+		_candidatesConf = new NNConfStruct[MAX_DETECTED];
+		for(int c = 0; c < MAX_DETECTED; c++){
+			_candidatesConf[c] = new NNConfStruct();
+		}
+		_detectionScheduler = new DetectionScheduler(_params.detection_full_scan_interval, _params.detection_roi_margin, _params.detection_roi_scales);
+		
+		if(_params.detection_threads > 1){
+			setDetectionExecutor(Executors.newFixedThreadPool(_params.detection_threads, new DaemonThreadFactory("TLD-detect-")), _params.detection_threads * PARTITIONS_PER_THREAD);
+			_ownsDetectionExecutor = true;
+		}
+		
+		if(LEARNING_ASYNC.equals(_params.learning_mode) || LEARNING_DETERMINISTIC.equals(_params.learning_mode)){
+			_learningExecutor = Executors.newSingleThreadExecutor(new DaemonThreadFactory("TLD-learn-"));
+			_deterministicLearning = LEARNING_DETERMINISTIC.equals(_params.learning_mode);
+		}else if(LEARNING_NONE.equals(_params.learning_mode)){
+			_learningDisabled = true;
+		}else if(!LEARNING_INLINE.equals(_params.learning_mode)){
+			throw new IllegalArgumentException("Unknown learning_mode: " + _params.learning_mode);
+		}
+	}
+
+	protected Tld() {
+		// for TESTING only
+		_rng = new DefaultRNG();
+		_trackerStats = new RobustStats();
+		_metrics = new TldMetrics(0);
+	}
+	
+	/**
+	 * Spreads the detection (variance filter + Fern classifier) of each frame over the given executor, the grid being split in <code>partitions</code> chunks.
+	 * The per partition results are merged in grid order, so they are exactly the same as in the sequential mode.
+	 * 
+	 * @param executor null to go back to the sequential detection on the calling thread
+	 */
+	public void setDetectionExecutor(final ExecutorService executor, final int partitions){
+		if(executor != null && partitions < 1){
+			throw new IllegalArgumentException("At least 1 partition is needed for the parallel detection, got: " + partitions);
+		}
+		if(_ownsDetectionExecutor){
+			_detectionExecutor.shutdown();
+			_ownsDetectionExecutor = false;
+		}
+		
+		_detectionExecutor = executor;
+		_detectionPartitions = executor == null ? 1 : partitions;
+	}
+	
+	/**
+	 * Stops the detection threads, if they have been created by this instance (detection_threads parameter).
+	 * A caller supplied executor is left alone.
+	 */
+	public void shutdown(){
+		setDetectionExecutor(null, 1);
+		if(_learningExecutor != null){
+			// after the learning in progress, if any
+			_learningExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					_learningArena.close();
+				}
+			});
+			_learningExecutor.shutdown();
+		}
+		_arena.close();
+		_ownContext.release();
+	}
+
+	public void init(Mat frame1, Rect trackedBox) {
+		// a learning still running would publish classifiers trained on the previous object
+		waitForLearning();
+		_learnedModel.set(null);
+		
+		// get Bounding boxes
+		if(Math.min(trackedBox.width, trackedBox.height) < _params.min_win) {
+			throw new IllegalArgumentException("Provided trackedBox: " + trackedBox + " is too small (min " + _params.min_win + ")");
+		}
+		initGrid(frame1.cols(), frame1.rows(), trackedBox);
+		
+		// correct bounding box
+		_lastbox = _lastboxStorage.set(_grid.getBestBox());
+		
+		_classifierFern.init(_grid.getTrackedBoxScales(), _rng);
+		
+		
+		// generate DATA
+		// generate POSITIVE DATA
+		generatePositiveData(frame1, _params.num_warps_init, _grid);
+		
+		// Set variance threshold
+		MatOfDouble stddev = new MatOfDouble();
+		Core.meanStdDev(frame1.submat(_grid.getBestBox()), new MatOfDouble(), stddev);
+		_ctx = _ownContext;
+		_ctx.updateIntegralImgs(frame1);
+		// this is directly half of the variance of the initial box, which will be used the the 1st stage of the classifier
+		_var = (float)Math.pow(stddev.toArray()[0], 2d) * 0.5f;
+		// check variance
+		final double checkVar = Util.getVar(_grid.getBestBox(), _ctx.iisumJava, _ctx.iisqsumJava, _ctx.cols) * 0.5;
+		if(TldLog.isInfo()){
+			TldLog.i("Variance: " + _var + " / Check variance: " + checkVar);
+		}
+		
+		
+		// generate NEGATIVE DATA
+		final Pair<List<Pair<int[], Boolean>>, List<Mat>> negData = generateNegativeData(frame1);
+		
+		// Split Negative Ferns <features, labels=false> into Training and Testing sets (they are already shuffled)
+		final int nFernsSize = negData.first.size();
+		final List<Pair<int[], Boolean>> nFernsTest = new ArrayList<Pair<int[], Boolean>>(negData.first.subList(0, nFernsSize/2));
+		final List<Pair<int[], Boolean>> nFerns = new ArrayList<Pair<int[], Boolean>>(negData.first.subList(nFernsSize/2, nFernsSize));
+		
+		// Split Negative NN Examples into Training and Testing sets
+		final int nExSize = negData.second.size();
+		final List<Mat> nExamplesTest = new ArrayList<Mat>(negData.second.subList(0, nExSize/2));
+		_nExamples = new ArrayList<Mat>(negData.second.subList(nExSize/2, nExSize));
+
+		
+		//MERGE Negative Data with Positive Data and shuffle it
+		final List<Pair<int[], Boolean>> fernsData = new ArrayList<Pair<int[], Boolean>>(_pFerns);
+		fernsData.addAll(nFerns);
+		Collections.shuffle(fernsData, new Random(Util.nextLong(_rng)));
+		
+		// TRAINING
+		if(TldLog.isInfo()){
+			TldLog.i("Init Start Training with " + fernsData.size() + " ferns, " 
+			+ _nExamples.size() + " nExamples, " + nFernsTest.size() + " nFernsTest, " + nExamplesTest.size() + " nExamplesTest");
+		}
+		_classifierFern.trainF(fernsData, 10);
+		_classifierNN.trainNN(_pExample, _nExamples);
+		// Threshold evaluation on testing sets
+		_classifierFern.evaluateThreshold(nFernsTest);
+		_classifierNN.evaluateThreshold(nExamplesTest);
+	}
+
+	/**
+	 * The grid of the initial box, and the detection structures sized after it
+	 */
+	private void initGrid(final int cols, final int rows, final Rect trackedBox){
+		_initBox = trackedBox.clone();
+		_frameSize = new Size(cols, rows);
+		_grid = new Grid(cols, rows, trackedBox, _params.min_win);
+		if(TldLog.isInfo()){
+			TldLog.i("Init Created " + _grid.getSize() + " bounding boxes.");
+		}
+		_grid.updateGoodBadBoxes(trackedBox, _params.num_closest_init);
+		_detectionScheduler.init(_grid);
+		_fernCodes = new int[_grid.getSize() * _classifierFern.getNumFerns()];
+		_fernCodesValid = new long[(_grid.getSize() + 63) / 64];
+		_fernCodesPartial = new long[_fernCodesValid.length];
+		_rejectedBadBoxes = new int[_grid.getSize()];
+		_varPassedBoxes = new int[_grid.getSize()];
+		_fernPartition = new FernPartition(_classifierFern.getNumFerns());
+		// at most MAX_DETECTED boxes validated by the NN classifier get clustered
+		ensureClusterCapacity(MAX_DETECTED);
+		_clusterer.reserve(MAX_DETECTED, cols, rows, _params.min_win);
+	}
+	
+	/**
+	 * Saves everything init() and the learning so far have built (grid configuration, variance threshold, Fern and NN classifiers with their thresholds, 
+	 * negative NN patches) and the last box, so that {@link #loadSnapshot(File)} can resume tracking straight away, e.g. after a restart or on another worker.
+	 * A background learning in progress is waited for, and its result saved.
+	 */
+	public void saveSnapshot(final File file) throws IOException {
+		if(_grid == null){
+			throw new IllegalStateException("Nothing to save, init() hasn't been called");
+		}
+		waitForLearning();
+		useLearnedModel();
+		
+		final int patternSize = _params.patch_size * _params.patch_size;
+		final ByteBuffer buffer = TldSnapshot.allocate(4 * 4 + 4 * 4 + 4 + 1 + 1 + 4 * 4 + 4 + _nExamples.size() * TldSnapshot.sizeOf((float[]) null, patternSize)
+				+ _classifierFern.getSnapshotSize() + _classifierNN.getSnapshotSize());
+		buffer.putInt((int) _frameSize.width);
+		buffer.putInt((int) _frameSize.height);
+		buffer.putInt(_params.min_win);
+		buffer.putInt(_params.patch_size);
+		putRect(buffer, _initBox);
+		buffer.putFloat(_var);
+		buffer.put((byte) (_learn ? 1 : 0));
+		buffer.put((byte) (_lastbox == null ? 0 : 1));
+		putRect(buffer, _lastbox == null ? _initBox : _lastbox);
+		buffer.putInt(_nExamples.size());
+		final float[] pattern = new float[patternSize];
+		for(Mat nExample : _nExamples){
+			TldSnapshot.putFloats(buffer, Util.getFloatArray(nExample, pattern), patternSize);
+		}
+		_classifierFern.writeSnapshot(buffer);
+		_classifierNN.writeSnapshot(buffer);
+		
+		TldSnapshot.write(buffer, file);
+		if(TldLog.isInfo()){
+			TldLog.i("Snapshot of " + buffer.limit() + " bytes saved to " + file);
+		}
+	}
+	
+	/**
+	 * Instead of init(), restores the state saved by {@link #saveSnapshot(File)}, reading the memory mapped file.
+	 * The parameters have to be the same as when it was saved, the next frame is then processed as if the tracking had never stopped.
+	 * @throws IOException if the file can't be read, is truncated or corrupted, or was saved with other parameters. This tracker is then left untouched
+	 */
+	public void loadSnapshot(final File file) throws IOException {
+		waitForLearning();
+		
+		final ByteBuffer buffer = TldSnapshot.map(file);
+		try{
+			final int cols = buffer.getInt();
+			final int rows = buffer.getInt();
+			final int minWin = buffer.getInt();
+			final int patchSize = buffer.getInt();
+			if(minWin != _params.min_win || patchSize != _params.patch_size){
+				throw new IOException(file + " was saved with min_win " + minWin + " and patch_size " + patchSize 
+						+ ", the parameters are " + _params.min_win + " and " + _params.patch_size);
+			}
+			final Rect initBox = getRect(buffer);
+			final float var = buffer.getFloat();
+			final boolean learn = buffer.get() != 0;
+			final boolean tracking = buffer.get() != 0;
+			final Rect lastBox = getRect(buffer);
+			final int nExamplesCount = TldSnapshot.getCount(buffer, TldSnapshot.sizeOf((float[]) null, patchSize * patchSize));
+			final List<Mat> nExamples = new ArrayList<Mat>(nExamplesCount);
+			for(int i = 0; i < nExamplesCount; i++){
+				final float[] pattern = TldSnapshot.getFloats(buffer);
+				if(pattern.length != patchSize * patchSize){
+					throw new IOException(file + " is a corrupted TLD snapshot, negative example " + i + " has " + pattern.length + " values");
+				}
+				final Mat nExample = new Mat(patchSize, patchSize, CvType.CV_32F);
+				nExample.put(0, 0, pattern);
+				nExamples.add(nExample);
+			}
+			// into new classifiers, with their own parameters, so that a corrupted snapshot leaves this tracker untouched
+			final FernEnsembleClassifier classifierFern = new FernEnsembleClassifier(_parameters);
+			classifierFern.readSnapshot(buffer);
+			final NNClassifier classifierNN = new NNClassifier(_parameters);
+			classifierNN.readSnapshot(buffer);
+			
+			// all read, nothing can fail anymore
+			_learnedModel.set(null);
+			_classifierFern = classifierFern;
+			_classifierNN = classifierNN;
+			initGrid(cols, rows, initBox);
+			_var = var;
+			_learn = learn;
+			_lastbox = tracking ? _lastboxStorage.set(lastBox.x, lastBox.y, lastBox.width, lastBox.height, 0, 0) : null;
+			_nExamples = nExamples;
+			_pFerns.clear();
+			_pPatterns.clear();
+		}catch(BufferUnderflowException e){
+			throw new IOException(file + " is a truncated TLD snapshot", e);
+		}catch(IllegalArgumentException e){
+			// corrupted counts, or classifiers saved with other parameters
+			throw new IOException(file + " is an invalid TLD snapshot: " + e.getMessage(), e);
+		}
+		
+		if(TldLog.isInfo()){
+			TldLog.i("Snapshot of " + buffer.limit() + " bytes loaded from " + file + ", " + _grid.getSize() + " bounding boxes");
+		}
+	}
+	
+	private static void putRect(final ByteBuffer buffer, final Rect rect){
+		buffer.putInt(rect.x);
+		buffer.putInt(rect.y);
+		buffer.putInt(rect.width);
+		buffer.putInt(rect.height);
+	}
+	
+	private static Rect getRect(final ByteBuffer buffer){
+		return new Rect(buffer.getInt(), buffer.getInt(), buffer.getInt(), buffer.getInt());
+	}
+	
+	/**
+	 * Usually called with the previous call's currentImg as lastImg, whose pixels are then not copied again from the native side: 
+	 * a frame must not be written to in place while it's still going to be passed as lastImg, pass a different Mat instead.
+	 */
+	public ProcessFrameStruct processFrame(final Mat lastImg, final Mat currentImg){
+		return processFrame(lastImg, currentImg, null);
+	}
+	
+	/**
+	 * @param sharedContext already prepared for currentImg, and not touched until this returns, or null to use this instance's own
+	 */
+	ProcessFrameStruct processFrame(final Mat lastImg, final Mat currentImg, final FrameContext sharedContext){
+		_ctx = sharedContext == null ? _ownContext : sharedContext;
+		_prepareContext = sharedContext == null;
+		final int scope = _arena.mark();
+		try{
+			return processFrameInArena(lastImg, currentImg);
+		}finally{
+			_arena.release(scope);
+		}
+	}
+	
+	/**
+	 * All the temporary Mats come from _arena, and are given back when the frame is done
+	 */
+	private ProcessFrameStruct processFrameInArena(final Mat lastImg, final Mat currentImg){
+		_metrics.beginFrame();
+		final long frameStart = _metrics.start();
+		
+		// 0. the whole frame uses the same version of the classifiers, the latest one published by the background learning
+		if(_deterministicLearning){
+			waitForLearning();
+		}
+		useLearnedModel();
+		
+		// 1. TRACK
+		TrackingStruct trackingStruct = null;
+		if(_lastbox != null){
+			final long trackStart = _metrics.start();
+			trackingStruct = track(lastImg, currentImg, _lastbox);
+			_metrics.stop(TldMetrics.TRACK, trackStart);
+		}
+		
+			
+		
+		// 2. DETECT
+		final boolean detected = detect(currentImg, trackingStruct);
+		
+		// 3. INTEGRATION tracking with detection
+		if(trackingStruct != null){
+			_lastbox = _lastboxStorage.set(trackingStruct.predictedBB);
+			if(trackingStruct.conf > _classifierNN.getNNThresholdValid()){
+				if(TldLog.isInfo()){
+					TldLog.i("Tracking confidence: " + trackingStruct.conf + " > " + " Threshold: " + _classifierNN.getNNThresholdValid() + " ===> WILL LEARN");
+				}
+				_learn = true;
+			}else{
+				if(TldLog.isInfo()){
+					TldLog.i("Tracking confidence: " + trackingStruct.conf + " < " + " Threshold: " + _classifierNN.getNNThresholdValid() + " ===> WILL NOT LEARN");
+				}
+			}
+			
+			TldLog.i("Tracked");
+			if(detected){
+				final int clusters = clusterConfidentIndices(_nnMatches);// cluster detections
+				if(TldLog.isInfo()){
+					TldLog.i("Found " + clusters + " clusters");
+				}
+				// Get clusters that are far from tracker and with better confidence
+				int confidentClusters = 0;
+				BoundingBox confidentBox = null;
+				for(int c = 0; c < clusters; c++){
+					if(trackingStruct.predictedBB.calcOverlap(_clusterBoxes[c]) < 0.5 && _clusterConfs[c] > trackingStruct.conf){
+						confidentClusters++;
+						confidentBox = _clusterBoxes[c];
+					}
+				}
+				
+				if(confidentClusters == 0){
+					TldLog.i("NO NN confident cluster !");
+				}else if(confidentClusters == 1){
+					TldLog.i("Detected better match (1 confident cluster), re-initialising tracker");
+					_lastbox = _lastboxStorage.set(confidentBox); //bbnext
+					_learn = false;
+				}else{
+					TldLog.i("Plenty of confident clusters detected. Get mean of close detections (use nnMatches)");
+					int cx=0,cy=0,cw=0,ch=0, close_detections=0;
+					for(int i = 0; i < _nnMatches.size(); i++){
+						final BoundingBox detectedBB = _nnMatches.get(i).detectedBB;
+						if(trackingStruct.predictedBB.calcOverlap(detectedBB) > 0.7){
+							cx += detectedBB.x;
+							cy += detectedBB.y;
+							cw += detectedBB.width;
+							ch += detectedBB.height;
+							close_detections++;
+						}
+					}
+					
+					if(close_detections > 0){
+						// weighted average (10 to 1 in favour of the tracked) trackers trajectory with the close detections
+						_lastbox.x = Math.round((float)(10*trackingStruct.predictedBB.x+cx)/(float)(10+close_detections));
+						_lastbox.y = Math.round((float)(10*trackingStruct.predictedBB.y+cy)/(float)(10+close_detections));
+						_lastbox.width = Math.round((float)(10*trackingStruct.predictedBB.width+cw)/(float)(10+close_detections));
+						_lastbox.height =  Math.round((float)(10*trackingStruct.predictedBB.height+ch)/(float)(10+close_detections));
+					}
+				}
+			}
+		}else{ // IF NOT Tracking
+			TldLog.w("NOT Tracking");
+			_lastbox = null;
+			_learn = false;
+			if(detected){  // and detector is defined
+				final int clusters = clusterConfidentIndices(_nnMatches);// cluster detections
+				if(clusters == 1){
+					// not tracking but detected exactly 1 cluster -> use this one as the best option
+					_lastbox = _lastboxStorage.set(_clusterBoxes[0]);
+				}
+			}
+		}
+		
+		
+		// 4. LEARN
+		if(_learn && !_learningDisabled){
+			final long learnStart = _metrics.start();
+			_learn = learn(currentImg);
+			_metrics.stop(TldMetrics.LEARN, learnStart);
+		}else{
+			TldLog.i("NOT Learning");
+		}
+
+		
+		
+		
+		_metrics.stop(TldMetrics.FRAME, frameStart);
+		_metrics.endFrame();
+		return _result.set(trackingStruct, _lastbox);
+	}
+	
+	
+	
+	
+	
+	private TrackingStruct track(final Mat lastImg, final Mat currentImg, final BoundingBox lastBox) {
+		TldLog.i("[TRACK]");
+		final TrackingStruct result = _trackingStruct;
+		
+		// Generate points
+		lastBox.points(_boxPoints);
+		if(_boxPoints.size() == 0){
+			TldLog.e("Points not generated from lastBox: " + lastBox);
+			return null;
+		}
+		
+		
+		// Frame-to-frame tracking with forward-backward error checking
+		if(!_tracker.track(lastImg, currentImg, _boxPoints, result.lastPoints, result.currentPoints)){
+			TldLog.e("No points could be tracked.");
+			return null;			
+		}
+		if(_tracker.getMedianErrFB() > _params.tracker_stability_FBerrMax){
+			if(TldLog.isLoggable(TldLog.LEVEL_WARN)){
+				TldLog.w("TRACKER too unstable. FB Median error: " + _tracker.getMedianErrFB() + " > " + _params.tracker_stability_FBerrMax);
+			}
+			// return null;  // we hope the detection will find the pattern again
+		}
+		
+		// bounding box prediction
+		final BoundingBox predictedBB = lastBox.predict(result.lastPoints.array(), result.currentPoints.array(), result.lastPoints.size(), _trackerStats, result.predictedBB);
+		if(predictedBB.x > currentImg.cols() || predictedBB.y > currentImg.rows()
+				|| predictedBB.x + predictedBB.width < 1 || predictedBB.y + predictedBB.height < 1)
+		{
+			TldLog.e("TRACKER Predicted bounding box out of range !");
+			return null;
+		}
+
+		// estimate Confidence
+		final BoundingBox patchBox = predictedBB.intersect(currentImg, _intersection);
+		if(patchBox.width <= 0 || patchBox.height <= 0){
+			TldLog.e("PredBB when failed: " + predictedBB);
+			return null;
+		}
+		
+		//Conservative Similarity
+		_classifierNN.nnConf(_sampler.sample(currentImg, patchBox), 1, _patternConf);
+		result.conf = _patternConf[0].conservativeSimilarity;
+		if(TldLog.isInfo()){
+			TldLog.i("Tracking confidence: " + result.conf);
+		}
+		
+		TldLog.i("[TRACK END]");
+		return result;
+	}
+	
+	
+	/**
+	 * Structure the classifier into 3 stages:
+	 * a) patch variance
+	 * b) ensemble of ferns classifier
+	 * c) nearest neighbour
+	 */
+	/**
+	 * @return false if the Fern classifier didn't detect anything. Its detections are in _fernPartition, the ones validated by the NN classifier in _nnMatches
+	 */
+	private boolean detect(final Mat frame, final TrackingStruct trackingStruct){
+		TldLog.i("[DETECT]");
+		_nnMatches.clear();
+		
+		
+		// 1. DETECTION
+		if(_prepareContext){
+			_ctx.prepare(frame);
+		}
+		final Mat img = _ctx.blurred;
+		_classifierFern.prepareFrame(img.cols());
+		
+		// Apply the Variance filter and the Fern classifier TODO : Bottleneck
+		// only around the tracked box if the tracking is confident, with regular full scans
+		final int[] scanBoxes = _detectionScheduler.schedule(trackingStruct == null ? null : trackingStruct.predictedBB, 
+				trackingStruct == null ? 0 : trackingStruct.conf, _classifierNN.getNNThresholdValid());
+		final int scanCount = _detectionScheduler.getLastScanned();
+		if(TldLog.isInfo()){
+			TldLog.i("Scanning " + scanCount + " / " + _grid.getSize() + " boxes" + (_detectionScheduler.isLastFullScan() ? " (FULL scan)" : ""));
+		}
+		
+		Arrays.fill(_fernCodesValid, 0L);
+		Arrays.fill(_fernCodesPartial, 0L);
+		final FernPartition fernResult = _fernPartition;
+		fernResult.reset();
+		if(_detectionExecutor == null || _detectionPartitions == 1){
+			detectFern(img, scanBoxes, 0, scanCount, fernResult);
+		}else{
+			detectFernParallel(img, scanBoxes, scanCount, fernResult);
+		}
+		final int a = fernResult.varPassed;
+		_metrics.add(TldMetrics.VARIANCE, fernResult.varianceNanos);
+		_metrics.add(TldMetrics.FERN, fernResult.fernNanos);
+		_metrics.count(TldMetrics.SCANNED, scanCount);
+		_metrics.count(TldMetrics.VARIANCE_PASSED, a);
+		_metrics.count(TldMetrics.FERN_PASSED, fernResult.detectedCount);
+		if(_classifierFern.isCascade()){
+			_lastCascadeStats = fernResult.cascadeStats;
+			_classifierFern.updateCascadeOrder(_lastCascadeStats);
+			if(TldLog.isInfo()){
+				TldLog.i("Fern cascade evaluated " + _lastCascadeStats.getAverageFernsEvaluated() + " ferns per box on average");
+			}
+		}
+		
+		if(TldLog.isInfo()){
+			TldLog.i(a + " Bounding boxes passed the variance filter (" + _var + ")");
+			TldLog.i(fernResult.detectedCount + " Initial detected from Fern Classifier");
+		}
+		if(fernResult.detectedCount == 0){
+			TldLog.i("[DETECT END]");
+			return false;
+		}
+		
+		// keep only the best
+		fernResult.keepBest(MAX_DETECTED);
+		
+		
+		// 2. MATCHING using the NN classifier  c)
+		final long nnStart = _metrics.start();
+		// sample each detected box's patch to params.patch_size and normalise it, as 1 row of the candidates matrix
+		final int dim = _params.patch_size * _params.patch_size;
+		final int count = fernResult.detectedCount;
+		for(int c = 0; c < count; c++){
+			System.arraycopy(_sampler.sample(img, fernResult.get(c).detectedBB), 0, _candidates, c * dim, dim);
+		}
+		// then score them all in 1 go
+		_classifierNN.nnConf(_candidates, count, _candidatesConf);
+		
+		for(int c = 0; c < count; c++){
+			final DetectionStruct detStruct = fernResult.get(c);
+			detStruct.nnConf = _candidatesConf[c];
+			
+			if(TldLog.DEBUG){
+				TldLog.d("NNConf: " + detStruct.nnConf.relativeSimilarity + " / " + detStruct.nnConf.conservativeSimilarity + " Threshold: " + _classifierNN.getNNThreshold());
+			}
+			// only keep valid boxes
+			if(detStruct.nnConf.relativeSimilarity > _classifierNN.getNNThreshold()){
+				_nnMatches.add(detStruct); 
+			}
+		}
+		_metrics.stop(TldMetrics.NN, nnStart);
+		_metrics.count(TldMetrics.NN_PASSED, _nnMatches.size());
+		
+		TldLog.i("[DETECT END]");
+		return true;
+	}
+	
+	
+	/**
+	 * a) variance filter and b) Fern classifier, for the grid boxes scanBoxes[from, to).
+	 * It only reads shared state, so several partitions can run at the same time.
+	 */
+	private FernPartition detectFern(final Mat img, final int[] scanBoxes, final int from, final int to, final FernPartition result){
+		final int cols = img.cols();
+		final Grid grid = _grid;
+		final boolean cascade = _classifierFern.isCascade();
+		final double fernPosThreshold = _classifierFern.getFernPosThreshold();
+		final int numFerns = _classifierFern.getNumFerns();
+		final int[] fernCodes = _fernCodes;
+		final long[] fernCodesValid = _fernCodesValid;
+		final long[] fernCodesPartial = _fernCodesPartial;
+		final int[] varPassedBoxes = _varPassedBoxes;
+		final boolean timed = _metrics.isSampling();
+		
+		// a) speed up by doing the features/ferns check ONLY if the variance is high enough !
+		final long varianceStart = timed ? System.nanoTime() : 0L;
+		int passed = from;
+		for(int k = from; k < to; k++){
+			final int i = scanBoxes[k];
+			if(Util.getVar(grid.x[i], grid.y[i], grid.w[i], grid.h[i], _ctx.iisumJava, _ctx.iisqsumJava, _ctx.cols) >= _var ){
+				varPassedBoxes[passed++] = i;
+			}
+		}
+		result.varPassed = passed - from;
+		
+		final long fernStart = timed ? System.nanoTime() : 0L;
+		for(int k = from; k < passed; k++){
+			final int i = varPassedBoxes[k];
+			// stored in the table for later use in learning
+			final double averagePosterior;
+			if(cascade){
+				averagePosterior = _classifierFern.cascadePosterior(_ctx.blurredJava, grid.y[i] * cols + grid.x[i], grid.scale[i], fernCodes, i * numFerns, fernPosThreshold, result.cascadeStats);
+				if(averagePosterior < 0){
+					// rejected early, the hash codes are incomplete, learn() will calculate them if it needs them
+					fernCodesPartial[i >> 6] |= 1L << i;
+					continue;
+				}
+			}else{
+				_classifierFern.getAllFernsHashCodesInFrame(_ctx.blurredJava, grid.y[i] * cols + grid.x[i], grid.scale[i], fernCodes, i * numFerns);
+				averagePosterior = _classifierFern.averagePosterior(fernCodes, i * numFerns);
+			}
+			// the partitions never share a word
+			fernCodesValid[i >> 6] |= 1L << i;
+			
+			// b) only the detected boxes need an actual BoundingBox, their patch comes later for the NN classifier
+			if(averagePosterior > fernPosThreshold){
+				result.add(grid, i, averagePosterior);
+			}
+		}
+		
+		if(timed){
+			result.fernNanos = System.nanoTime() - fernStart;
+			result.varianceNanos = fernStart - varianceStart;
+		}
+		return result;
+	}
+	
+	private static boolean isSet(final long[] bits, final int boxIdx){
+		return (bits[boxIdx >> 6] & (1L << boxIdx)) != 0;
+	}
+	
+	/**
+	 * @return the next pooled negative Fern example, whose hash codes have to be filled in
+	 */
+	private int[] nextNegativeFern(){
+		final int index = _negativeFerns.size();
+		if(index == _negativeFernsPool.size()){
+			_negativeFernsPool.add(new Pair<int[], Boolean>(new int[_classifierFern.getNumFerns()], false));
+		}
+		final Pair<int[], Boolean> result = _negativeFernsPool.get(index);
+		_negativeFerns.add(result);
+		return result.first;
+	}
+	
+	/**
+	 * Same as {@link #detectFern(Mat, int[], int, int, FernPartition)} but the scanned boxes are split in _detectionPartitions chunks run on the _detectionExecutor.
+	 * The results are merged in the partitions order, which is the grid order, so they're identical to the sequential ones.
+	 * Each partition has its own new result, so unlike the sequential detection this one allocates.
+	 */
+	private void detectFernParallel(final Mat img, final int[] scanBoxes, final int size, final FernPartition result){
+		final int chunk = (size + _detectionPartitions - 1) / _detectionPartitions;
+		final List<Future<FernPartition>> partitions = new ArrayList<Future<FernPartition>>(_detectionPartitions);
+		for(int from = 0; from < size;){
+			final int to = partitionEnd(scanBoxes, from, chunk, size);
+			final int partitionFrom = from;
+			final int partitionTo = to;
+			from = to;
+			partitions.add(_detectionExecutor.submit(new Callable<FernPartition>() {
+				@Override
+				public FernPartition call() {
+					return detectFern(img, scanBoxes, partitionFrom, partitionTo, new FernPartition(_classifierFern.getNumFerns()));
+				}
+			}));
+		}
+		
+		try{
+			for(Future<FernPartition> partition : partitions){
+				final FernPartition partitionResult = partition.get();
+				result.varPassed += partitionResult.varPassed;
+				result.varianceNanos += partitionResult.varianceNanos;
+				result.fernNanos += partitionResult.fernNanos;
+				result.addAll(_grid, partitionResult);
+				result.cascadeStats.merge(partitionResult.cascadeStats);
+			}
+		}catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for the detection partitions", e);
+		}catch(ExecutionException e){
+			throw new IllegalStateException("Detection partition failed", e.getCause());
+		}
+	}
+	
+	
+	/**
+	 * @return the end of the partition of about chunk boxes starting at from. It never splits the boxes of a same validity word between 2 partitions, 
+	 * so each partition owns its words and sets their bits without synchronisation
+	 */
+	static int partitionEnd(final int[] scanBoxes, final int from, final int chunk, final int size){
+		int result = Math.min(from + chunk, size);
+		while(result < size && (scanBoxes[result] >> 6) == (scanBoxes[result - 1] >> 6)){
+			result++;
+		}
+		return result;
+	}
+	
+	
+	private boolean learn(final Mat img){
+		TldLog.i("[LEARN]");
+		if(isLearning()){
+			// don't queue up, the frame would be stale by the time it gets trained on
+			TldLog.w("Still learning from a previous frame, NOT learning");
+			_skippedLearningFrames++;
+			return false;
+		}
+		
+		_classifierNN.nnConf(_sampler.sample(img, _lastbox.intersect(img, _intersection)), 1, _patternConf);
+		final double stdev = _sampler.getStdev();
+		final NNConfStruct confStruct = _patternConf[0];
+		
+		if(confStruct.relativeSimilarity < 0.5){
+			TldLog.w("Fast change, NOT learning");
+			return false;
+		}
+		if(Math.pow(stdev, 2) < _var){
+			TldLog.w("Low variance, NOT learning");
+			return false;
+		}
+		if(confStruct.isin.inNegSet){
+			TldLog.w("Patch in negative data, NOT learning");
+			return false;
+		}
+		
+		// Data generation
+		_grid.updateGoodBadBoxes(_lastbox, _params.num_closest_update);
+		if(_grid.getGoodBoxes().length == 0){
+			TldLog.w("NO good boxes, NOT learning.");
+			return false;
+		}
+		
+		// TODO why don't we learn from the GOOD boxes too !?
+		// the hash codes of the bad boxes are only valid during this frame, collect them now. Only the ones the detection scanned, 
+		// the boxes outside the region of interest are learnt from by the full scans, re-hashing them here would cost more than the full scan saved.
+		// The pooled examples are free to re-use: a background learning using them is finished, see isLearning() above
+		_negativeFerns.clear();
+		final List<Pair<int[], Boolean>> negativeFerns = _negativeFerns;
+		final Grid grid = _grid;
+		final int numFerns = _classifierFern.getNumFerns();
+		final int[] badBoxes = grid.getBadBoxIndexes();
+		int rejectedCount = 0;
+		for(int i = 0; i < grid.getBadBoxesCount(); i++){
+			final int boxIdx = badBoxes[i];
+			if(isSet(_fernCodesValid, boxIdx)){
+				// these are NEGATIVE examples !
+				System.arraycopy(_fernCodes, boxIdx * numFerns, nextNegativeFern(), 0, numFerns);
+			}else if(isSet(_fernCodesPartial, boxIdx)){
+				_rejectedBadBoxes[rejectedCount++] = boxIdx;
+			}
+		}
+		// the cascade rejected these before calculating all their hash codes. They're the background the ensemble already scores lowest, 
+		// re-hashing all of them would cost more than the cascade saved, so only an evenly spread subset, a different one each learning frame
+		final int maxRehashed = _params.fern_cascade_max_negatives;
+		int rehashed = 0;
+		if(rejectedCount > 0 && maxRehashed > 0){
+			final int stride = (rejectedCount + maxRehashed - 1) / maxRehashed;
+			for(int k = _learningFrames % stride; k < rejectedCount; k += stride, rehashed++){
+				final int boxIdx = _rejectedBadBoxes[k];
+				_classifierFern.getAllFernsHashCodesInFrame(_ctx.blurredJava, grid.y[boxIdx] * _ctx.cols + grid.x[boxIdx], grid.scale[boxIdx], nextNegativeFern(), 0);
+			}
+		}
+		_learningFrames++;
+		_metrics.count(TldMetrics.NEGATIVES, negativeFerns.size());
+		_metrics.count(TldMetrics.REHASHED, rehashed);
+		
+		// TODO the C++ version also trains the NN classifier with the Fern detections far from _lastbox (overlap < Grid.BAD_OVERLAP), as negative examples
+		
+		final BoundingBox hull = _grid.getBBhull();
+		final BoundingBox bbhull = new BoundingBox(hull.x, hull.y, hull.width, hull.height, hull.overlap, hull.scaleIdx);
+		if(_learningExecutor == null){
+			final long trainStart = _metrics.start();
+			train(img, _grid.getBestBox(), _grid.getGoodBoxes(), bbhull, negativeFerns, _classifierFern, _classifierNN, _arena, _sampler);
+			_metrics.stop(TldMetrics.TRAIN, trainStart);
+		}else{
+			// the frame buffer will be reused by the caller, and the classifiers in use can't change under the detection's feet
+			// the previous learning is done (see isLearning() above), so its copy of the frame can be re-used
+			final Mat frame = _learningFrame;
+			img.copyTo(frame);
+			final BoundingBox bestBox = _grid.getBestBox();
+			final BoundingBox[] goodBoxes = _grid.getGoodBoxes();
+			// the previous learning may have finished since the start of this frame, train on top of what it published or its update is lost
+			useLearnedModel();
+			final FernEnsembleClassifier classifierFern = _classifierFern.copy();
+			final NNClassifier classifierNN = _classifierNN.copy();
+			final boolean timed = _metrics.isSampling();
+			_learning = _learningExecutor.submit(new Runnable() {
+				@Override
+				public void run() {
+					try{
+						final long trainStart = timed ? System.nanoTime() : 0L;
+						train(frame, bestBox, goodBoxes, bbhull, negativeFerns, classifierFern, classifierNN, _learningArena, _learningSampler);
+						if(timed){
+							_metrics.record(TldMetrics.TRAIN, System.nanoTime() - trainStart);
+						}
+						_learnedModel.set(new LearnedModel(classifierFern, classifierNN));
+					}catch(RuntimeException e){
+						TldLog.e("Background learning failed", e);
+						throw e;
+					}
+				}
+			});
+		}
+		
+		TldLog.i("[LEARN END]");
+		return true;
+	}
+	
+	/**
+	 * The expensive part of the learning, which can run in the background: only uses its parameters and the learning only data (positive examples, patch generator)
+	 * @param arena, sampler of the calling thread
+	 */
+	private void train(final Mat frame, final BoundingBox bestBox, final BoundingBox[] goodBoxes, final BoundingBox bbhull, 
+			final List<Pair<int[], Boolean>> negativeFerns, final FernEnsembleClassifier classifierFern, final NNClassifier classifierNN, 
+			final MatArena arena, final PatternSampler sampler){
+		generatePositiveData(frame, _params.num_warps_update, bestBox, goodBoxes, bbhull, classifierFern, arena, sampler);
+		
+		final List<Pair<int[], Boolean>> fernExamples = new ArrayList<Util.Pair<int[], Boolean>>(_pFerns);
+		fernExamples.addAll(negativeFerns);
+		
+		// Classifiers update
+		classifierFern.trainF(fernExamples, 2);
+		classifierNN.trainNN(_pExample, _nExamples);
+	}
+	
+	/**
+	 * Switches to the classifiers published by the background learning, if any. Called at the start of a frame, 
+	 * and by learn() once the frame no longer uses them.
+	 */
+	private void useLearnedModel(){
+		final LearnedModel learned = _learnedModel.getAndSet(null);
+		if(learned != null){
+			learned.classifierFern.copyCascadeState(_classifierFern);
+			_classifierFern = learned.classifierFern;
+			_classifierNN = learned.classifierNN;
+			TldLog.i("Using the newly learnt classifiers");
+		}
+	}
+	
+	private void waitForLearning(){
+		if(_learning == null){
+			return;
+		}
+		
+		try{
+			_learning.get();
+		}catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for the learning", e);
+		}catch(ExecutionException e){
+			throw new IllegalStateException("Learning failed", e.getCause());
+		}finally{
+			_learning = null;
+		}
+	}
+	
+	/**
+	 * @return true if the background learning is still training on a previous frame
+	 */
+	public boolean isLearning(){
+		return _learning != null && !_learning.isDone();
+	}
+	
+	/**
+	 * @return how many frames could NOT be learnt from because the background learning was still busy
+	 */
+	public int getSkippedLearningFrames(){
+		return _skippedLearningFrames;
+	}
+	
+	
+	
+	/**
+	 * 
+	 * @param conservativeSimilarities
+	 * @return how many clusters, their boxes and confidences are in _clusterBoxes and _clusterConfs until the next call
+	 */
+	private int clusterConfidentIndices(final List<DetectionStruct> conservativeSimilarities){
+		final long start = _metrics.start();
+		final int result = clusterDetections(conservativeSimilarities);
+		_metrics.stop(TldMetrics.CLUSTER, start);
+		_metrics.count(TldMetrics.CLUSTERS, result);
+		return result;
+	}
+	
+	private int clusterDetections(final List<DetectionStruct> conservativeSimilarities){
+		final int numbb = conservativeSimilarities.size();
+		if(numbb == 0){
+			TldLog.i("NO conservative similarities provided, NOTHING to cluster.");
+			return 0; // empty result
+		}
+		
+		ensureClusterCapacity(numbb);
+		if(numbb == 1){
+			_clusterBoxes[0].set(conservativeSimilarities.get(0).detectedBB);
+			_clusterConfs[0] = conservativeSimilarities.get(0).nnConf.conservativeSimilarity;
+			return 1;
+		}
+		
+		for(int i = 0; i < numbb; i++){
+			final BoundingBox box = conservativeSimilarities.get(i).detectedBB;
+			_clusterX[i] = box.x;
+			_clusterY[i] = box.y;
+			_clusterW[i] = box.width;
+			_clusterH[i] = box.height;
+		}
+		final int clusters = _clusterer.cluster(_clusterX, _clusterY, _clusterW, _clusterH, numbb, _clusterLabels);
+		
+		// 1 pass over the boxes to sum up each cluster
+		Arrays.fill(_clusterSumConf, 0, clusters, 0f);
+		Arrays.fill(_clusterBoxCount, 0, clusters, 0);
+		Arrays.fill(_clusterSumX, 0, clusters, 0);
+		Arrays.fill(_clusterSumY, 0, clusters, 0);
+		Arrays.fill(_clusterSumW, 0, clusters, 0);
+		Arrays.fill(_clusterSumH, 0, clusters, 0);
+		for(int i = 0; i < numbb; i++){
+			final int cluster = _clusterLabels[i];
+			_clusterSumConf[cluster] += conservativeSimilarities.get(i).nnConf.conservativeSimilarity;
+			_clusterSumX[cluster] += _clusterX[i];
+			_clusterSumY[cluster] += _clusterY[i];
+			_clusterSumW[cluster] += _clusterW[i];
+			_clusterSumH[cluster] += _clusterH[i];
+			_clusterBoxCount[cluster]++;
+		}
+		
+		for(int cluster = 0; cluster < clusters; cluster++){
+			final int boxCount = _clusterBoxCount[cluster];
+			_clusterBoxes[cluster].set(_clusterSumX[cluster] / boxCount, _clusterSumY[cluster] / boxCount, 
+					_clusterSumW[cluster] / boxCount, _clusterSumH[cluster] / boxCount, -1, -1);
+			_clusterConfs[cluster] = _clusterSumConf[cluster] / boxCount;
+		}
+		
+		return clusters;
+	}
+	
+	/**
+	 * there can't be more clusters than boxes
+	 */
+	private void ensureClusterCapacity(final int numbb){
+		if(_clusterLabels.length >= numbb){
+			return;
+		}
+		
+		_clusterX = new int[numbb];
+		_clusterY = new int[numbb];
+		_clusterW = new int[numbb];
+		_clusterH = new int[numbb];
+		_clusterLabels = new int[numbb];
+		_clusterSumX = new int[numbb];
+		_clusterSumY = new int[numbb];
+		_clusterSumW = new int[numbb];
+		_clusterSumH = new int[numbb];
+		_clusterBoxCount = new int[numbb];
+		_clusterSumConf = new float[numbb];
+		_clusterConfs = new float[numbb];
+		final int oldCount = _clusterBoxes.length;
+		_clusterBoxes = Arrays.copyOf(_clusterBoxes, numbb);
+		for(int i = oldCount; i < numbb; i++){
+			_clusterBoxes[i] = new BoundingBox();
+		}
+	}
+	
+	
+	/** Inputs:
+	 * - Image
+	 * - bad_boxes (Boxes far from the bounding box)
+	 * - variance (pEx variance)
+	 * Outputs
+	 * - Negative fern features (nFerns)
+	 * - Negative NN examples (nExample)
+	 */
+	private Pair<List<Pair<int[], Boolean>>, List<Mat>> generateNegativeData(final Mat frame){
+		final List<Pair<int[], Boolean>> negFerns = new ArrayList<Pair<int[], Boolean>>();
+		final List<Mat> negExamples = new ArrayList<Mat>();
+		
+		
+		final List<BoundingBox> badBoxes = Arrays.asList(_grid.getBadBoxes());
+		Collections.shuffle(badBoxes, new Random(Util.nextLong(_rng)));
+		TldLog.w("ST");
+		// Get Fern Features of the boxes with big variance (calculated using integral images)
+		final byte[] frameData = Util.getByteArray(frame, null);
+		final int cols = frame.cols();
+		_classifierFern.prepareFrame(cols);
+		for(BoundingBox badBox : badBoxes){
+			if(Util.getVar(badBox, _ctx.iisumJava, _ctx.iisqsumJava, _ctx.cols) >= _var * 0.5f){
+				final int[] allFernsHashCodes = _classifierFern.getAllFernsHashCodesInFrame(frameData, badBox.y * cols + badBox.x, badBox.scaleIdx, new int[_classifierFern.getNumFerns()], 0);
+				negFerns.add(new Pair<int[], Boolean>(allFernsHashCodes, false));
+			}
+		}
+		
+		// select a hard coded number of negative examples, kept as the NN training data so each in its own Mat
+		Iterator<BoundingBox> bbIt = badBoxes.iterator();
+		for(int i = 0; i < _params.num_bad_patches && bbIt.hasNext(); i++){
+			final Mat pattern = new Mat();
+			_sampler.sample(frame, bbIt.next(), pattern);
+			negExamples.add(pattern);
+		}
+		
+		if(TldLog.isInfo()){
+			TldLog.i("Negative examples generated. Ferns count: " + negFerns.size() + ". negEx count: " + negExamples.size());
+		}
+		
+		return new Pair<List<Pair<int[],Boolean>>, List<Mat>>(negFerns, negExamples);
+	}
+	
+	/**
+	 * Generate Positive data 
+	 * Inputs: 
+	 * - good_boxes 
+	 * - best_box 
+	 * - bbhull
+	 * Outputs: 
+	 * - Positive fern features (pFerns) 
+	 * - Positive NN examples (pExample)
+	 */
+	void generatePositiveData(final Mat frame, final int numWarps, final Grid aGrid) {
+		generatePositiveData(frame, numWarps, aGrid.getBestBox(), aGrid.getGoodBoxes(), aGrid.getBBhull(), _classifierFern, _arena, _sampler);
+	}
+	
+	/**
+	 * Same as above, with the grid's good boxes already extracted, so that it can run in the background
+	 * @param arena, sampler of the calling thread
+	 */
+	private void generatePositiveData(final Mat frame, final int numWarps, final BoundingBox bestBox, final BoundingBox[] goodBoxes, final BoundingBox bbhull, 
+			final FernEnsembleClassifier classifierFern, final MatArena arena, final PatternSampler sampler) {
+		final int scope = arena.mark();
+		try{
+			generatePositiveDataInArena(frame, numWarps, bestBox, goodBoxes, bbhull, classifierFern, arena, sampler);
+		}finally{
+			arena.release(scope);
+		}
+	}
+	
+	private void generatePositiveDataInArena(final Mat frame, final int numWarps, final BoundingBox bestBox, final BoundingBox[] goodBoxes, final BoundingBox bbhull, 
+			final FernEnsembleClassifier classifierFern, final MatArena arena, final PatternSampler sampler) {
+		sampler.sample(frame, bestBox, _pExample);
+		//Get Fern features on warped patches
+		final Mat img = arena.acquire();
+		Imgproc.GaussianBlur(frame, img, BLUR_SIZE, 1.5);
+		final Mat warped = arena.view(img, bbhull);
+		// centre of the hull
+		final Point pt = new Point(bbhull.x + (bbhull.width - 1) * 0.5f, bbhull.y + (bbhull.height - 1) * 0.5f);
+		
+		_pFerns.clear();
+		_pPatterns.clear();
+		
+		byte[] imgData = null;
+		final int cols = img.cols();
+		classifierFern.prepareFrame(cols);
+		// warp sampling, only the pixels used by the ferns are warped
+		final WarpSampler warpSampler = _params.warp_sampling && numWarps > 1 ? new WarpSampler(frame, _patchGenerator.noiseRange) : null;
+		for(int i = 0; i < numWarps; i++){
+			if(i > 0 && warpSampler != null){
+				_patchGenerator.prepareWarp(pt, bbhull, warpSampler, _rng);
+				for(BoundingBox goodBox : goodBoxes){
+					final int[] allFernsHashCodes = classifierFern.getAllFernsHashCodesWarped(warpSampler, goodBox.x, goodBox.y, goodBox.scaleIdx, new int[classifierFern.getNumFerns()]);
+					_pFerns.add(new Pair<int[], Boolean>(allFernsHashCodes, true));
+				}
+				continue;
+			}
+			
+			if(i > 0){
+				// this is important as it introduces the necessary noise / fuziness in the initial examples such that the Fern classifier recognises similar shapes not only Exact ones ! 
+				// warped is a reference to a subset of the img data, so this will affect the img object
+				_patchGenerator.generate(frame, pt, warped, bbhull.size(), _rng);
+			}
+
+			// 1 copy per warp, rather than 1 per good box
+			imgData = Util.getByteArray(img, imgData);
+			for(BoundingBox goodBox : goodBoxes){
+				final int[] allFernsHashCodes = classifierFern.getAllFernsHashCodesInFrame(imgData, goodBox.y * cols + goodBox.x, goodBox.scaleIdx, new int[classifierFern.getNumFerns()], 0);
+				_pFerns.add(new Pair<int[], Boolean>(allFernsHashCodes, true));
+				
+//				// this will be used for display only
+//				final Mat tempPattern = new Mat();
+//				Imgproc.resize(patch, tempPattern, new Size(_params.patch_size, _params.patch_size));
+//				_pPatterns.add(tempPattern);
+			}
+		}
+		
+		if(TldLog.isInfo()){
+			TldLog.i("Positive examples generated( ferns: " + _pFerns.size() + " NN: 1/n )");
+		}
+	}
+	
+	
+	public List<Mat> getPPatterns(){
+		return _pPatterns;
+	}
+	
+	/**
+	 * @return how many grid boxes the last detection scanned
+	 */
+	public int getLastScannedBoxes(){
+		return _detectionScheduler.getLastScanned();
+	}
+	
+	/**
+	 * @return true if the last detection scanned the whole grid, false if only the region around the tracked box
+	 */
+	public boolean isLastFullScan(){
+		return _detectionScheduler.isLastFullScan();
+	}
+	
+	/**
+	 * @return how many ferns the cascade evaluated per box on average, during the last detection. 0 if not in cascade mode (fern_cascade parameter)
+	 */
+	public float getAverageFernsEvaluated(){
+		return _lastCascadeStats == null ? 0f : _lastCascadeStats.getAverageFernsEvaluated();
+	}
+	
+	/**
+	 * @return how many positive NN examples have been evicted since init(), because the memory was full (nn_max_positive_examples parameter)
+	 */
+	public long getNNPositiveEvictions(){
+		return _classifierNN.getPositiveEvictions();
+	}
+	
+	public long getNNNegativeEvictions(){
+		return _classifierNN.getNegativeEvictions();
+	}
+	
+	/**
+	 * @return the per stage latencies and the cascade survivor counts so far, safe to call from any thread. Empty if metrics_sample_interval is 0
+	 */
+	public TldMetrics.Snapshot getMetrics(){
+		return _metrics.snapshot();
+	}
+	
+	public void resetMetrics(){
+		_metrics.reset();
+	}
+	
+	
+	static final class DetectionStruct {
+		final BoundingBox detectedBB = new BoundingBox();
+		int boxIdx;	// in the grid
+		double averagePosterior;
+		NNConfStruct nnConf;
+		
+		void set(Grid grid, int boxIdx, double averagePosterior) {
+			grid.getBox(boxIdx, detectedBB);
+			this.boxIdx = boxIdx;
+			this.averagePosterior = averagePosterior;
+			this.nnConf = null;
+		}
+	}
+	
+	/**
+	 * The DetectionStructs are pooled, re-used after each reset(), only the first detectedCount are valid
+	 */
+	static final class FernPartition {
+		int varPassed = 0;
+		long varianceNanos, fernNanos; // only measured in the sampled frames
+		private DetectionStruct[] _detected = new DetectionStruct[0];
+		private DetectionStruct[] _sorted = new DetectionStruct[0];
+		int detectedCount = 0;
+		final CascadeStats cascadeStats;
+		
+		FernPartition(int numFerns){
+			cascadeStats = new CascadeStats(numFerns);
+		}
+		
+		void reset(){
+			varPassed = 0;
+			varianceNanos = 0;
+			fernNanos = 0;
+			detectedCount = 0;
+			cascadeStats.reset();
+		}
+		
+		void add(final Grid grid, final int boxIdx, final double averagePosterior){
+			if(detectedCount == _detected.length){
+				_detected = Arrays.copyOf(_detected, Math.max(64, detectedCount * 2));
+				_sorted = new DetectionStruct[_detected.length];
+			}
+			if(_detected[detectedCount] == null){
+				_detected[detectedCount] = new DetectionStruct();
+			}
+			_detected[detectedCount++].set(grid, boxIdx, averagePosterior);
+		}
+		
+		void addAll(final Grid grid, final FernPartition other){
+			for(int i = 0; i < other.detectedCount; i++){
+				add(grid, other._detected[i].boxIdx, other._detected[i].averagePosterior);
+			}
+		}
+		
+		DetectionStruct get(final int idx){
+			return _detected[idx];
+		}
+		
+		/**
+		 * Same as Util.keepBestN() on the averagePosterior: the n best, in ascending order, with a merge sort that doesn't allocate.
+		 * The dropped ones are moved after them, to be re-used.
+		 */
+		void keepBest(final int n){
+			if(detectedCount <= n) {
+				// nothing to do, sorting is not a requirement
+				return;
+			}
+			
+			// stable, as Collections.sort(), bottom up merges between the 2 arrays
+			DetectionStruct[] src = _detected, dst = _sorted;
+			for(int width = 1; width < detectedCount; width *= 2){
+				for(int lo = 0; lo < detectedCount; lo += 2 * width){
+					final int mid = Math.min(lo + width, detectedCount);
+					final int hi = Math.min(lo + 2 * width, detectedCount);
+					int i = lo, j = mid, k = lo;
+					while(i < mid && j < hi){
+						dst[k++] = src[j].averagePosterior < src[i].averagePosterior ? src[j++] : src[i++];
+					}
+					while(i < mid){
+						dst[k++] = src[i++];
+					}
+					while(j < hi){
+						dst[k++] = src[j++];
+					}
+				}
+				final DetectionStruct[] swap = src;
+				src = dst;
+				dst = swap;
+			}
+			
+			// the best are at the end, rotate them to the front
+			final int dropped = detectedCount - n;
+			System.arraycopy(src, dropped, dst, 0, n);
+			System.arraycopy(src, 0, dst, n, dropped);
+			if(dst != _detected){
+				System.arraycopy(dst, 0, _detected, 0, detectedCount);
+			}
+			detectedCount = n;
+		}
+	}
+	
+	static final class DaemonThreadFactory implements ThreadFactory {
+		private final String _namePrefix;
+		private int _count = 0;
+		
+		DaemonThreadFactory(String namePrefix){
+			_namePrefix = namePrefix;
+		}
+		
+		@Override
+		public synchronized Thread newThread(Runnable r) {
+			final Thread result = new Thread(r, _namePrefix + _count++);
+			result.setDaemon(true);
+			return result;
+		}
+	}
+	
+	private static final class LearnedModel {
+		final FernEnsembleClassifier classifierFern;
+		final NNClassifier classifierNN;
+		
+		LearnedModel(FernEnsembleClassifier classifierFern, NNClassifier classifierNN){
+			this.classifierFern = classifierFern;
+			this.classifierNN = classifierNN;
+		}
+	}
+	
+	private static final class TrackingStruct {
+		float conf;
+		final BoundingBox predictedBB = new BoundingBox();
+		final PointBuffer lastPoints = new PointBuffer();
+		final PointBuffer currentPoints = new PointBuffer();
+	}
+	
+	
+	/**
+	 * Owned by the Tld instance and overwritten by the next processFrame(), copy what has to be kept longer
+	 */
+	public static final class ProcessFrameStruct {
+		public Point[] lastPoints;	// only the first pointsCount are valid, null if not tracking
+		public Point[] currentPoints;
+		public int pointsCount;
+		public BoundingBox currentBBox;	// null if lost
+		
+		ProcessFrameStruct set(TrackingStruct trackingStruct, BoundingBox currentBBox) {
+			this.lastPoints = trackingStruct == null ? null : trackingStruct.lastPoints.array();
+			this.currentPoints = trackingStruct == null ? null : trackingStruct.currentPoints.array();
+			this.pointsCount = trackingStruct == null ? 0 : trackingStruct.lastPoints.size();
+			this.currentBBox = currentBBox;
+			return this;
+		}
+	}
+	
+}
@@ -0,0 +1,127 @@
+/**
+ * Copyright 2013 Dan Oprescu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trandi.opentld.tld;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Logging of the TLD code, so that it doesn't depend on Android and costs nothing when nobody reads the logs.
+ * 
+ * - DEBUG is a compile time switch: <code>if(TldLog.DEBUG){ TldLog.d("..." + x); }</code> is dropped entirely by javac when false.
+ * - the other messages built by concatenation are guarded by isInfo() / isLoggable(), so the strings are only built if they're going somewhere.
+ * - the messages go to a pluggable Sink, a no-op one by default. The app plugs the logcat one, other platforms JUL_SINK or their own (e.g. SLF4J).
+ */
+public final class TldLog {
+	// set to true to compile in the per frame / per box debug messages
+	public static final boolean DEBUG = false;
+	
+	// same values as android.util.Log
+	public static final int LEVEL_DEBUG = 3;
+	public static final int LEVEL_INFO = 4;
+	public static final int LEVEL_WARN = 5;
+	public static final int LEVEL_ERROR = 6;
+	public static final int LEVEL_OFF = Integer.MAX_VALUE;
+	
+	public static interface Sink {
+		/**
+		 * @param throwable can be null
+		 */
+		void log(int level, String tag, String msg, Throwable throwable);
+	}
+	
+	public static final Sink NO_OP_SINK = new Sink() {
+		@Override
+		public void log(int level, String tag, String msg, Throwable throwable) {
+		}
+	};
+	
+	/**
+	 * java.util.logging, 1 Logger per tag
+	 */
+	public static final Sink JUL_SINK = new Sink() {
+		@Override
+		public void log(int level, String tag, String msg, Throwable throwable) {
+			final Level julLevel;
+			if(level >= LEVEL_ERROR){
+				julLevel = Level.SEVERE;
+			}else if(level >= LEVEL_WARN){
+				julLevel = Level.WARNING;
+			}else if(level >= LEVEL_INFO){
+				julLevel = Level.INFO;
+			}else{
+				julLevel = Level.FINE;
+			}
+			Logger.getLogger(tag).log(julLevel, msg, throwable);
+		}
+	};
+	
+	private static volatile Sink _sink = NO_OP_SINK;
+	private static volatile int _level = LEVEL_INFO;
+	
+	
+	private TldLog(){
+	}
+	
+	/**
+	 * @param sink null for the no-op sink
+	 */
+	public static void setSink(Sink sink){
+		_sink = sink == null ? NO_OP_SINK : sink;
+	}
+	
+	/**
+	 * @param level the messages below this level are dropped, LEVEL_OFF to drop everything
+	 */
+	public static void setLevel(int level){
+		_level = level;
+	}
+	
+	public static boolean isLoggable(int level){
+		return level >= _level && _sink != NO_OP_SINK;
+	}
+	
+	public static boolean isInfo(){
+		return isLoggable(LEVEL_INFO);
+	}
+	
+	static void d(String msg){
+		log(LEVEL_DEBUG, msg, null);
+	}
+	
+	static void i(String msg){
+		log(LEVEL_INFO, msg, null);
+	}
+	
+	static void w(String msg){
+		log(LEVEL_WARN, msg, null);
+	}
+	
+	static void e(String msg){
+		log(LEVEL_ERROR, msg, null);
+	}
+	
+	static void e(String msg, Throwable throwable){
+		log(LEVEL_ERROR, msg, throwable);
+	}
+	
+	private static void log(int level, String msg, Throwable throwable){
+		if(level >= _level){
+			_sink.log(level, Util.TAG, msg, throwable);
+		}
+	}
+}
@@ -0,0 +1,278 @@
+/**
+ * Copyright 2013 Dan Oprescu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trandi.opentld.tld;
+
+import java.util.Arrays;
+
+/**
+ * Per stage latencies and cascade survivor counts of the TLD pipeline.
+ * 
+ * Only 1 frame every sampleInterval is measured, the others cost a boolean check per stage. The frame thread accumulates 
+ * the current frame in plain arrays and publishes them into the histograms ONCE at the end of the frame, under the lock, 
+ * so that snapshot() can be called from any thread (e.g. the UI).
+ */
+public class TldMetrics {
+	// stages
+	public static final int TRACK = 0;
+	public static final int VARIANCE = 1;	// summed over the partitions in parallel detection, so it's CPU time rather than wall time
+	public static final int FERN = 2;		// same as above
+	public static final int NN = 3;
+	public static final int CLUSTER = 4;
+	public static final int LEARN = 5;		// on the frame thread, so it includes TRAIN in inline learning mode
+	public static final int TRAIN = 6;		// the classifiers update, in the background in async learning mode
+	public static final int FRAME = 7;		// the whole processFrame()
+	public static final int STAGES = 8;
+	private static final String[] STAGE_NAMES = {"track", "variance", "fern", "nn", "cluster", "learn", "train", "frame"};
+	
+	// how many boxes survive each stage of the detection cascade
+	public static final int SCANNED = 0;
+	public static final int VARIANCE_PASSED = 1;
+	public static final int FERN_PASSED = 2;
+	public static final int NN_PASSED = 3;
+	public static final int CLUSTERS = 4;
+	// the bad boxes learnt from as negative Fern examples
+	public static final int NEGATIVES = 5;
+	// how many of them learn() had to hash itself, the Fern cascade having rejected them early
+	public static final int REHASHED = 6;
+	public static final int COUNTERS = 7;
+	private static final String[] COUNTER_NAMES = {"scanned", "variance", "fern", "nn", "clusters", "negatives", "rehashed"};
+	
+	private final int _sampleInterval;
+	private int _framesToSample;
+	private boolean _sampling;
+	// current frame, frame thread only
+	private final long[] _frameNanos = new long[STAGES];
+	private int _frameStages;	// 1 bit per stage that ran
+	private final int[] _frameCounts = new int[COUNTERS];
+	
+	// published, guarded by this
+	private final LatencyHistogram[] _histograms = new LatencyHistogram[STAGES];
+	private final long[] _lastNanos = new long[STAGES];
+	private final int[] _lastCounts = new int[COUNTERS];
+	private final long[] _totalCounts = new long[COUNTERS];
+	private long _sampledFrames;
+	
+	
+	/**
+	 * @param sampleInterval measure 1 frame every sampleInterval, 0 to disable
+	 */
+	TldMetrics(int sampleInterval){
+		if(sampleInterval < 0){
+			throw new IllegalArgumentException("The metrics sample interval can't be negative, got: " + sampleInterval);
+		}
+		_sampleInterval = sampleInterval;
+		for(int i = 0; i < STAGES; i++){
+			_histograms[i] = new LatencyHistogram();
+		}
+		Arrays.fill(_lastNanos, -1L);
+	}
+	
+	boolean isEnabled(){
+		return _sampleInterval > 0;
+	}
+	
+	/**
+	 * @return true if this frame is measured
+	 */
+	boolean beginFrame(){
+		_sampling = false;
+		if(_sampleInterval == 0){
+			return false;
+		}
+		if(_framesToSample-- == 0){
+			_framesToSample = _sampleInterval - 1;
+			_sampling = true;
+			Arrays.fill(_frameNanos, 0L);
+			Arrays.fill(_frameCounts, 0);
+			_frameStages = 0;
+		}
+		return _sampling;
+	}
+	
+	boolean isSampling(){
+		return _sampling;
+	}
+	
+	/**
+	 * @return the start time to give to stop(), 0 if this frame isn't measured
+	 */
+	long start(){
+		return _sampling ? System.nanoTime() : 0L;
+	}
+	
+	void stop(final int stage, final long start){
+		if(_sampling){
+			add(stage, System.nanoTime() - start);
+		}
+	}
+	
+	/**
+	 * Adds time measured elsewhere (e.g. by the detection partitions) to a stage of the current frame
+	 */
+	void add(final int stage, final long nanos){
+		if(_sampling){
+			_frameNanos[stage] += nanos;
+			_frameStages |= 1 << stage;
+		}
+	}
+	
+	void count(final int counter, final int value){
+		if(_sampling){
+			_frameCounts[counter] += value;
+		}
+	}
+	
+	/**
+	 * Publishes the measurements of the current frame, only the stages that actually ran are recorded
+	 */
+	void endFrame(){
+		if(!_sampling){
+			return;
+		}
+		_sampling = false;
+		
+		synchronized(this){
+			for(int stage = 0; stage < STAGES; stage++){
+				if((_frameStages & (1 << stage)) != 0){
+					_histograms[stage].record(_frameNanos[stage]);
+					_lastNanos[stage] = _frameNanos[stage];
+				}else{
+					_lastNanos[stage] = -1;
+				}
+			}
+			for(int counter = 0; counter < COUNTERS; counter++){
+				_lastCounts[counter] = _frameCounts[counter];
+				_totalCounts[counter] += _frameCounts[counter];
+			}
+			_sampledFrames++;
+		}
+	}
+	
+	/**
+	 * Records straight away a measurement done outside of the frame thread (e.g. the background learning)
+	 */
+	synchronized void record(final int stage, final long nanos){
+		_histograms[stage].record(nanos);
+	}
+	
+	public synchronized void reset(){
+		for(LatencyHistogram histogram : _histograms){
+			histogram.reset();
+		}
+		Arrays.fill(_lastNanos, -1L);
+		Arrays.fill(_lastCounts, 0);
+		Arrays.fill(_totalCounts, 0L);
+		_sampledFrames = 0;
+	}
+	
+	/**
+	 * @return a consistent copy of the metrics so far, which won't change anymore
+	 */
+	public synchronized Snapshot snapshot(){
+		final LatencyHistogram[] histograms = new LatencyHistogram[STAGES];
+		for(int i = 0; i < STAGES; i++){
+			histograms[i] = new LatencyHistogram(_histograms[i]);
+		}
+		return new Snapshot(_sampledFrames, histograms, _lastNanos.clone(), _lastCounts.clone(), _totalCounts.clone());
+	}
+	
+	public static String getStageName(int stage){
+		return STAGE_NAMES[stage];
+	}
+	
+	public static String getCounterName(int counter){
+		return COUNTER_NAMES[counter];
+	}
+	
+	
+	public static final class Snapshot {
+		private final long _sampledFrames;
+		private final LatencyHistogram[] _histograms;
+		private final long[] _lastNanos;
+		private final int[] _lastCounts;
+		private final long[] _totalCounts;
+		
+		Snapshot(long sampledFrames, LatencyHistogram[] histograms, long[] lastNanos, int[] lastCounts, long[] totalCounts){
+			_sampledFrames = sampledFrames;
+			_histograms = histograms;
+			_lastNanos = lastNanos;
+			_lastCounts = lastCounts;
+			_totalCounts = totalCounts;
+		}
+		
+		public long getSampledFrames(){
+			return _sampledFrames;
+		}
+		
+		/**
+		 * @param stage one of the stage constants, e.g. TldMetrics.FERN
+		 */
+		public LatencyHistogram getHistogram(int stage){
+			return _histograms[stage];
+		}
+		
+		/**
+		 * @return the stage latency in the last sampled frame, -1 if the stage didn't run in that frame
+		 */
+		public long getLastNanos(int stage){
+			return _lastNanos[stage];
+		}
+		
+		/**
+		 * @param counter one of the counter constants, e.g. TldMetrics.VARIANCE_PASSED
+		 */
+		public int getLastCount(int counter){
+			return _lastCounts[counter];
+		}
+		
+		/**
+		 * @return the sum over all the sampled frames
+		 */
+		public long getTotalCount(int counter){
+			return _totalCounts[counter];
+		}
+		
+		/**
+		 * 1 line per stage with the percentiles in microseconds, then the average survivors per sampled frame
+		 */
+		@Override
+		public String toString(){
+			final StringBuilder result = new StringBuilder();
+			result.append("Sampled frames: ").append(_sampledFrames);
+			for(int stage = 0; stage < STAGES; stage++){
+				final LatencyHistogram histogram = _histograms[stage];
+				if(histogram.getCount() == 0){
+					continue;
+				}
+				result.append('\n').append(STAGE_NAMES[stage])
+					.append(" n=").append(histogram.getCount())
+					.append(" mean=").append(Math.round(histogram.getMean() / 1000))
+					.append(" p50=").append(histogram.getValueAtPercentile(50) / 1000)
+					.append(" p90=").append(histogram.getValueAtPercentile(90) / 1000)
+					.append(" p99=").append(histogram.getValueAtPercentile(99) / 1000)
+					.append(" max=").append(histogram.getMax() / 1000).append(" us");
+			}
+			if(_sampledFrames > 0){
+				result.append("\nsurvivors/frame");
+				for(int counter = 0; counter < COUNTERS; counter++){
+					result.append(' ').append(COUNTER_NAMES[counter]).append('=').append(_totalCounts[counter] / _sampledFrames);
+				}
+			}
+			return result.toString();
+		}
+	}
+}
@@ -0,0 +1,183 @@
+/**
+ * Copyright 2013 Dan Oprescu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trandi.opentld.tld;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Binary snapshot of a trained tracker, see {@link Tld#saveSnapshot(File)}. Layout, all little endian:
+ * 
+ * 	header:		magic "TLDS", format version
+ * 	Tld:		frame size, min_win, patch_size, init box, variance threshold, last box, negative NN patches
+ * 	Ferns:		thresholds, features of each fern at each scale, posteriors and counters, cascade state
+ * 	NN:			thresholds, positive then negative example matrices
+ * 
+ * The arrays are stored as count + raw values, and loaded in bulk from the memory mapped file, without any per value parsing.
+ * Bump VERSION whenever the layout changes, older snapshots are then rejected rather than mis-read.
+ */
+final class TldSnapshot {
+	static final int MAGIC = 0x53444c54;	// "TLDS" read as little endian
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 8;
+	
+	private TldSnapshot(){
+	}
+	
+	
+	/**
+	 * @return a buffer of this size, with the header already written
+	 */
+	static ByteBuffer allocate(final int size){
+		final ByteBuffer result = ByteBuffer.allocate(HEADER_SIZE + size).order(ByteOrder.LITTLE_ENDIAN);
+		result.putInt(MAGIC);
+		result.putInt(VERSION);
+		return result;
+	}
+	
+	static void write(final ByteBuffer buffer, final File file) throws IOException {
+		if(buffer.hasRemaining()){
+			throw new IllegalStateException("Snapshot size miscalculated, " + buffer.remaining() + " bytes not written");
+		}
+		buffer.flip();
+		
+		final RandomAccessFile out = new RandomAccessFile(file, "rw");
+		try{
+			out.setLength(0);
+			final FileChannel channel = out.getChannel();
+			while(buffer.hasRemaining()){
+				channel.write(buffer);
+			}
+		}finally{
+			out.close();
+		}
+	}
+	
+	/**
+	 * @return the memory mapped file, positioned after the checked header
+	 */
+	static ByteBuffer map(final File file) throws IOException {
+		final RandomAccessFile in = new RandomAccessFile(file, "r");
+		final ByteBuffer result;
+		try{
+			// the mapping stays valid after the file is closed
+			result = in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, in.length()).order(ByteOrder.LITTLE_ENDIAN);
+		}finally{
+			in.close();
+		}
+		
+		if(result.remaining() < HEADER_SIZE || result.getInt() != MAGIC){
+			throw new IOException(file + " is not a TLD snapshot");
+		}
+		final int version = result.getInt();
+		if(version != VERSION){
+			throw new IOException(file + " is a version " + version + " TLD snapshot, only version " + VERSION + " is supported");
+		}
+		return result;
+	}
+	
+	
+	/* ARRAYS, as count + values. The bulk views don't move the buffer's position, hence the explicit position updates */
+	
+	static int sizeOf(final int[] values, final int count){
+		return 4 + 4 * count;
+	}
+	
+	static void putInts(final ByteBuffer buffer, final int[] values, final int count){
+		buffer.putInt(count);
+		buffer.asIntBuffer().put(values, 0, count);
+		buffer.position(buffer.position() + 4 * count);
+	}
+	
+	static int[] getInts(final ByteBuffer buffer){
+		final int[] result = new int[getCount(buffer, 4)];
+		buffer.asIntBuffer().get(result);
+		buffer.position(buffer.position() + 4 * result.length);
+		return result;
+	}
+	
+	static int sizeOf(final float[] values, final int count){
+		return 4 + 4 * count;
+	}
+	
+	static void putFloats(final ByteBuffer buffer, final float[] values, final int count){
+		buffer.putInt(count);
+		buffer.asFloatBuffer().put(values, 0, count);
+		buffer.position(buffer.position() + 4 * count);
+	}
+	
+	static float[] getFloats(final ByteBuffer buffer){
+		final float[] result = new float[getCount(buffer, 4)];
+		buffer.asFloatBuffer().get(result);
+		buffer.position(buffer.position() + 4 * result.length);
+		return result;
+	}
+	
+	static int sizeOf(final long[] values, final int count){
+		return 4 + 8 * count;
+	}
+	
+	static void putLongs(final ByteBuffer buffer, final long[] values, final int count){
+		buffer.putInt(count);
+		buffer.asLongBuffer().put(values, 0, count);
+		buffer.position(buffer.position() + 8 * count);
+	}
+	
+	static long[] getLongs(final ByteBuffer buffer){
+		final long[] result = new long[getCount(buffer, 8)];
+		buffer.asLongBuffer().get(result);
+		buffer.position(buffer.position() + 8 * result.length);
+		return result;
+	}
+	
+	static int sizeOf(final double[] values, final int count){
+		return 4 + 8 * count;
+	}
+	
+	static void putDoubles(final ByteBuffer buffer, final double[] values, final int count){
+		buffer.putInt(count);
+		buffer.asDoubleBuffer().put(values, 0, count);
+		buffer.position(buffer.position() + 8 * count);
+	}
+	
+	static double[] getDoubles(final ByteBuffer buffer){
+		final double[] result = new double[getCount(buffer, 8)];
+		buffer.asDoubleBuffer().get(result);
+		buffer.position(buffer.position() + 8 * result.length);
+		return result;
+	}
+	
+	/**
+	 * A corrupted count must not turn into a huge allocation, a truncated file underflows like any other read
+	 * @param valueSize in bytes, of each of the count values that follow
+	 */
+	static int getCount(final ByteBuffer buffer, final int valueSize){
+		final int result = buffer.getInt();
+		if(result < 0){
+			throw new IllegalArgumentException("Corrupted snapshot, " + result + " values announced");
+		}
+		if((long) result * valueSize > buffer.remaining()){
+			throw new BufferUnderflowException();
+		}
+		return result;
+	}
+}
@@ -0,0 +1,94 @@
+/**
+ * Copyright 2013 Dan Oprescu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trandi.opentld.tld;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 3 pre-allocated slots handed over from 1 writer thread to 1 reader thread, latest wins:
+ * the writer always has a slot to fill without waiting, the reader always gets the most recently published one,
+ * and anything published but not read in between is overwritten (dropped).
+ * 
+ * 	writer: fill(buffer.writeSlot()); buffer.publish();
+ * 	reader: if(buffer.update()) use(buffer.readSlot());
+ * 
+ * The slot in the middle and whether it's new are swapped atomically, which is also what makes the slot content visible to the other thread.
+ * Nothing is allocated after construction.
+ */
+final class TripleBuffer<T> {
+	private static final int NEW = 4;	// flag on top of the middle slot index
+	
+	private final T[] _slots;
+	private int _write = 0;	// only touched by the writer
+	private int _read = 1;	// only touched by the reader
+	private final AtomicInteger _middle = new AtomicInteger(2);
+	
+	TripleBuffer(final T first, final T second, final T third){
+		if(first == null || second == null || third == null || first == second || second == third || first == third){
+			throw new IllegalArgumentException("3 different slots are needed");
+		}
+		@SuppressWarnings("unchecked")
+		final T[] slots = (T[]) new Object[]{first, second, third};
+		_slots = slots;
+	}
+	
+	/**
+	 * Writer side.
+	 * @return the slot to fill before {@link #publish()}, the reader never sees it until then
+	 */
+	T writeSlot(){
+		return _slots[_write];
+	}
+	
+	/**
+	 * Writer side, makes the write slot the latest one and gets a new write slot.
+	 * @return true if the previously published slot hadn't been read yet and has been dropped
+	 */
+	boolean publish(){
+		final int previous = _middle.getAndSet(_write | NEW);
+		_write = previous & ~NEW;
+		return (previous & NEW) != 0;
+	}
+	
+	/**
+	 * @return true if something has been published since the last {@link #update()}, can be called from any thread
+	 */
+	boolean hasNew(){
+		return (_middle.get() & NEW) != 0;
+	}
+	
+	/**
+	 * Reader side, takes the latest published slot, if there's one.
+	 * @return false if nothing new has been published, in which case the read slot stays the same
+	 */
+	boolean update(){
+		if(!hasNew()){
+			return false;
+		}
+		
+		_read = _middle.getAndSet(_read) & ~NEW;
+		return true;
+	}
+	
+	/**
+	 * Reader side.
+	 * @return the slot taken by the last {@link #update()}, stays the reader's until the next one
+	 */
+	T readSlot(){
+		return _slots[_read];
+	}
+}
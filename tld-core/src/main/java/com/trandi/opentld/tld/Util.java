@@ -29,16 +29,6 @@ import org.opencv.core.Point;
 public class Util {
 	public final static String TAG = "OpenTLD";
 	
-	private final static byte[] _byteBuff1 = new byte[1];
-	private final static int[] _intBuff1 = new int[1];
-	private final static float[] _floatBuff1 = new float[1];
-	private final static double[] _doubleBuff1 = new double[1];
-	// this is for a whole matrix !
-	private static byte[] _byteBuff = new byte[1];
-	private static int[] _intBuff = new int[1];
-	private static float[] _floatBuff = new float[1];
-	private static double[] _doubleBuff = new double[1];
-	
 	
 	static int unsignedChar(int val){
 		return Math.min(Math.max(val, 0), 255);
@@ -78,16 +68,23 @@ public class Util {
 	 * For a 320x240 frame the improvement is close to 5X !!!
 	 */
 	static double getVar(final BoundingBox box, final int[] sum, final double[] sqsum, final int colCount) {
-		final int brs = sum[(box.y + box.height) * colCount + box.x + box.width];
-		final int bls = sum[(box.y + box.height) * colCount + box.x];
-		final int trs = sum[box.y * colCount + box.x + box.width];
-		final int tls = sum[box.y * colCount + box.x];
-		final double brsq = sqsum[(box.y + box.height) * colCount + box.x + box.width];
-		final double blsq = sqsum[(box.y + box.height) * colCount + box.x];
-		final double trsq = sqsum[box.y * colCount + box.x + box.width];
-		final double tlsq = sqsum[box.y * colCount + box.x];
+		return getVar(box.x, box.y, box.width, box.height, sum, sqsum, colCount);
+	}
+	
+	/**
+	 * Same as above, for a box given by its coordinates (e.g. from the Grid arrays)
+	 */
+	static double getVar(final int x, final int y, final int width, final int height, final int[] sum, final double[] sqsum, final int colCount) {
+		final int brs = sum[(y + height) * colCount + x + width];
+		final int bls = sum[(y + height) * colCount + x];
+		final int trs = sum[y * colCount + x + width];
+		final int tls = sum[y * colCount + x];
+		final double brsq = sqsum[(y + height) * colCount + x + width];
+		final double blsq = sqsum[(y + height) * colCount + x];
+		final double trsq = sqsum[y * colCount + x + width];
+		final double tlsq = sqsum[y * colCount + x];
 		
-		final double boxArea = box.area();
+		final double boxArea = (double)width * height;
 		final double mean = (brs + tls - trs - bls) / boxArea;
 		final double sqmean = (brsq + tlsq - trsq - blsq) / boxArea;
 		
@@ -107,8 +104,12 @@ public class Util {
 	}
 	
 	static float norm(final Point p1, final Point p2){
-		final double dX = p1.x - p2.x;
-		final double dY = p1.y - p2.y;
+		return norm(p1.x, p1.y, p2.x, p2.y);
+	}
+	
+	static float norm(final double x1, final double y1, final double x2, final double y2){
+		final double dX = x1 - x2;
+		final double dY = y1 - y2;
 		return (float)Math.sqrt(dX * dX + dY * dY);
 	}
 	
@@ -131,11 +132,40 @@ public class Util {
 	}
 	
 	
+	/**
+	 * These single element getters make a native call each, and allocate, tests / debugging only.
+	 * No shared static buffers anywhere, they're not safe with several Tld instances on different threads, see {@link ScratchBuffers}.
+	 */
 	static byte getByte(final int row, final int col, final Mat mat){
 		if(CvType.CV_8UC1 != mat.type()) throw new IllegalArgumentException("Expected type is CV_8UC1, we found: " + CvType.typeToString(mat.type()));
 		
-		mat.get(row, col, _byteBuff1);
-		return _byteBuff1[0];
+		final byte[] result = new byte[1];
+		mat.get(row, col, result);
+		return result[0];
+	}
+	
+	static int getInt(final int row, final int col, final Mat mat){
+		if(CvType.CV_32SC1 != mat.type()) throw new IllegalArgumentException("Expected type is CV_32SC1, we found: " + CvType.typeToString(mat.type()));
+		
+		final int[] result = new int[1];
+		mat.get(row, col, result);
+		return result[0];
+	}
+	
+	static float getFloat(final int row, final int col, final Mat mat){
+		if(CvType.CV_32F != mat.type()) throw new IllegalArgumentException("Expected type is CV_32F, we found: " + CvType.typeToString(mat.type()));
+		
+		final float[] result = new float[1];
+		mat.get(row, col, result);
+		return result[0];
+	}
+	
+	static double getDouble(final int row, final int col, final Mat mat){
+		if(CvType.CV_64F != mat.type()) throw new IllegalArgumentException("Expected type is CV_64F, we found: " + CvType.typeToString(mat.type()));
+		
+		final double[] result = new double[1];
+		mat.get(row, col, result);
+		return result[0];
 	}
 	
 	/**
@@ -145,97 +175,123 @@ public class Util {
 	 * CV_32S -> int[]
 	 * CV_32F -> float[]
 	 * CV_64F-> double[]
+	 * 
+	 * @return a NEW array with the whole Mat
 	 */
 	static byte[] getByteArray(final Mat mat){
+		return getByteArray(mat, null);
+	}
+	
+	/**
+	 * Same as above but into the provided buffer, e.g. from {@link ScratchBuffers}
+	 * @return the buffer, or a new one if the provided buffer didn't have the right size
+	 */
+	static byte[] getByteArray(final Mat mat, byte[] buffer){
 		if(CvType.CV_8UC1 != mat.type()) throw new IllegalArgumentException("Expected type is CV_8UC1, we found: " + CvType.typeToString(mat.type()));
 		
 		final int size = (int) (mat.total() * mat.channels());
-		if(_byteBuff.length != size){
-			_byteBuff = new byte[size];
+		if(buffer == null || buffer.length != size){
+			buffer = new byte[size];
 		}
-		mat.get(0, 0, _byteBuff); // 0 for row and col means the WHOLE Matrix
-		return _byteBuff;
+		mat.get(0, 0, buffer); // 0 for row and col means the WHOLE Matrix
+		return buffer;
 	}
 	
 	static int[] getIntArray(final Mat mat){
+		return getIntArray(mat, null);
+	}
+	
+	static int[] getIntArray(final Mat mat, int[] buffer){
 		if(CvType.CV_32SC1 != mat.type()) throw new IllegalArgumentException("Expected type is CV_32SC1, we found: " + CvType.typeToString(mat.type()));
 		
 		final int size = (int) (mat.total() * mat.channels());
-		if(_intBuff.length != size){
-			_intBuff = new int[size];
+		if(buffer == null || buffer.length != size){
+			buffer = new int[size];
 		}
-		mat.get(0, 0, _intBuff); // 0 for row and col means the WHOLE Matrix
-		return _intBuff;
+		mat.get(0, 0, buffer);
+		return buffer;
 	}
 	
 	static float[] getFloatArray(final Mat mat){
-		if(CvType.CV_32FC1 != mat.type()) throw new IllegalArgumentException("Expected type is CV_32FC1, we found: " + CvType.typeToString(mat.type()));
-		
-		final int size = (int) (mat.total() * mat.channels());
-		if(_floatBuff.length != size){
-			_floatBuff = new float[size];
-		}
-		mat.get(0, 0, _floatBuff); // 0 for row and col means the WHOLE Matrix
-		return _floatBuff;
+		return getFloatArray(mat, null);
 	}
 	
-	static double[] getDoubleArray(final Mat mat){
-		if(CvType.CV_64F != mat.type()) throw new IllegalArgumentException("Expected type is CV_64F, we found: " + CvType.typeToString(mat.type()));
+	static float[] getFloatArray(final Mat mat, float[] buffer){
+		if(CvType.CV_32FC1 != mat.type()) throw new IllegalArgumentException("Expected type is CV_32FC1, we found: " + CvType.typeToString(mat.type()));
 		
 		final int size = (int) (mat.total() * mat.channels());
-		if(_doubleBuff.length != size){
-			_doubleBuff = new double[size];
+		if(buffer == null || buffer.length != size){
+			buffer = new float[size];
 		}
-		mat.get(0, 0, _doubleBuff); // 0 for row and col means the WHOLE Matrix
-		return _doubleBuff;
-	}
-	
-	
-	static int getInt(final int row, final int col, final Mat mat){
-		if(CvType.CV_32SC1 != mat.type()) throw new IllegalArgumentException("Expected type is CV_32SC1, we found: " + CvType.typeToString(mat.type()));
-		
-		mat.get(row, col, _intBuff1);
-		return _intBuff1[0];
+		mat.get(0, 0, buffer);
+		return buffer;
 	}
 	
-	static float getFloat(final int row, final int col, final Mat mat){
-		if(CvType.CV_32F != mat.type()) throw new IllegalArgumentException("Expected type is CV_32F, we found: " + CvType.typeToString(mat.type()));
-		
-		mat.get(row, col, _floatBuff1);
-		return _floatBuff1[0];
+	static double[] getDoubleArray(final Mat mat){
+		return getDoubleArray(mat, null);
 	}
 	
-	static double getDouble(final int row, final int col, final Mat mat){
+	static double[] getDoubleArray(final Mat mat, double[] buffer){
 		if(CvType.CV_64F != mat.type()) throw new IllegalArgumentException("Expected type is CV_64F, we found: " + CvType.typeToString(mat.type()));
 		
-		mat.get(row, col, _doubleBuff1);
-		return _doubleBuff1[0];
+		final int size = (int) (mat.total() * mat.channels());
+		if(buffer == null || buffer.length != size){
+			buffer = new double[size];
+		}
+		mat.get(0, 0, buffer);
+		return buffer;
 	}
 	
 	
+	/**
+	 * Mutable, so that the detection can re-use the same instances from 1 frame to the next
+	 */
 	static final class NNConfStruct {
-		final IsinStruct isin;
-		final float relativeSimilarity;
-		final float conservativeSimilarity;
+		IsinStruct isin;	// null if there were no examples to compare with
+		float relativeSimilarity;
+		float conservativeSimilarity;
+		private final IsinStruct _isin = new IsinStruct(false, -1, false);
 		
 		
+		NNConfStruct() {
+		}
+		
 		NNConfStruct(IsinStruct isin, float relativeSimilarity, float conservativeSimilarity) {
 			this.isin = isin;
 			this.relativeSimilarity = relativeSimilarity;
 			this.conservativeSimilarity = conservativeSimilarity;
 		}
+		
+		NNConfStruct set(float relativeSimilarity, float conservativeSimilarity) {
+			this.isin = null;
+			this.relativeSimilarity = relativeSimilarity;
+			this.conservativeSimilarity = conservativeSimilarity;
+			return this;
+		}
+		
+		NNConfStruct set(boolean inPosSet, int idxPosSet, boolean inNegSet, float relativeSimilarity, float conservativeSimilarity) {
+			this.isin = _isin.set(inPosSet, idxPosSet, inNegSet);
+			this.relativeSimilarity = relativeSimilarity;
+			this.conservativeSimilarity = conservativeSimilarity;
+			return this;
+		}
 	}
 	
 	static final class IsinStruct {
-		final boolean inPosSet;
-		final int idxPosSet;
-		final boolean inNegSet;
+		boolean inPosSet;
+		int idxPosSet;
+		boolean inNegSet;
 		
 		
 		IsinStruct(boolean inPosSet, int idxPosSet, boolean inNegSet) {
+			set(inPosSet, idxPosSet, inNegSet);
+		}
+		
+		IsinStruct set(boolean inPosSet, int idxPosSet, boolean inNegSet) {
 			this.inPosSet = inPosSet;
 			this.idxPosSet = idxPosSet;
 			this.inNegSet = inNegSet;
+			return this;
 		}
 	}
 	
@@ -261,8 +317,26 @@ public class Util {
 		int nextInt();
 	}
 	
+	/**
+	 * 64 random bits out of 2 ints, e.g. to seed a java.util.Random
+	 */
+	static long nextLong(final RNG rng){
+		return ((long) rng.nextInt() << 32) ^ (rng.nextInt() & 0xFFFFFFFFL);
+	}
+	
 	static class DefaultRNG implements RNG{
-		private final Random rnd = new Random();
+		private final Random rnd;
+		
+		DefaultRNG(){
+			rnd = new Random();
+		}
+		
+		/**
+		 * For reproducible runs
+		 */
+		DefaultRNG(final long seed){
+			rnd = new Random(seed);
+		}
 		
 		@Override
 		public float nextFloat() {
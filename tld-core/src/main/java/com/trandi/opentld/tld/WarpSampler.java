@@ -0,0 +1,142 @@
+/**
+ * Copyright 2013 Dan Oprescu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trandi.opentld.tld;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Samples single pixels of a randomly warped patch, without building it: the frame position is mapped back through
+ * the inverse of the random affine transform (see {@link PatchGenerator#prepareWarp(org.opencv.core.Point, BoundingBox, WarpSampler, Util.RNG)}),
+ * bilinearly interpolated and the Gaussian noise added, as PatchGenerator.generate() would have done for that pixel.
+ * 
+ * The random blur is approximated by sampling a frame pre-blurred with the same kernel, the warps being close to rotations
+ * the order doesn't matter much.
+ * 
+ * NOT thread safe.
+ */
+class WarpSampler {
+	// PatchGenerator's random kernel sizes: none, 3, 5 and 7
+	static final int[] BLUR_KERNELS = {0, 3, 5, 7};
+	
+	private final byte[][] _sources = new byte[BLUR_KERNELS.length][];
+	private final int _cols;
+	private final int _rows;
+	private final double _noiseRange;
+	
+	// current warp: patch -> frame transform, the patch's top left corner in the frame, source and noise seed
+	private double _a, _b, _c, _d, _e, _f;
+	private int _originX, _originY;
+	private byte[] _source;
+	private long _noiseSeed;
+	
+	
+	/**
+	 * @param frame CV_8U, the UNBLURRED frame that PatchGenerator.generate() would warp
+	 */
+	WarpSampler(final Mat frame, final double noiseRange){
+		_cols = frame.cols();
+		_rows = frame.rows();
+		_noiseRange = noiseRange;
+		
+		_sources[0] = Util.getByteArray(frame, null);
+		final Mat blurred = new Mat();
+		for(int k = 1; k < BLUR_KERNELS.length; k++){
+			Imgproc.GaussianBlur(frame, blurred, new Size(BLUR_KERNELS[k], BLUR_KERNELS[k]), 0, 0);
+			_sources[k] = Util.getByteArray(blurred, null);
+		}
+		blurred.release();
+	}
+	
+	
+	/**
+	 * @param inverse the 2x3 patch -> frame affine transform
+	 * @param blurKernel 0 for no blur, otherwise one of BLUR_KERNELS
+	 */
+	void setWarp(final double[] inverse, final int originX, final int originY, final int blurKernel, final long noiseSeed){
+		_a = inverse[0]; _b = inverse[1]; _c = inverse[2];
+		_d = inverse[3]; _e = inverse[4]; _f = inverse[5];
+		_originX = originX;
+		_originY = originY;
+		_noiseSeed = noiseSeed;
+		
+		_source = null;
+		for(int k = 0; k < BLUR_KERNELS.length; k++){
+			if(BLUR_KERNELS[k] == blurKernel){
+				_source = _sources[k];
+			}
+		}
+		if(_source == null){
+			throw new IllegalArgumentException("Unsupported blur kernel: " + blurKernel);
+		}
+	}
+	
+	/**
+	 * @return the value (0 - 255) of the warped patch at the given FRAME position
+	 */
+	int sample(final int x, final int y){
+		final int px = x - _originX;
+		final int py = y - _originY;
+		final double sx = _a * px + _b * py + _c;
+		final double sy = _d * px + _e * py + _f;
+		
+		// bilinear, black outside the frame (warpAffine's BORDER_CONSTANT)
+		final int x0 = (int) Math.floor(sx);
+		final int y0 = (int) Math.floor(sy);
+		final double fx = sx - x0;
+		final double fy = sy - y0;
+		final double value = (1 - fx) * (1 - fy) * pixel(x0, y0) + fx * (1 - fy) * pixel(x0 + 1, y0)
+				+ (1 - fx) * fy * pixel(x0, y0 + 1) + fx * fy * pixel(x0 + 1, y0 + 1);
+		
+		final int result = (int) Math.round(value) + noise(y * _cols + x);
+		return result < 0 ? 0 : (result > 255 ? 255 : result);
+	}
+	
+	private int pixel(final int x, final int y){
+		return x < 0 || y < 0 || x >= _cols || y >= _rows ? 0 : _source[y * _cols + x] & 0xFF;
+	}
+	
+	/**
+	 * Same as the 8 bits randn(128, noiseRange) - 128 of PatchGenerator, but hashed from the pixel position so that
+	 * the same pixel always gets the same noise during a warp, without generating it for the whole patch.
+	 */
+	private int noise(final int pos){
+		if(_noiseRange <= 0){
+			return 0;
+		}
+		
+		final long h1 = mix(_noiseSeed + pos * 2L);
+		final long h2 = mix(_noiseSeed + pos * 2L + 1);
+		// Box-Muller, u1 in (0, 1]
+		final double u1 = ((h1 >>> 11) + 1) / (double) (1L << 53);
+		final double u2 = (h2 >>> 11) / (double) (1L << 53);
+		final double gaussian = Math.sqrt(-2 * Math.log(u1)) * Math.cos(2 * Math.PI * u2);
+		
+		final long result = Math.round(128 + _noiseRange * gaussian);
+		return (int) (result < 0 ? 0 : (result > 255 ? 255 : result)) - 128;
+	}
+	
+	/**
+	 * SplitMix64 finaliser
+	 */
+	private static long mix(long z){
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+}
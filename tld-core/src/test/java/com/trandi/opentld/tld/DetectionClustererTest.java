@@ -0,0 +1,94 @@
+/**
+ * Copyright 2013 Dan Oprescu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trandi.opentld.tld;
+
+import java.util.Random;
+
+public class DetectionClustererTest extends OpenCVTestCase {
+	
+	public void testClusters(){
+		// 2 overlapping boxes, 1 far away, and 1 chained to the 1st cluster through the 2nd box
+		final int[] x = {10, 14, 200, 18};
+		final int[] y = {10, 10, 200, 10};
+		final int[] w = {20, 20, 20, 20};
+		final int[] h = {20, 20, 20, 20};
+		final int[] labels = new int[4];
+		
+		assertEquals(2, new DetectionClusterer().cluster(x, y, w, h, 4, labels));
+		assertEquals(0, labels[0]);
+		assertEquals(0, labels[1]);
+		assertEquals(1, labels[2]);
+		assertEquals(0, labels[3]);
+	}
+	
+	/**
+	 * Same clusters as the brute force version, comparing ALL the pairs of boxes
+	 */
+	public void testSameAsAllPairs(){
+		final Random rnd = new Random(42);
+		final DetectionClusterer clusterer = new DetectionClusterer();
+		for(int test = 0; test < 20; test++){
+			final int count = 1 + rnd.nextInt(300);
+			final int[] x = new int[count], y = new int[count], w = new int[count], h = new int[count];
+			for(int i = 0; i < count; i++){
+				w[i] = 15 + rnd.nextInt(60);
+				h[i] = 15 + rnd.nextInt(60);
+				x[i] = rnd.nextInt(320);
+				y[i] = rnd.nextInt(240);
+			}
+			
+			final int[] labels = new int[count];
+			final int clusters = clusterer.cluster(x, y, w, h, count, labels);
+			final int[] expected = allPairsLabels(x, y, w, h, count);
+			for(int i = 0; i < count; i++){
+				assertTrue(labels[i] < clusters);
+				assertEquals("Different cluster for box " + i, expected[i], labels[i]);
+			}
+		}
+	}
+	
+	
+	private static int[] allPairsLabels(final int[] x, final int[] y, final int[] w, final int[] h, final int count){
+		final int[] result = new int[count];
+		for(int i = 0; i < count; i++){
+			result[i] = -1;
+		}
+		
+		int clusters = 0;
+		final int[] stack = new int[count];
+		for(int i = 0; i < count; i++){
+			if(result[i] >= 0) continue;
+			
+			// flood fill
+			int top = 0;
+			stack[top++] = i;
+			result[i] = clusters;
+			while(top > 0){
+				final int a = stack[--top];
+				for(int b = 0; b < count; b++){
+					if(result[b] < 0 && 1 - BoundingBox.calcOverlap(x[a], y[a], w[a], h[a], x[b], y[b], w[b], h[b]) <= 1 - DetectionClusterer.MIN_OVERLAP){
+						result[b] = clusters;
+						stack[top++] = b;
+					}
+				}
+			}
+			clusters++;
+		}
+		
+		return result;
+	}
+}
@@ -0,0 +1,117 @@
+/**
+ * Copyright 2013 Dan Oprescu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trandi.opentld.tld;
+
+import junit.framework.TestCase;
+
+import org.opencv.core.Rect;
+import org.opencv.core.Size;
+
+/**
+ * Only needs a Grid, no OpenCV native code
+ */
+public class DetectionSchedulerTest extends TestCase {
+	private static final Rect BOX = new Rect(100, 90, 64, 48);
+	private static final float VALID = 0.7f;
+	
+	private Grid _grid;
+	
+	@Override
+	protected void setUp(){
+		_grid = new Grid(320, 240, BOX, 15);
+	}
+	
+	
+	public void testRegionOfInterest(){
+		final DetectionScheduler scheduler = newScheduler(5, 0.5f, 1);
+		final Rect predicted = new Rect(150, 100, 64, 48);
+		final int[] boxes = scheduler.schedule(predicted, 0.9f, VALID);
+		final int count = scheduler.getLastScanned();
+		assertFalse(scheduler.isLastFullScan());
+		
+		// the predicted box's scale +- 1, centres within half a box of it
+		final int predictedScale = scaleOf(predicted.width, predicted.height);
+		int expected = 0, otherScales = 0, outside = 0;
+		for(int i = 0; i < _grid.getSize(); i++){
+			final int centreX = _grid.x[i] + _grid.w[i] / 2, centreY = _grid.y[i] + _grid.h[i] / 2;
+			final boolean inScales = Math.abs(_grid.scale[i] - predictedScale) <= 1;
+			final boolean inside = centreX >= 150 - 32 && centreX <= 150 + 64 + 32 && centreY >= 100 - 24 && centreY <= 100 + 48 + 24;
+			if(inScales && inside){
+				assertEquals("Box " + i, i, boxes[expected++]);
+			}else if(inside){
+				otherScales++;
+			}else if(inScales){
+				outside++;
+			}
+		}
+		assertEquals(expected, count);
+		assertTrue("Nothing left out because of its scale", otherScales > 0);
+		assertTrue("Nothing left out because of its position", outside > 0);
+		assertEquals(count, scheduler.getAverageScanned(), 0);
+	}
+	
+	public void testFullScanInterval(){
+		final DetectionScheduler scheduler = newScheduler(5, 1, 2);
+		long scanned = 0;
+		for(int frame = 1; frame <= 10; frame++){
+			scheduler.schedule(BOX, 0.9f, VALID);
+			assertEquals("Frame " + frame, frame % 5 == 0, scheduler.isLastFullScan());
+			if(scheduler.isLastFullScan()){
+				assertEquals(_grid.getSize(), scheduler.getLastScanned());
+			}else{
+				assertTrue(scheduler.getLastScanned() < _grid.getSize());
+			}
+			scanned += scheduler.getLastScanned();
+		}
+		assertEquals(10, scheduler.getFrames());
+		assertEquals(2, scheduler.getFullScans());
+		assertEquals(scanned / 10f, scheduler.getAverageScanned(), 1e-3);
+		
+		// 1 means always
+		final DetectionScheduler always = newScheduler(1, 1, 2);
+		always.schedule(BOX, 0.9f, VALID);
+		assertTrue(always.isLastFullScan());
+	}
+	
+	public void testFullScanWhenNotConfident(){
+		final DetectionScheduler scheduler = newScheduler(100, 1, 2);
+		scheduler.schedule(null, 0, VALID);
+		assertTrue("Not tracking", scheduler.isLastFullScan());
+		scheduler.schedule(BOX, VALID, VALID);
+		assertTrue("Tracking confidence not above the valid threshold", scheduler.isLastFullScan());
+		scheduler.schedule(BOX, VALID + 0.01f, VALID);
+		assertFalse(scheduler.isLastFullScan());
+		assertEquals(2, scheduler.getFullScans());
+	}
+	
+	
+	private DetectionScheduler newScheduler(final int fullScanInterval, final float roiMargin, final int roiScales){
+		final DetectionScheduler result = new DetectionScheduler(fullScanInterval, roiMargin, roiScales);
+		result.init(_grid);
+		return result;
+	}
+	
+	private int scaleOf(final int width, final int height){
+		final Size[] scales = _grid.getTrackedBoxScales();
+		for(int s = 0; s < scales.length; s++){
+			if(scales[s].width == width && scales[s].height == height){
+				return s;
+			}
+		}
+		throw new IllegalStateException("No " + width + "x" + height + " scale");
+	}
+}
@@ -0,0 +1,126 @@
+/**
+ * Copyright 2013 Dan Oprescu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trandi.opentld.tld;
+
+import java.util.Random;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+
+public class ExampleMatrixTest extends OpenCVTestCase {
+	private static final int PATCH_SIZE = 15;
+	private static final int DIM = PATCH_SIZE * PATCH_SIZE;
+	
+	/**
+	 * The batched Java NCC has to give the same results as OpenCV's matchTemplate, 1 example at a time.
+	 */
+	public void testCorrelateSameAsMatchTemplate(){
+		final Random rnd = new Random(42);
+		final int examplesCount = 20;
+		final int candidatesCount = 5;
+		
+		final ExampleMatrix examples = new ExampleMatrix();
+		final float[][] exampleRows = new float[examplesCount][];
+		for(int e = 0; e < examplesCount; e++){
+			exampleRows[e] = randomPattern(rnd);
+			examples.add(exampleRows[e], 0, DIM);
+		}
+		
+		final float[] candidates = new float[candidatesCount * DIM];
+		final double[] norms = new double[candidatesCount];
+		for(int c = 0; c < candidatesCount; c++){
+			System.arraycopy(randomPattern(rnd), 0, candidates, c * DIM, DIM);
+			norms[c] = ExampleMatrix.norm(candidates, c * DIM, DIM);
+		}
+		
+		final float[] scores = new float[candidatesCount * examplesCount];
+		examples.correlate(candidates, norms, candidatesCount, scores);
+		
+		final Mat ncc = new Mat(1, 1, CvType.CV_32F);
+		for(int c = 0; c < candidatesCount; c++){
+			final Mat candidate = new Mat(PATCH_SIZE, PATCH_SIZE, CvType.CV_32F);
+			final float[] candidateRow = new float[DIM];
+			System.arraycopy(candidates, c * DIM, candidateRow, 0, DIM);
+			candidate.put(0, 0, candidateRow);
+			
+			for(int e = 0; e < examplesCount; e++){
+				final Mat example = new Mat(PATCH_SIZE, PATCH_SIZE, CvType.CV_32F);
+				example.put(0, 0, exampleRows[e]);
+				Imgproc.matchTemplate(example, candidate, ncc, Imgproc.TM_CCORR_NORMED);
+				assertEquals("Different NCC for candidate " + c + " example " + e, Util.getFloat(0, 0, ncc), scores[c * examplesCount + e], 0.00001);
+			}
+		}
+	}
+	
+	
+	public void testLeastRecentlyMatchedEviction(){
+		final Random rnd = new Random(42);
+		final ExampleMatrix examples = new ExampleMatrix(3, ExampleMatrix.LEAST_RECENTLY_MATCHED);
+		final float[] first = randomPattern(rnd);
+		final float[] second = randomPattern(rnd);
+		examples.add(first, 0, DIM);
+		examples.add(second, 0, DIM);
+		examples.add(randomPattern(rnd), 0, DIM);
+		examples.matched(0);
+		
+		examples.add(randomPattern(rnd), 0, DIM);
+		assertEquals(3, examples.size());
+		assertEquals(1, examples.getEvictions());
+		// the 2nd one is gone, the 1st one was matched recently so it stays, in the same place
+		assertEquals(1f, correlate(examples, first)[0], 0.00001);
+		assertTrue(correlate(examples, second)[0] < 0.99f);
+	}
+	
+	public void testMostRedundantEviction(){
+		final Random rnd = new Random(42);
+		final ExampleMatrix examples = new ExampleMatrix(3, ExampleMatrix.MOST_REDUNDANT);
+		final float[] original = randomPattern(rnd);
+		final float[] duplicate = original.clone();
+		duplicate[0] += 1;
+		examples.add(original, 0, DIM);
+		examples.add(randomPattern(rnd), 0, DIM);
+		examples.add(duplicate, 0, DIM);
+		
+		final float[] other = randomPattern(rnd);
+		examples.add(other, 0, DIM);
+		assertEquals(3, examples.size());
+		assertEquals(1, examples.getEvictions());
+		// 1 of the 2 almost identical examples is gone
+		int similar = 0;
+		for(float score : correlate(examples, original)){
+			if(score > 0.99f) similar++;
+		}
+		assertEquals(1, similar);
+		assertEquals(1f, correlate(examples, other)[2], 0.00001);
+	}
+	
+	
+	private static float[] correlate(final ExampleMatrix examples, final float[] candidate){
+		final float[] result = new float[examples.size()];
+		examples.correlate(candidate, new double[]{ExampleMatrix.norm(candidate, 0, DIM)}, 1, result);
+		return result;
+	}
+	
+	private static float[] randomPattern(final Random rnd){
+		final float[] result = new float[DIM];
+		for(int i = 0; i < DIM; i++){
+			result[i] = rnd.nextFloat() * 255 - 128;
+		}
+		return result;
+	}
+}
@@ -0,0 +1,125 @@
+/**
+ * Copyright 2013 Dan Oprescu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trandi.opentld.tld;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import com.trandi.opentld.tld.FernEnsembleClassifier.CascadeStats;
+import com.trandi.opentld.tld.Util.Pair;
+
+public class FernEnsembleClassifierTest extends OpenCVTestCase {
+	
+	/**
+	 * The frame level hash codes (pre-calculated offsets on the whole frame) have to be exactly the ones calculated on each box's patch.
+	 */
+	public void testFrameHashCodesSameAsPatch(){
+		final Mat frame = new Mat();
+		Imgproc.cvtColor(getTestMat(), frame, Imgproc.COLOR_RGB2GRAY);
+		final BoundingBox[] boxes = new BoundingBox[]{new BoundingBox(0, 0, 20, 20, 0, 0), new BoundingBox(165, 93, 51, 54, 0, 1), new BoundingBox(13, 7, 51, 54, 0, 1)};
+		
+		final FernEnsembleClassifier classifier = new FernEnsembleClassifier(TldFixtures.getClassifierProperties());
+		classifier.init(new Size[]{new Size(20, 20), new Size(51, 54)}, new DummyRNG());
+		
+		final byte[] frameData = Util.getByteArray(frame, null);
+		classifier.prepareFrame(frame.cols());
+		for(BoundingBox box : boxes){
+			final int[] expected = classifier.getAllFernsHashCodes(frame.submat(box), box.scaleIdx);
+			final int[] actual = classifier.getAllFernsHashCodesInFrame(frameData, box.y * frame.cols() + box.x, box.scaleIdx, new int[classifier.getNumFerns()], 0);
+			for(int fern = 0; fern < expected.length; fern++){
+				assertEquals("Different hash code for fern " + fern + " of box " + box, expected[fern], actual[fern]);
+			}
+		}
+	}
+	
+	/**
+	 * The cascade may only reject boxes the whole ensemble would reject too: every box whose average posterior reaches the threshold 
+	 * has to be accepted, with the very same value, whatever the cascade order. And it has to be cheaper on the background.
+	 */
+	public void testCascadeSameAsEnsemble(){
+		final Mat frame = new Mat();
+		Imgproc.cvtColor(getTestMat(), frame, Imgproc.COLOR_RGB2GRAY);
+		final byte[] frameData = Util.getByteArray(frame, null);
+		final int cols = frame.cols();
+		final int width = 51, height = 54, scaleIdx = 1;
+		
+		final FernEnsembleClassifier classifier = new FernEnsembleClassifier(TldFixtures.getClassifierProperties());
+		classifier.init(new Size[]{new Size(20, 20), new Size(width, height)}, new DummyRNG());
+		classifier.prepareFrame(cols);
+		final int numFerns = classifier.getNumFerns();
+		
+		// random labels all over the frame, so that there are posteriors all the way from 0 to 1, many of them around the threshold
+		final Random random = new Random(42);
+		final List<Pair<int[], Boolean>> examples = new ArrayList<Pair<int[], Boolean>>();
+		for(int y = 0; y + height <= frame.rows(); y += 7){
+			for(int x = 0; x + width <= cols; x += 7){
+				examples.add(new Pair<int[], Boolean>(classifier.getAllFernsHashCodesInFrame(frameData, y * cols + x, scaleIdx, new int[numFerns], 0), random.nextInt(3) == 0));
+			}
+		}
+		classifier.trainF(examples, 2);
+		
+		final double threshold = classifier.getFernPosThreshold();
+		final int[] codes = new int[numFerns];
+		final int[] cascadeCodes = new int[numFerns];
+		final CascadeStats stats = new CascadeStats(numFerns);
+		for(int pass = 0; pass < 2; pass++){
+			if(pass == 1){
+				// the exact opposite of the natural order
+				final CascadeStats order = new CascadeStats(numFerns);
+				for(int fern = 0; fern < numFerns; fern++){
+					order.scores[fern] = fern;
+					order.evaluations[fern] = 1;
+				}
+				for(int i = 0; i < 100; i++){
+					classifier.updateCascadeOrder(order);
+				}
+			}
+			
+			stats.reset();
+			int accepted = 0, rejected = 0;
+			for(int y = 0; y + height <= frame.rows(); y += 3){
+				for(int x = 0; x + width <= cols; x += 3){
+					final int boxOffset = y * cols + x;
+					classifier.getAllFernsHashCodesInFrame(frameData, boxOffset, scaleIdx, codes, 0);
+					final double expected = classifier.averagePosterior(codes, 0);
+					final double actual = classifier.cascadePosterior(frameData, boxOffset, scaleIdx, cascadeCodes, 0, threshold, stats);
+					final String box = "pass " + pass + ", box " + x + ", " + y;
+					if(expected >= threshold){
+						assertEquals(box, expected, actual, 0);
+						assertTrue(box, Arrays.equals(codes, cascadeCodes));
+						accepted++;
+					}else if(actual >= 0){
+						// not rejected early enough, still the same value
+						assertEquals(box, expected, actual, 0);
+					}else{
+						rejected++;
+					}
+				}
+			}
+			assertTrue("Nothing above the threshold", accepted > 0);
+			assertTrue("Nothing rejected", rejected > 0);
+			// most of the boxes are background
+			assertTrue("Average ferns evaluated: " + stats.getAverageFernsEvaluated(), stats.getAverageFernsEvaluated() < numFerns);
+		}
+	}
+}
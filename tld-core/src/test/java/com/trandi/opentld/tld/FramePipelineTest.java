@@ -0,0 +1,97 @@
+/**
+ * Copyright 2013 Dan Oprescu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trandi.opentld.tld;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+
+public class FramePipelineTest extends OpenCVTestCase {
+	
+	public void testSlowWorkerProcessesTheLatestFrames() throws InterruptedException{
+		final int frames = 100;
+		final FrameProcessor processor = new FrameProcessor(5);
+		final FramePipeline<long[]> pipeline = new FramePipeline<long[]>(processor, "pipeline-test");
+		assertNull(pipeline.latestResult());
+		pipeline.start();
+		
+		// synthetic source, each frame is filled with its number
+		final Mat frame = new Mat(48, 64, CvType.CV_8U);
+		final long start = System.nanoTime();
+		for(int i = 0; i < frames; i++){
+			frame.setTo(new Scalar(i % 256));
+			pipeline.submit(frame);
+			Thread.sleep(1);
+		}
+		final long captureMillis = (System.nanoTime() - start) / 1000000;
+		
+		// every frame is either processed or dropped
+		final long deadline = System.currentTimeMillis() + 5000;
+		while(pipeline.getProcessed() + pipeline.getDropped() < frames && System.currentTimeMillis() < deadline){
+			Thread.sleep(5);
+		}
+		pipeline.stop();
+		
+		assertEquals(frames, pipeline.getSubmitted());
+		assertEquals(frames, pipeline.getProcessed() + pipeline.getDropped());
+		assertEquals(0, pipeline.getFailed());
+		assertTrue("The worker is 5 times slower than the capture, it must have dropped frames", pipeline.getDropped() > 0);
+		assertTrue("The capture must not wait for the worker: " + captureMillis + "ms", captureMillis < frames * 5);
+		assertNull(processor.error, processor.error);
+		
+		// the last frame is never dropped
+		final long[] result = pipeline.latestResult();
+		assertEquals(frames - 1, result[0]);
+		assertEquals((frames - 1) % 256, result[1]);
+	}
+	
+	
+	private static class FrameProcessor implements FramePipeline.Processor<long[]> {
+		private final long _delayMillis;
+		private long _last = -1;
+		volatile String error;
+		
+		FrameProcessor(long delayMillis){
+			_delayMillis = delayMillis;
+		}
+		
+		@Override
+		public long[] newResult() {
+			return new long[2];
+		}
+		
+		@Override
+		public void process(Mat frame, long frameNumber, long[] result) {
+			final int value = (int) frame.get(0, 0)[0];
+			if(value != frameNumber % 256){
+				error = "Frame " + frameNumber + " has the content of frame " + value;
+			}
+			if(frameNumber <= _last){
+				error = "Frame " + frameNumber + " processed after frame " + _last;
+			}
+			_last = frameNumber;
+			
+			try{
+				Thread.sleep(_delayMillis);
+			}catch(InterruptedException e){
+				Thread.currentThread().interrupt();
+			}
+			result[0] = frameNumber;
+			result[1] = value;
+		}
+	}
+}
@@ -0,0 +1,97 @@
+/**
+ * Copyright 2013 Dan Oprescu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trandi.opentld.tld;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+
+public class MatArenaTest extends OpenCVTestCase {
+	
+	public void testReusedFromOneScopeToTheNext(){
+		final MatArena arena = new MatArena(true);
+		
+		int scope = arena.mark();
+		final Mat first = arena.acquire(48, 64, CvType.CV_8U);
+		final Mat second = arena.acquire();
+		second.create(15, 15, CvType.CV_32F);
+		final long firstData = first.dataAddr();
+		arena.release(scope);
+		assertEquals(0, arena.getAcquired());
+		assertEquals(2, arena.getPooled());
+		assertEquals(48 * 64 + 15 * 15 * 4, arena.getPooledBytes());
+		assertEquals(2, arena.getAllocations());
+		
+		// same order, same sizes: same Mats and NO new native buffer
+		for(int frame = 0; frame < 10; frame++){
+			scope = arena.mark();
+			assertSame(first, arena.acquire(48, 64, CvType.CV_8U));
+			assertSame(second, arena.acquire());
+			second.create(15, 15, CvType.CV_32F);
+			arena.release(scope);
+		}
+		assertEquals(firstData, first.dataAddr());
+		assertEquals(2, arena.getAllocations());
+		assertEquals(2, arena.getMaxAcquired());
+		
+		// a different size is a new buffer
+		scope = arena.mark();
+		arena.acquire(96, 128, CvType.CV_8U);
+		arena.release(scope);
+		assertEquals(3, arena.getAllocations());
+		
+		arena.close();
+		assertEquals(0, arena.getPooled());
+	}
+	
+	public void testNestedScopesAndViews(){
+		final MatArena arena = new MatArena(true);
+		
+		final int outer = arena.mark();
+		final Mat frame = arena.acquire(48, 64, CvType.CV_8U);
+		final int inner = arena.mark();
+		final Mat view = arena.view(frame, new Rect(10, 10, 20, 15));
+		assertEquals(15, view.rows());
+		assertEquals(20, view.cols());
+		arena.acquire();
+		assertEquals(2, arena.getAcquired());
+		assertEquals(1, arena.getLiveViews());
+		
+		// the inner scope has been forgotten, it's closed with the outer one
+		arena.release(outer);
+		assertEquals(0, arena.getAcquired());
+		assertEquals(0, arena.getLiveViews());
+		try{
+			arena.release(inner);
+			fail("The inner scope is already closed");
+		}catch(IllegalStateException e){
+			// expected
+		}
+		
+		arena.close();
+	}
+	
+	public void testAcquireOutsideOfAScope(){
+		final MatArena arena = new MatArena(false);
+		try{
+			arena.acquire();
+			fail("No scope has been opened");
+		}catch(IllegalStateException e){
+			// expected
+		}
+	}
+}
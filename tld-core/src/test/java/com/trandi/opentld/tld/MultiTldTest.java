@@ -0,0 +1,125 @@
+/**
+ * Copyright 2013 Dan Oprescu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trandi.opentld.tld;
+
+import java.util.Properties;
+import java.util.Random;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+
+import com.trandi.opentld.tld.Tld.ProcessFrameStruct;
+
+public class MultiTldTest extends OpenCVTestCase {
+	private static final int FRAMES = 30;
+	private static final Rect BOX_A = new Rect(40, 50, 64, 48);
+	private static final Rect BOX_B = new Rect(200, 140, 56, 56);
+	
+	
+	public void testTracksEachTargetOnSharedFrames(){
+		final Mat[] frames = twoMovingObjectsFrames();
+		final MultiTld multiTld = new MultiTld(TldFixtures.getTldProperties(), 2);
+		try{
+			assertEquals(0, multiTld.addTarget(frames[0], BOX_A));
+			assertEquals(1, multiTld.addTarget(frames[0], BOX_B));
+			assertEquals(2, multiTld.getTargetCount());
+			
+			for(int i = 1; i < FRAMES; i++){
+				final ProcessFrameStruct[] results = multiTld.processFrame(frames[i - 1], frames[i]);
+				assertEquals(2, results.length);
+				assertTracked("A, frame " + i, moved(BOX_A, i, 0), results[0]);
+				assertTracked("B, frame " + i, moved(BOX_B, 0, i), results[1]);
+			}
+			
+			// the other target keeps its index
+			multiTld.removeTarget(0);
+			assertNull(multiTld.getTarget(0));
+			final ProcessFrameStruct[] results = multiTld.processFrame(frames[FRAMES - 1], frames[FRAMES - 2]);
+			assertNull(results[0]);
+			assertTracked("B after A removed", moved(BOX_B, 0, FRAMES - 2), results[1]);
+			
+			try{
+				multiTld.removeTarget(0);
+				fail("Target 0 is already removed");
+			}catch(IllegalArgumentException e){
+				// expected
+			}
+		}finally{
+			multiTld.shutdown();
+		}
+	}
+	
+	
+	/**
+	 * learn() reads the shared frame data too, each target has to learn exactly as a Tld of its own would
+	 */
+	public void testLearnsEachTargetOnSharedFrames(){
+		final Mat[] frames = twoMovingObjectsFrames();
+		final Properties props = TldFixtures.getTldProperties();
+		props.setProperty("learning_mode", "inline");
+		final MultiTld multiTld = new MultiTld(props, 2);
+		final Tld tldA = new Tld(props);
+		final Tld tldB = new Tld(props);
+		try{
+			multiTld.addTarget(frames[0], BOX_A);
+			multiTld.addTarget(frames[0], BOX_B);
+			tldA.init(frames[0], BOX_A);
+			tldB.init(frames[0], BOX_B);
+			
+			for(int i = 1; i < FRAMES; i++){
+				final ProcessFrameStruct[] results = multiTld.processFrame(frames[i - 1], frames[i]);
+				assertTracked("A, frame " + i, moved(BOX_A, i, 0), results[0]);
+				assertTracked("B, frame " + i, moved(BOX_B, 0, i), results[1]);
+				assertEquals("A, frame " + i, String.valueOf(tldA.processFrame(frames[i - 1], frames[i]).currentBBox), String.valueOf(results[0].currentBBox));
+				assertEquals("B, frame " + i, String.valueOf(tldB.processFrame(frames[i - 1], frames[i]).currentBBox), String.valueOf(results[1].currentBBox));
+			}
+		}finally{
+			multiTld.shutdown();
+			tldA.shutdown();
+			tldB.shutdown();
+		}
+	}
+	
+	
+	private static void assertTracked(final String message, final Rect expected, final ProcessFrameStruct result){
+		assertNotNull(message + " lost", result.currentBBox);
+		final BoundingBox expectedBox = new BoundingBox(expected.x, expected.y, expected.width, expected.height, 0, 0);
+		assertTrue(message + " " + result.currentBBox + " instead of " + expected, result.currentBBox.calcOverlap(expectedBox) > 0.6);
+	}
+	
+	private static Rect moved(final Rect box, final int dx, final int dy){
+		return new Rect(box.x + dx, box.y + dy, box.width, box.height);
+	}
+	
+	/**
+	 * 2 textured objects over a textured background, A moving right and B moving down, 1 pixel per frame
+	 */
+	private static Mat[] twoMovingObjectsFrames(){
+		final Random rnd = new Random(7);
+		final Mat background = TldFixtures.texture(240, 320, rnd);
+		final Mat objectA = TldFixtures.texture(BOX_A.height, BOX_A.width, rnd);
+		final Mat objectB = TldFixtures.texture(BOX_B.height, BOX_B.width, rnd);
+		
+		final Mat[] result = new Mat[FRAMES];
+		for(int i = 0; i < FRAMES; i++){
+			result[i] = background.clone();
+			objectA.copyTo(result[i].submat(moved(BOX_A, i, 0)));
+			objectB.copyTo(result[i].submat(moved(BOX_B, 0, i)));
+		}
+		return result;
+	}
+}
@@ -0,0 +1,62 @@
+/**
+ * Copyright 2013 Dan Oprescu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trandi.opentld.tld;
+
+import java.util.Random;
+
+import org.opencv.core.Point;
+
+public class RobustStatsTest extends OpenCVTestCase {
+	
+	public void testMedianSameAsSorting(){
+		final Random rnd = new Random(42);
+		final RobustStats stats = new RobustStats();
+		for(int test = 0; test < 200; test++){
+			final float[] vals = new float[1 + rnd.nextInt(500)];
+			for(int i = 0; i < vals.length; i++){
+				// plenty of duplicates
+				vals[i] = rnd.nextInt(20) / 4f;
+			}
+			if(test % 10 == 0) vals[0] = Float.NaN;
+			
+			final float[] copy = vals.clone();
+			assertEquals(Util.median(vals), stats.median(vals, vals.length), 0f);
+			// the input is left untouched
+			for(int i = 0; i < vals.length; i++){
+				assertEquals(Float.floatToIntBits(copy[i]), Float.floatToIntBits(vals[i]));
+			}
+		}
+	}
+	
+	public void testPairwiseScale(){
+		final Point[] points1 = new Point[100];
+		final Point[] points2 = new Point[100];
+		final Point[] translated = new Point[100];
+		for(int i = 0; i < 100; i++){
+			points1[i] = new Point(i % 10 * 5, i / 10 * 5);
+			points2[i] = new Point(10 + i % 10 * 10, 20 + i / 10 * 10);
+			translated[i] = new Point(points1[i].x + 7, points1[i].y - 3);
+		}
+		
+		assertEquals(2f, new RobustStats().pairwiseScale(points1, points2, 100), 0.00001f);
+		// only 200 of the 4950 pairs, still the same for a pure scale change
+		assertEquals(2f, new RobustStats(200).pairwiseScale(points1, points2, 100), 0.00001f);
+		assertEquals(7f, new RobustStats().medianShift(points1, translated, 100, true), 0.00001f);
+		assertEquals(-3f, new RobustStats().medianShift(points1, translated, 100, false), 0.00001f);
+		assertEquals(1f, new RobustStats().pairwiseScale(points1, translated, 100), 0.00001f);
+	}
+}
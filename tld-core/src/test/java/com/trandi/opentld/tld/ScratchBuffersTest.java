@@ -0,0 +1,95 @@
+/**
+ * Copyright 2013 Dan Oprescu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trandi.opentld.tld;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+
+public class ScratchBuffersTest extends OpenCVTestCase {
+	
+	public void testSlotsOnlyGrow(){
+		final ScratchBuffers scratch = new ScratchBuffers(2);
+		final float[] first = scratch.floats(0, 10);
+		assertEquals(10, first.length);
+		assertSame(first, scratch.floats(0, 5));
+		assertNotSame(first, scratch.floats(1, 5));
+		
+		final float[] bigger = scratch.floats(0, 20);
+		assertEquals(20, bigger.length);
+		assertSame(bigger, scratch.floats(0, 10));
+		assertEquals(20 * 4 + 5 * 4, scratch.getSize());
+	}
+	
+	public void testMatCopiesHaveTheMatSize(){
+		final ScratchBuffers scratch = new ScratchBuffers(1);
+		final Mat big = new Mat(20, 30, CvType.CV_8U, new Scalar(7));
+		final Mat small = new Mat(10, 15, CvType.CV_8U, new Scalar(9));
+		
+		final byte[] bigData = scratch.byteArray(0, big);
+		assertEquals(600, bigData.length);
+		assertEquals(7, bigData[599]);
+		assertSame(bigData, scratch.byteArray(0, big));
+		
+		final byte[] smallData = scratch.byteArray(0, small);
+		assertEquals(150, smallData.length);
+		assertEquals(9, smallData[149]);
+	}
+	
+	/**
+	 * Each instance has its own buffers, so 2 classifiers on 2 threads don't see each other's patches
+	 */
+	public void testClassifiersOnSeveralThreads() throws InterruptedException{
+		final Mat[] patches = new Mat[2];
+		final FernEnsembleClassifier[] classifiers = new FernEnsembleClassifier[2];
+		final int[][] expected = new int[2][];
+		for(int i = 0; i < 2; i++){
+			classifiers[i] = new FernEnsembleClassifier(TldFixtures.getClassifierProperties());
+			classifiers[i].init(new Size[]{new Size(20, 20)}, new Util.DefaultRNG());
+			patches[i] = new Mat(20, 20, CvType.CV_8U);
+			Core.randu(patches[i], 0, 256);
+			expected[i] = classifiers[i].getAllFernsHashCodes(patches[i], 0);
+		}
+		
+		final String[] errors = new String[2];
+		final Thread[] threads = new Thread[2];
+		for(int i = 0; i < 2; i++){
+			final int idx = i;
+			threads[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for(int repeat = 0; repeat < 2000 && errors[idx] == null; repeat++){
+						final int[] codes = classifiers[idx].getAllFernsHashCodes(patches[idx], 0);
+						for(int fern = 0; fern < codes.length; fern++){
+							if(codes[fern] != expected[idx][fern]){
+								errors[idx] = "Classifier " + idx + " fern " + fern + ": " + codes[fern] + " instead of " + expected[idx][fern];
+							}
+						}
+					}
+				}
+			});
+			threads[i].start();
+		}
+		for(Thread thread : threads){
+			thread.join();
+		}
+		assertNull(errors[0], errors[0]);
+		assertNull(errors[1], errors[1]);
+	}
+}
@@ -0,0 +1,127 @@
+/**
+ * Copyright 2013 Dan Oprescu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trandi.opentld.tld;
+
+import java.lang.reflect.Method;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+
+import com.trandi.opentld.tld.Tld.ProcessFrameStruct;
+
+/**
+ * The steady state frames of learning_mode none. The learning (inline or in the background) still allocates its training data 
+ * and, in the background modes, the copies of the classifiers, so it's out of this test's scope.
+ */
+public class TldAllocationTest extends OpenCVTestCase {
+	// long enough for the JIT (C2) to settle: its de-optimisations re-allocate the objects it had scalar replaced, which the interpreter and C1 never do
+	private static final int WARMUP_FRAMES = 300;
+	private static final int MEASURED_FRAMES = 100;
+	private static final int WINDOWS = 3;
+	// for a late re-compilation, allocating a few hundred bytes once in a while.
+	// Anything allocated in 1 frame out of 3 or more goes over it: at least 16 bytes per object, MEASURED_FRAMES / 3 times
+	private static final int TOLERATED_BYTES = 512;
+	
+	
+	public void testSteadyStateProcessFrameDoesNotAllocate() throws Exception {
+		final AllocationCounter counter = AllocationCounter.create();
+		assertNotNull("No per thread allocation counter on this VM", counter);
+		
+		final Mat[] frames = TldFixtures.movingObjectFrames(new Size(320, 240));
+		final Tld tld = new Tld(TldFixtures.getTldProperties());
+		tld.init(frames[0], TldFixtures.INIT_BOX);
+		
+		int frame = 0;
+		for(; frame < WARMUP_FRAMES; frame++){
+			tld.processFrame(frames[frame % TldFixtures.FRAMES], frames[(frame + 1) % TldFixtures.FRAMES]);
+		}
+		
+		for(int window = 0; window < WINDOWS; window++){
+			int tracked = 0;
+			final long overhead = counter.overhead();
+			final long start = counter.allocatedBytes();
+			for(int i = 0; i < MEASURED_FRAMES; i++, frame++){
+				final ProcessFrameStruct result = tld.processFrame(frames[frame % TldFixtures.FRAMES], frames[(frame + 1) % TldFixtures.FRAMES]);
+				if(result.currentBBox != null && result.pointsCount > 0){
+					tracked++;
+				}
+			}
+			final long allocated = counter.allocatedBytes() - start - overhead;
+			
+			assertEquals("The object should be tracked in all the measured frames", MEASURED_FRAMES, tracked);
+			assertTrue(allocated + " bytes allocated by " + MEASURED_FRAMES + " steady state frames, window " + window, allocated <= TOLERATED_BYTES);
+		}
+		tld.shutdown();
+	}
+	
+	
+	/**
+	 * Bytes allocated on the Java heap by the current thread, from com.sun.management.ThreadMXBean on a JVM or android.os.Debug on Android.
+	 * Both through reflection as neither exists everywhere (not even java.lang.management on Android), so each reading allocates itself, see overhead().
+	 */
+	private static abstract class AllocationCounter {
+		abstract long allocatedBytes() throws Exception;
+		
+		/**
+		 * @return how many bytes a reading itself allocates, to be subtracted
+		 */
+		long overhead() throws Exception {
+			// warm up the reflection first
+			for(int i = 0; i < 1000; i++){
+				allocatedBytes();
+			}
+			final long first = allocatedBytes();
+			return allocatedBytes() - first;
+		}
+		
+		/**
+		 * @return null if neither is available
+		 */
+		static AllocationCounter create(){
+			try{
+				final Object bean = Class.forName("java.lang.management.ManagementFactory").getMethod("getThreadMXBean").invoke(null);
+				final Class<?> beanClass = Class.forName("com.sun.management.ThreadMXBean");
+				if(beanClass.isInstance(bean)){
+					final Method allocatedBytes = beanClass.getMethod("getThreadAllocatedBytes", long.class);
+					final Long threadId = Long.valueOf(Thread.currentThread().getId());
+					return new AllocationCounter() {
+						@Override
+						long allocatedBytes() throws Exception {
+							return (Long) allocatedBytes.invoke(bean, threadId);
+						}
+					};
+				}
+			}catch(Exception e){
+				// not HotSpot, try Android
+			}
+			
+			try{
+				final Class<?> debugClass = Class.forName("android.os.Debug");
+				debugClass.getMethod("startAllocCounting").invoke(null);
+				final Method allocSize = debugClass.getMethod("getThreadAllocSize");
+				return new AllocationCounter() {
+					@Override
+					long allocatedBytes() throws Exception {
+						return (Integer) allocSize.invoke(null);
+					}
+				};
+			}catch(Exception e){
+				return null;
+			}
+		}
+	}
+}
@@ -0,0 +1,220 @@
+/**
+ * Copyright 2013 Dan Oprescu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trandi.opentld.tld;
+
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.Size;
+
+import com.trandi.opentld.tld.Tld.DetectionStruct;
+import com.trandi.opentld.tld.Tld.FernPartition;
+import com.trandi.opentld.tld.Util.DefaultRNG;
+
+public class TldDetectionTest extends OpenCVTestCase {
+	private static final long SEED = 42;
+	private static final int[] PARTITIONS = {2, 3, 7, 16};
+	
+	
+	public void testParallelSameAsSequential(){
+		assertParallelSameAsSequential(false);
+	}
+	
+	public void testParallelSameAsSequentialWithCascade(){
+		assertParallelSameAsSequential(true);
+	}
+	
+	/**
+	 * Stale bits from a previous frame are cleared before the detection, so learn() only ever reads this frame's hash codes: 
+	 * the bits set are exactly the boxes that passed the variance filter, fully hashed or rejected by the cascade
+	 */
+	public void testValidityBitsOnlyThisFrame(){
+		final Mat[] frames = TldFixtures.movingObjectFrames(new Size(320, 240));
+		final ExecutorService executor = Executors.newFixedThreadPool(4);
+		try{
+			for(boolean cascade : new boolean[]{false, true}){
+				final Tld tld = newTracker(cascade, frames[0]);
+				tld.setDetectionExecutor(executor, 3);
+				final int size = tld._grid.getSize();
+				for(int i = 1; i < TldFixtures.FRAMES; i++){
+					final String message = "Cascade " + cascade + ", frame " + i;
+					Arrays.fill(tld._fernCodesValid, -1L);
+					Arrays.fill(tld._fernCodesPartial, -1L);
+					tld.processFrame(frames[i - 1], frames[i]);
+					
+					int valid = 0, partial = 0;
+					for(int w = 0; w < tld._fernCodesValid.length; w++){
+						assertEquals(message + ", word " + w, 0, tld._fernCodesValid[w] & tld._fernCodesPartial[w]);
+						valid += Long.bitCount(tld._fernCodesValid[w]);
+						partial += Long.bitCount(tld._fernCodesPartial[w]);
+					}
+					assertEquals(message, tld._fernPartition.varPassed, valid + partial);
+					assertTrue(message, valid + partial > 0);
+					if(!cascade){
+						assertEquals(message, 0, partial);
+					}
+					// nothing past the last box either
+					final long padding = size % 64 == 0 ? 0 : -1L << size;
+					assertEquals(message, 0, tld._fernCodesValid[tld._fernCodesValid.length - 1] & padding);
+					assertEquals(message, 0, tld._fernCodesPartial[tld._fernCodesPartial.length - 1] & padding);
+				}
+				tld.shutdown();
+			}
+		}finally{
+			executor.shutdown();
+		}
+	}
+	
+	public void testPartitionsOwnTheirWords(){
+		final Random random = new Random(SEED);
+		for(int test = 0; test < 200; test++){
+			// sorted box indexes, like the full and ROI scans, with gaps
+			final int[] scanBoxes = new int[1 + random.nextInt(500)];
+			int boxIdx = random.nextInt(100);
+			for(int k = 0; k < scanBoxes.length; k++){
+				scanBoxes[k] = boxIdx;
+				boxIdx += 1 + (random.nextInt(10) == 0 ? random.nextInt(200) : 0);
+			}
+			final int size = scanBoxes.length;
+			final int maxPartitions = 1 + random.nextInt(16);
+			final int chunk = (size + maxPartitions - 1) / maxPartitions;
+			int partitions = 0;
+			for(int from = 0; from < size; partitions++){
+				final int to = Tld.partitionEnd(scanBoxes, from, chunk, size);
+				assertTrue(to > from && to <= size);
+				if(from > 0){
+					assertTrue("Word " + (scanBoxes[from] >> 6) + " split", (scanBoxes[from] >> 6) != (scanBoxes[from - 1] >> 6));
+				}
+				from = to;
+			}
+			assertTrue(partitions <= maxPartitions);
+		}
+	}
+	
+	/**
+	 * The ROI frames only hash, so only learn from, the boxes near the object, the far away background negatives come from the full scans
+	 */
+	public void testFullScansLearnFarNegatives(){
+		final Mat[] frames = TldFixtures.movingObjectFrames(new Size(320, 240));
+		final Tld tld = newTracker(false, frames[0]);
+		int fullScans = 0, roiFrames = 0, maxRoiNegatives = 0, maxFullNegatives = 0;
+		for(int i = 1; i < TldFixtures.FRAMES; i++){
+			final Rect box = tld.processFrame(frames[i - 1], frames[i]).currentBBox;
+			assertNotNull("Frame " + i, box);
+			final int negatives = tld.getMetrics().getLastCount(TldMetrics.NEGATIVES);
+			final int farValid = countFarValid(tld, box, false), farNegatives = countFarValid(tld, box, true);
+			if(tld.isLastFullScan()){
+				fullScans++;
+				maxFullNegatives = Math.max(maxFullNegatives, negatives);
+				assertTrue("Frame " + i + ", far boxes hashed", farValid > 0);
+				assertTrue("Frame " + i + ", " + farNegatives + " far negatives out of " + negatives, farNegatives > 0 && farNegatives <= negatives);
+			}else{
+				roiFrames++;
+				maxRoiNegatives = Math.max(maxRoiNegatives, negatives);
+				assertEquals("Frame " + i + ", far boxes hashed", 0, farValid);
+			}
+		}
+		assertTrue(fullScans > 0 && roiFrames > 0);
+		assertTrue(maxFullNegatives + " vs " + maxRoiNegatives, maxFullNegatives > maxRoiNegatives);
+		tld.shutdown();
+	}
+	
+	
+	/**
+	 * Whatever the partitioning, the parallel detection has to give bit for bit the sequential detections, hash codes and validity bits,
+	 * so the whole tracking, learning included, stays the same
+	 */
+	private static void assertParallelSameAsSequential(final boolean cascade){
+		final Mat[] frames = TldFixtures.movingObjectFrames(new Size(320, 240));
+		final ExecutorService executor = Executors.newFixedThreadPool(4);
+		try{
+			for(int partitions : PARTITIONS){
+				final Tld sequential = newTracker(cascade, frames[0]);
+				final Tld parallel = newTracker(cascade, frames[0]);
+				parallel.setDetectionExecutor(executor, partitions);
+				// the last validity word is then only partly used
+				assertTrue("Grid of " + sequential._grid.getSize() + " boxes", sequential._grid.getSize() % 64 != 0);
+				
+				for(int i = 1; i < TldFixtures.FRAMES; i++){
+					final String message = partitions + " partitions, frame " + i;
+					final String expected = String.valueOf(sequential.processFrame(frames[i - 1], frames[i]).currentBBox);
+					assertEquals(message, expected, String.valueOf(parallel.processFrame(frames[i - 1], frames[i]).currentBBox));
+					assertSameDetection(message, sequential, parallel);
+				}
+				sequential.shutdown();
+				parallel.shutdown();
+			}
+		}finally{
+			executor.shutdown();
+		}
+	}
+	
+	private static void assertSameDetection(final String message, final Tld expected, final Tld actual){
+		final FernPartition expectedFern = expected._fernPartition, actualFern = actual._fernPartition;
+		assertEquals(message, expectedFern.varPassed, actualFern.varPassed);
+		assertEquals(message, expectedFern.detectedCount, actualFern.detectedCount);
+		for(int d = 0; d < expectedFern.detectedCount; d++){
+			final DetectionStruct expectedDetection = expectedFern.get(d), actualDetection = actualFern.get(d);
+			assertEquals(message + ", detection " + d, expectedDetection.boxIdx, actualDetection.boxIdx);
+			assertEquals(message + ", detection " + d, expectedDetection.averagePosterior, actualDetection.averagePosterior, 0);
+		}
+		
+		assertTrue(message + ", validity bits", Arrays.equals(expected._fernCodesValid, actual._fernCodesValid));
+		assertTrue(message + ", partial bits", Arrays.equals(expected._fernCodesPartial, actual._fernCodesPartial));
+		final int numFerns = expected._fernCodes.length / expected._grid.getSize();
+		for(int boxIdx = 0; boxIdx < expected._grid.getSize(); boxIdx++){
+			if((expected._fernCodesValid[boxIdx >> 6] & (1L << boxIdx)) != 0){
+				for(int f = boxIdx * numFerns; f < (boxIdx + 1) * numFerns; f++){
+					assertEquals(message + ", box " + boxIdx, expected._fernCodes[f], actual._fernCodes[f]);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * @return the boxes with valid hash codes, only the bad boxes if badOnly, whose centre is at least 2 box sizes away from the box
+	 */
+	private static int countFarValid(final Tld tld, final Rect box, final boolean badOnly){
+		final Grid grid = tld._grid;
+		final int[] boxes = badOnly ? grid.getBadBoxIndexes() : null;
+		final int count = badOnly ? grid.getBadBoxesCount() : grid.getSize();
+		int result = 0;
+		for(int i = 0; i < count; i++){
+			final int boxIdx = badOnly ? boxes[i] : i;
+			final int dx = Math.abs(2 * grid.x[boxIdx] + grid.w[boxIdx] - 2 * box.x - box.width);
+			final int dy = Math.abs(2 * grid.y[boxIdx] + grid.h[boxIdx] - 2 * box.y - box.height);
+			if((dx > 4 * box.width || dy > 4 * box.height) && (tld._fernCodesValid[boxIdx >> 6] & (1L << boxIdx)) != 0){
+				result++;
+			}
+		}
+		return result;
+	}
+	
+	private static Tld newTracker(final boolean cascade, final Mat firstFrame){
+		final Properties props = TldFixtures.getTldProperties();
+		props.setProperty("learning_mode", "inline");
+		props.setProperty("fern_cascade", String.valueOf(cascade));
+		final Tld result = new Tld(props, new DefaultRNG(SEED));
+		result.init(firstFrame, TldFixtures.INIT_BOX);
+		return result;
+	}
+}
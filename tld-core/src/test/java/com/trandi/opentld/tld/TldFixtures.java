@@ -0,0 +1,105 @@
+/**
+ * Copyright 2013 Dan Oprescu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trandi.opentld.tld;
+
+import java.util.Properties;
+import java.util.Random;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * The parameters and synthetic frames shared by the tests which run the whole tracker.
+ */
+final class TldFixtures {
+	// the object goes right and back, so that the frames can be played in a loop
+	static final int FRAMES = 20;
+	private static final int STEP = 2;
+	static final Rect INIT_BOX = new Rect(100, 90, 64, 48);
+	
+	private TldFixtures(){
+	}
+	
+	
+	static Properties getClassifierProperties(){
+		final Properties props = new Properties();
+		props.setProperty("valid", "0.5");
+		props.setProperty("ncc_thesame", "0.95");
+		props.setProperty("num_ferns", "10");
+		props.setProperty("num_features_per_fern", "13");
+		props.setProperty("pos_thr_fern", "0.5");
+		props.setProperty("pos_thr_nn", "0.65");
+		props.setProperty("pos_thr_nn_valid", "0.7");
+		return props;
+	}
+	
+	/**
+	 * Without learning, the tests needing it set learning_mode themselves
+	 */
+	static Properties getTldProperties(){
+		final Properties props = getClassifierProperties();
+		props.setProperty("min_win", "15");
+		props.setProperty("patch_size", "15");
+		props.setProperty("num_closest_init", "10");
+		props.setProperty("num_warps_init", "20");
+		props.setProperty("noise_init", "5");
+		props.setProperty("angle_init", "20");
+		props.setProperty("shift_init", "0.02");
+		props.setProperty("scale_init", "0.02");
+		props.setProperty("num_closest_update", "10");
+		props.setProperty("num_warps_update", "10");
+		props.setProperty("noise_update", "5");
+		props.setProperty("angle_update", "10");
+		props.setProperty("shift_update", "0.02");
+		props.setProperty("scale_update", "0.02");
+		props.setProperty("num_bad_patches", "100");
+		props.setProperty("tracker_stability_FBerrMax", "10");
+		props.setProperty("detection_full_scan_interval", "10");
+		props.setProperty("learning_mode", "none");
+		props.setProperty("metrics_sample_interval", "1");
+		return props;
+	}
+	
+	/**
+	 * A textured object, initially in INIT_BOX, moving over a textured background, all created up front
+	 */
+	static Mat[] movingObjectFrames(final Size size){
+		final Random rnd = new Random(42);
+		final Mat background = texture((int) size.height, (int) size.width, rnd);
+		final Mat object = texture(INIT_BOX.height, INIT_BOX.width, rnd);
+		
+		final Mat[] result = new Mat[FRAMES];
+		for(int i = 0; i < FRAMES; i++){
+			final int offset = STEP * (i < FRAMES / 2 ? i : FRAMES - i);
+			result[i] = background.clone();
+			object.copyTo(result[i].submat(new Rect(INIT_BOX.x + offset, INIT_BOX.y, INIT_BOX.width, INIT_BOX.height)));
+		}
+		return result;
+	}
+	
+	static Mat texture(final int rows, final int cols, final Random rnd){
+		final byte[] noise = new byte[rows * cols];
+		rnd.nextBytes(noise);
+		final Mat result = new Mat(rows, cols, CvType.CV_8U);
+		result.put(0, 0, noise);
+		Imgproc.GaussianBlur(result, result, new Size(5, 5), 1.5);
+		return result;
+	}
+}
@@ -0,0 +1,158 @@
+/**
+ * Copyright 2013 Dan Oprescu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trandi.opentld.tld;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+
+import com.trandi.opentld.tld.Tld.ProcessFrameStruct;
+import com.trandi.opentld.tld.Util.DefaultRNG;
+
+public class TldLearningTest extends OpenCVTestCase {
+	private static final long SEED = 42;
+	
+	
+	/**
+	 * Nothing uses the classifiers after learn() in a frame, so training them in the background and waiting for it 
+	 * before the next frame has to give exactly the inline results
+	 */
+	public void testDeterministicSameAsInline() throws IOException {
+		final Mat[] frames = TldFixtures.movingObjectFrames(new Size(320, 240));
+		final Tld inline = newTracker("inline", frames[0]);
+		final Tld deterministic = newTracker("deterministic", frames[0]);
+		
+		for(int i = 1; i < TldFixtures.FRAMES; i++){
+			final String expected = String.valueOf(inline.processFrame(frames[i - 1], frames[i]).currentBBox);
+			assertEquals("Frame " + i, expected, String.valueOf(deterministic.processFrame(frames[i - 1], frames[i]).currentBBox));
+		}
+		assertTrue("The learnt models differ", Arrays.equals(snapshot(inline), snapshot(deterministic)));
+		
+		inline.shutdown();
+		deterministic.shutdown();
+	}
+	
+	/**
+	 * Each background learning finishes during the next learning frame, after it started with the older classifiers.
+	 * The next learning still has to train on top of what it published.
+	 */
+	public void testAsyncLearningKeepsEveryUpdate() throws InterruptedException {
+		final Mat[] frames = TldFixtures.movingObjectFrames(new Size(320, 240));
+		final Tld tld = newTracker("async", frames[0]);
+		final LearningScheduler scheduler = new LearningScheduler(tld);
+		TldLog.setSink(scheduler);
+		try{
+			for(int i = 1; i < TldFixtures.FRAMES; i++){
+				final ProcessFrameStruct result = tld.processFrame(frames[i - 1], frames[i]);
+				assertNull(scheduler.error, scheduler.error);
+				assertNotNull("Lost track at frame " + i, result.currentBBox);
+			}
+		}finally{
+			TldLog.setSink(null);
+			scheduler.finish();
+			tld.shutdown();
+		}
+		
+		assertTrue("Too few learning frames: " + scheduler.trainedExamples, scheduler.trainedExamples.size() > 5);
+		for(int i = 1; i < scheduler.trainedExamples.size(); i++){
+			// trainNN only ever adds examples, so an update trained on the classifiers before the previous one shows as a drop
+			assertTrue("Lost update, NN examples after each learning: " + scheduler.trainedExamples, 
+					scheduler.trainedExamples.get(i) >= scheduler.trainedExamples.get(i - 1));
+		}
+	}
+	
+	
+	private static Tld newTracker(final String learningMode, final Mat firstFrame){
+		final Properties props = TldFixtures.getTldProperties();
+		props.setProperty("learning_mode", learningMode);
+		final Tld result = new Tld(props, new DefaultRNG(SEED));
+		result.init(firstFrame, TldFixtures.INIT_BOX);
+		return result;
+	}
+	
+	private static byte[] snapshot(final Tld tld) throws IOException {
+		final File file = File.createTempFile("tld", ".snapshot");
+		try{
+			tld.saveSnapshot(file);
+			return Files.readAllBytes(file.toPath());
+		}finally{
+			file.delete();
+		}
+	}
+	
+	
+	/**
+	 * Holds each background learning at its very end until the next learn() call, then lets it publish before learn() goes on.
+	 * Hooked on the log messages, the only place where the tracker can be paused from outside.
+	 */
+	private static class LearningScheduler implements TldLog.Sink {
+		private static final String TRAINED = "Trained NN examples: ";
+		
+		private final Tld _tld;
+		private final Semaphore _proceed = new Semaphore(0);
+		private volatile boolean _waiting;
+		private volatile boolean _finished;
+		final List<Integer> trainedExamples = new ArrayList<Integer>();
+		volatile String error;
+		
+		LearningScheduler(final Tld tld){
+			_tld = tld;
+		}
+		
+		@Override
+		public void log(int level, String tag, String msg, Throwable throwable) {
+			if(msg.startsWith(TRAINED) && Thread.currentThread().getName().startsWith("TLD-learn-")){
+				// "Trained NN examples: P positive N negative"
+				final String[] words = msg.substring(TRAINED.length()).split(" ");
+				synchronized(trainedExamples){
+					trainedExamples.add(Integer.parseInt(words[0]) + Integer.parseInt(words[2]));
+				}
+				if(!_finished){
+					_waiting = true;
+					try{
+						if(!_proceed.tryAcquire(10, TimeUnit.SECONDS)){
+							error = "The learning has never been let go";
+						}
+					}catch(InterruptedException e){
+						Thread.currentThread().interrupt();
+					}
+				}
+			}else if(msg.equals("[LEARN]") && _waiting){
+				_waiting = false;
+				_proceed.release();
+				final long deadline = System.currentTimeMillis() + 10000;
+				while(_tld.isLearning() && System.currentTimeMillis() < deadline){
+					Thread.yield();
+				}
+			}
+		}
+		
+		void finish(){
+			_finished = true;
+			_proceed.release();
+		}
+	}
+}
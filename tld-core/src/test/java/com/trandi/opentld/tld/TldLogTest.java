@@ -0,0 +1,57 @@
+/**
+ * Copyright 2013 Dan Oprescu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trandi.opentld.tld;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class TldLogTest extends OpenCVTestCase {
+	
+	public void testLevelsAndSink(){
+		final List<String> logged = new ArrayList<String>();
+		final TldLog.Sink sink = new TldLog.Sink() {
+			@Override
+			public void log(int level, String tag, String msg, Throwable throwable) {
+				logged.add(level + " " + tag + " " + msg);
+			}
+		};
+		
+		try{
+			// nothing is loggable without a sink, whatever the level
+			TldLog.setSink(null);
+			TldLog.setLevel(TldLog.LEVEL_DEBUG);
+			assertFalse(TldLog.isInfo());
+			
+			TldLog.setSink(sink);
+			TldLog.setLevel(TldLog.LEVEL_WARN);
+			assertFalse(TldLog.isInfo());
+			assertTrue(TldLog.isLoggable(TldLog.LEVEL_ERROR));
+			TldLog.i("dropped");
+			TldLog.w("kept");
+			TldLog.e("kept too", new RuntimeException());
+			assertEquals(2, logged.size());
+			assertEquals(TldLog.LEVEL_WARN + " " + Util.TAG + " kept", logged.get(0));
+			
+			TldLog.setLevel(TldLog.LEVEL_OFF);
+			TldLog.e("dropped");
+			assertEquals(2, logged.size());
+		}finally{
+			TldLog.setSink(null);
+			TldLog.setLevel(TldLog.LEVEL_INFO);
+		}
+	}
+}
@@ -0,0 +1,95 @@
+/**
+ * Copyright 2013 Dan Oprescu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trandi.opentld.tld;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class TldMetricsTest extends OpenCVTestCase {
+	
+	public void testHistogramBucketsAreContiguous(){
+		long previousHighest = -1;
+		for(int bucket = 0; previousHighest != Long.MAX_VALUE; bucket++){
+			final long lowest = LatencyHistogram.lowestEquivalentValue(bucket);
+			assertEquals(previousHighest + 1, lowest);
+			assertEquals(bucket, LatencyHistogram.bucketIndex(lowest));
+			previousHighest = LatencyHistogram.highestEquivalentValue(bucket);
+			assertEquals(bucket, LatencyHistogram.bucketIndex(previousHighest));
+		}
+	}
+	
+	public void testHistogramPercentilesCloseToExact(){
+		final Random rnd = new Random(42);
+		final LatencyHistogram histogram = new LatencyHistogram();
+		final long[] values = new long[10000];
+		for(int i = 0; i < values.length; i++){
+			// log uniform from 1us to 100ms
+			values[i] = (long)Math.pow(10, 3 + rnd.nextDouble() * 5);
+			histogram.record(values[i]);
+		}
+		Arrays.sort(values);
+		
+		assertEquals(values.length, histogram.getCount());
+		assertEquals(values[0], histogram.getMin());
+		assertEquals(values[values.length - 1], histogram.getMax());
+		for(double percentile : new double[]{1, 50, 90, 99, 99.9}){
+			final long exact = values[(int)Math.ceil(percentile / 100 * values.length) - 1];
+			final long approx = histogram.getValueAtPercentile(percentile);
+			assertTrue(percentile + ": " + approx + " vs " + exact, approx >= exact && approx <= exact * 1.07);
+		}
+		assertEquals(histogram.getMax(), histogram.getValueAtPercentile(100));
+	}
+	
+	public void testSampling(){
+		final TldMetrics metrics = new TldMetrics(3);
+		for(int frame = 0; frame < 9; frame++){
+			assertEquals(frame % 3 == 0, metrics.beginFrame());
+			metrics.add(TldMetrics.FERN, 1000 + frame);
+			metrics.count(TldMetrics.SCANNED, 10);
+			metrics.endFrame();
+		}
+		// background measurements don't depend on the frames
+		metrics.record(TldMetrics.TRAIN, 5000);
+		
+		final TldMetrics.Snapshot snapshot = metrics.snapshot();
+		assertEquals(3, snapshot.getSampledFrames());
+		assertEquals(3, snapshot.getHistogram(TldMetrics.FERN).getCount());
+		assertEquals(1006, snapshot.getLastNanos(TldMetrics.FERN));
+		assertEquals(-1, snapshot.getLastNanos(TldMetrics.TRACK));
+		assertEquals(0, snapshot.getHistogram(TldMetrics.TRACK).getCount());
+		assertEquals(1, snapshot.getHistogram(TldMetrics.TRAIN).getCount());
+		assertEquals(10, snapshot.getLastCount(TldMetrics.SCANNED));
+		assertEquals(30, snapshot.getTotalCount(TldMetrics.SCANNED));
+		
+		// the snapshot doesn't change anymore
+		metrics.reset();
+		assertEquals(3, snapshot.getSampledFrames());
+		assertEquals(0, metrics.snapshot().getSampledFrames());
+	}
+	
+	public void testDisabled(){
+		final TldMetrics metrics = new TldMetrics(0);
+		for(int frame = 0; frame < 5; frame++){
+			assertFalse(metrics.beginFrame());
+			assertEquals(0L, metrics.start());
+			metrics.add(TldMetrics.FERN, 1000);
+			metrics.endFrame();
+		}
+		assertEquals(0, metrics.snapshot().getSampledFrames());
+		assertEquals(0, metrics.snapshot().getHistogram(TldMetrics.FERN).getCount());
+	}
+}
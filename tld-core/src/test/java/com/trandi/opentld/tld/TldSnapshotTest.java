@@ -0,0 +1,184 @@
+/**
+ * Copyright 2013 Dan Oprescu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trandi.opentld.tld;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Properties;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+
+import com.trandi.opentld.tld.Tld.ProcessFrameStruct;
+
+public class TldSnapshotTest extends OpenCVTestCase {
+	private static final int LEARNED_FRAMES = 10;
+	
+	
+	public void testLoadedTrackerResumesIdentically() throws Exception {
+		final Mat[] frames = TldFixtures.movingObjectFrames(new Size(320, 240));
+		final Properties props = TldFixtures.getTldProperties();
+		props.setProperty("learning_mode", "inline");
+		
+		final Tld original = new Tld(props);
+		original.init(frames[0], TldFixtures.INIT_BOX);
+		for(int i = 0; i < LEARNED_FRAMES; i++){
+			original.processFrame(frames[i], frames[i + 1]);
+		}
+		final File saved = tempFile();
+		original.saveSnapshot(saved);
+		
+		final Tld loaded = new Tld(props);
+		loaded.loadSnapshot(saved);
+		// saving it again has to give back exactly the same bytes, i.e. nothing got lost on the way
+		final File resaved = tempFile();
+		loaded.saveSnapshot(resaved);
+		assertTrue("The re-saved snapshot differs", Arrays.equals(readAll(saved), readAll(resaved)));
+		
+		// the learning draws random warps, only the first frame after the snapshot is guaranteed identical
+		final ProcessFrameStruct expected = original.processFrame(frames[LEARNED_FRAMES], frames[LEARNED_FRAMES + 1]);
+		final ProcessFrameStruct actual = loaded.processFrame(frames[LEARNED_FRAMES], frames[LEARNED_FRAMES + 1]);
+		assertNotNull(expected.currentBBox);
+		assertEquals(expected.currentBBox.toString(), String.valueOf(actual.currentBBox));
+		
+		original.shutdown();
+		loaded.shutdown();
+	}
+	
+	public void testRejectsInvalidSnapshots() throws Exception {
+		final Mat[] frames = TldFixtures.movingObjectFrames(new Size(320, 240));
+		final Tld tld = new Tld(TldFixtures.getTldProperties());
+		tld.init(frames[0], TldFixtures.INIT_BOX);
+		final File file = tempFile();
+		tld.saveSnapshot(file);
+		final byte[] content = readAll(file);
+		
+		// the NN classifier's examples are last, a truncated snapshot only fails after the Fern classifier has been read.
+		// From a tracker which has learnt more, so that a partial load would show
+		final Properties learning = TldFixtures.getTldProperties();
+		learning.setProperty("learning_mode", "inline");
+		final Tld other = new Tld(learning);
+		other.init(frames[0], TldFixtures.INIT_BOX);
+		for(int i = 0; i < LEARNED_FRAMES; i++){
+			other.processFrame(frames[i], frames[i + 1]);
+		}
+		final File truncated = tempFile();
+		other.saveSnapshot(truncated);
+		other.shutdown();
+		final RandomAccessFile out = new RandomAccessFile(truncated, "rw");
+		try{
+			out.setLength(out.length() - 4);
+		}finally{
+			out.close();
+		}
+		assertLoadFails("truncated", tld, truncated);
+		final File unchanged = tempFile();
+		tld.saveSnapshot(unchanged);
+		assertTrue("A failed load changed the tracker", Arrays.equals(content, readAll(unchanged)));
+		
+		content[0] = 'X';
+		writeAll(file, content);
+		assertLoadFails("bad magic", tld, file);
+		
+		final Properties otherPatch = TldFixtures.getTldProperties();
+		otherPatch.setProperty("patch_size", "20");
+		content[0] = 'T';
+		writeAll(file, content);
+		assertLoadFails("different patch_size", new Tld(otherPatch), file);
+		final Properties otherFerns = TldFixtures.getTldProperties();
+		otherFerns.setProperty("num_ferns", String.valueOf(Integer.parseInt(otherFerns.getProperty("num_ferns")) + 1));
+		assertLoadFails("different num_ferns", new Tld(otherFerns), file);
+		tld.shutdown();
+	}
+	
+	/**
+	 * Corrupted counts are reported like any other invalid file, rather than as a huge allocation or a runtime exception
+	 */
+	public void testRejectsCorruptedCounts() throws Exception {
+		final Mat[] frames = TldFixtures.movingObjectFrames(new Size(320, 240));
+		final Tld tld = new Tld(TldFixtures.getTldProperties());
+		tld.init(frames[0], TldFixtures.INIT_BOX);
+		final File file = tempFile();
+		tld.saveSnapshot(file);
+		final byte[] content = readAll(file);
+		final ByteBuffer buffer = ByteBuffer.wrap(content).order(ByteOrder.LITTLE_ENDIAN);
+		// header, frame size, min_win, patch_size, init box, variance, learn and tracking flags, last box
+		final int nExamplesCount = TldSnapshot.HEADER_SIZE + 4 * 4 + 4 * 4 + 4 + 1 + 1 + 4 * 4;
+		assertTrue("No negative example to corrupt", buffer.getInt(nExamplesCount) > 0);
+		
+		assertLoadFails("negative examples count", tld, file, content, nExamplesCount, -1);
+		assertLoadFails("huge examples count", tld, file, content, nExamplesCount, Integer.MAX_VALUE);
+		assertLoadFails("bad pattern length", tld, file, content, nExamplesCount + 4, 1);
+		assertLoadFails("negative pattern length", tld, file, content, nExamplesCount + 4, -1);
+		
+		final File unchanged = tempFile();
+		tld.saveSnapshot(unchanged);
+		assertTrue("A failed load changed the tracker", Arrays.equals(content, readAll(unchanged)));
+		tld.shutdown();
+	}
+	
+	
+	/**
+	 * With the int at offset replaced by value
+	 */
+	private static void assertLoadFails(final String message, final Tld tld, final File file, final byte[] content, final int offset, final int value) throws IOException {
+		final byte[] corrupted = content.clone();
+		ByteBuffer.wrap(corrupted).order(ByteOrder.LITTLE_ENDIAN).putInt(offset, value);
+		writeAll(file, corrupted);
+		assertLoadFails(message, tld, file);
+	}
+	
+	private static void assertLoadFails(final String message, final Tld tld, final File file){
+		try{
+			tld.loadSnapshot(file);
+			fail(message + " snapshot accepted");
+		}catch(IOException e){
+			// expected
+		}
+	}
+	
+	private static File tempFile() throws IOException {
+		final File result = File.createTempFile("tld", ".snapshot");
+		result.deleteOnExit();
+		return result;
+	}
+	
+	private static byte[] readAll(final File file) throws IOException {
+		final RandomAccessFile in = new RandomAccessFile(file, "r");
+		try{
+			final byte[] result = new byte[(int) in.length()];
+			in.readFully(result);
+			return result;
+		}finally{
+			in.close();
+		}
+	}
+	
+	private static void writeAll(final File file, final byte[] content) throws IOException {
+		final RandomAccessFile out = new RandomAccessFile(file, "rw");
+		try{
+			out.setLength(0);
+			out.write(content);
+		}finally{
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,48 @@
+/**
+ * Copyright 2013 Dan Oprescu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trandi.opentld.tld;
+
+import junit.framework.TestCase;
+
+/**
+ * No OpenCV needed, so not an OpenCVTestCase
+ */
+public class TripleBufferTest extends TestCase {
+	
+	public void testTripleBufferLatestWins(){
+		final TripleBuffer<StringBuilder> buffer = new TripleBuffer<StringBuilder>(new StringBuilder(), new StringBuilder(), new StringBuilder());
+		assertFalse(buffer.update());
+		
+		buffer.writeSlot().append("1");
+		assertFalse(buffer.publish());
+		buffer.writeSlot().append("2");
+		assertTrue("1 hasn't been read, it's dropped", buffer.publish());
+		
+		assertTrue(buffer.hasNew());
+		assertTrue(buffer.update());
+		assertEquals("2", buffer.readSlot().toString());
+		assertFalse(buffer.hasNew());
+		assertFalse(buffer.update());
+		assertEquals("2", buffer.readSlot().toString());
+		
+		// the writer never gets the slot being read
+		for(int i = 0; i < 5; i++){
+			assertNotSame(buffer.readSlot(), buffer.writeSlot());
+			buffer.publish();
+		}
+	}
+}
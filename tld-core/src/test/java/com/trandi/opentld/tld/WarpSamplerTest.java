@@ -0,0 +1,80 @@
+/**
+ * Copyright 2013 Dan Oprescu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trandi.opentld.tld;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import com.trandi.opentld.tld.Util.DefaultRNG;
+
+public class WarpSamplerTest extends OpenCVTestCase {
+	
+	/**
+	 * Without noise nor blur, the sampled pixels have to be the ones of the patch built by PatchGenerator.generate()
+	 */
+	public void testSameAsWarpedPatch(){
+		final Mat frame = getTestMat();
+		Imgproc.cvtColor(frame, frame, Imgproc.COLOR_RGB2GRAY);
+		final BoundingBox patchBox = new BoundingBox(100, 80, 60, 50, 0, 0);
+		
+		// 10 degrees rotation, 5% scale, around the patch centre
+		final double angle = Math.toRadians(10), scale = 1.05;
+		final double cx = patchBox.x + (patchBox.width - 1) * 0.5, cy = patchBox.y + (patchBox.height - 1) * 0.5;
+		final double a = scale * Math.cos(angle), b = scale * Math.sin(angle);
+		final double[] t = {a, -b, (patchBox.width - 1) * 0.5 - a * cx + b * cy, b, a, (patchBox.height - 1) * 0.5 - b * cx - a * cy};
+		final Mat T = new Mat(2, 3, CvType.CV_64F);
+		T.put(0, 0, t);
+		
+		final PatchGenerator generator = new PatchGenerator(0, 0, 0, false, 1, 1, 0, 0, 0, 0);
+		final Mat patch = new Mat();
+		generator.generate(frame, T, patch, new Size(patchBox.width, patchBox.height), new DefaultRNG());
+		final byte[] patchData = Util.getByteArray(patch, null);
+		
+		final WarpSampler sampler = new WarpSampler(frame, 0);
+		sampler.setWarp(PatchGenerator.invertAffine(t), patchBox.x, patchBox.y, 0, 42);
+		for(int y = 0; y < patchBox.height; y++){
+			for(int x = 0; x < patchBox.width; x++){
+				// warpAffine interpolates with 5 bits of precision
+				assertEquals("Different pixel at " + x + ", " + y, patchData[y * patchBox.width + x] & 0xFF, sampler.sample(patchBox.x + x, patchBox.y + y), 2);
+			}
+		}
+	}
+	
+	public void testNoiseStatistics(){
+		final Mat frame = new Mat(100, 100, CvType.CV_8U);
+		frame.setTo(new Scalar(100));
+		final WarpSampler sampler = new WarpSampler(frame, 5);
+		sampler.setWarp(new double[]{1, 0, 0, 0, 1, 0}, 0, 0, 0, 42);
+		
+		double sum = 0, sqSum = 0;
+		for(int y = 0; y < 100; y++){
+			for(int x = 0; x < 100; x++){
+				final int noise = sampler.sample(x, y) - 100;
+				sum += noise;
+				sqSum += noise * noise;
+				// the same pixel always gets the same noise
+				assertEquals(noise + 100, sampler.sample(x, y));
+			}
+		}
+		final double mean = sum / 10000;
+		assertEquals(0, mean, 0.2);
+		assertEquals(5, Math.sqrt(sqSum / 10000 - mean * mean), 0.3);
+	}
+}
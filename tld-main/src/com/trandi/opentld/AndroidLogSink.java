@@ -0,0 +1,32 @@
+/**
+ * Copyright 2013 Dan Oprescu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trandi.opentld;
+
+import android.util.Log;
+
+import com.trandi.opentld.tld.TldLog;
+
+/**
+ * Sends the TLD logging to logcat
+ */
+class AndroidLogSink implements TldLog.Sink {
+	@Override
+	public void log(int level, String tag, String msg, Throwable throwable) {
+		// TldLog uses the same level values
+		Log.println(level, tag, throwable == null ? msg : msg + '\n' + Log.getStackTraceString(throwable));
+	}
+}
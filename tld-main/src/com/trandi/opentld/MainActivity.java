@@ -27,6 +27,7 @@ import android.view.Menu;
 import android.view.SurfaceView;
 import android.view.Window;
 
+import com.trandi.opentld.tld.TldLog;
 import com.trandi.opentld.tld.Util;
 
 public class MainActivity extends Activity {
@@ -61,6 +62,9 @@ public class MainActivity extends Activity {
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         requestWindowFeature(Window.FEATURE_NO_TITLE);
+        // the per frame info of the tracker only in the debug builds
+        TldLog.setSink(new AndroidLogSink());
+        TldLog.setLevel(BuildConfig.DEBUG ? TldLog.LEVEL_INFO : TldLog.LEVEL_WARN);
 
         Log.i(Util.TAG, "Trying to load OpenCV library");
         if (!OpenCVLoader.initAsync(OpenCVLoader.OPENCV_VERSION_2_4_6, this, _openCVCallBack)) {
@@ -44,6 +44,7 @@ import android.view.MotionEvent;
 import android.view.SurfaceHolder;
 import android.view.View;
 
+import com.trandi.opentld.tld.FramePipeline;
 import com.trandi.opentld.tld.Tld;
 import com.trandi.opentld.tld.Tld.ProcessFrameStruct;
 import com.trandi.opentld.tld.Util;
@@ -55,15 +56,18 @@ public class TLDView extends JavaCameraView implements CameraBridgeViewBase.CvCa
     private int _canvasImgXOffset;
 	
 	private Mat _currentGray = new Mat();
-	private Mat _lastGray = new Mat();
-	private Tld _tld = null;
-	private Rect _trackedBox = null;
-	private ProcessFrameStruct _processFrameStruct = null;
+	private final AtomicReference<Rect> _trackedBox = new AtomicReference<Rect>();	// as selected on the screen
+	private Rect _submittedBox = null;	// the one the tracker has been (re)initialised with
 	private Properties _tldProperties;
 	
+	// the camera thread only resizes and converts the frames, the tracking runs on the pipeline's worker thread
+	private final Tracker _tracker = new Tracker();
+	private final FramePipeline<TrackResult> _pipeline = new FramePipeline<TrackResult>(_tracker, "TLD-worker");
+	private static final int STATS_INTERVAL = 300;	// frames
+	
 	private static final Size WORKING_FRAME_SIZE = new Size(144, 80);
 	private Mat _workingFrame = new Mat();
-	private String _errMessage;
+	private volatile String _errMessage;
 	
 	public TLDView(Context context, AttributeSet attrs) {
 		super(context, attrs);
@@ -106,7 +110,8 @@ public class TLDView extends JavaCameraView implements CameraBridgeViewBase.CvCa
 			public boolean onTouch(View v, MotionEvent event) {
 				// re-init
 				_errMessage = null;
-				_tld = null;
+				_trackedBox.set(null);
+				_tracker.reset();
 				
 				final Point corner = new Point(event.getX() - _canvasImgXOffset, event.getY() - _canvasImgYOffset);
 				switch(event.getAction()){
@@ -115,8 +120,8 @@ public class TLDView extends JavaCameraView implements CameraBridgeViewBase.CvCa
 					Log.i(Util.TAG, "1st corner: " + corner);
 					break;
 				case MotionEvent.ACTION_UP:
-					_trackedBox = new Rect(trackedBox1stCorner.get(), corner);
-					Log.i(Util.TAG, "Tracked box DEFINED: " + _trackedBox);
+					_trackedBox.set(new Rect(trackedBox1stCorner.get(), corner));
+					Log.i(Util.TAG, "Tracked box DEFINED: " + _trackedBox.get());
 					break;
 				case MotionEvent.ACTION_MOVE:
 					final android.graphics.Rect rect = new android.graphics.Rect(
@@ -143,32 +148,28 @@ public class TLDView extends JavaCameraView implements CameraBridgeViewBase.CvCa
 			// usefull to see what we're actually working with...
 			_workingFrame.copyTo(originalFrame.submat(originalFrame.rows() - _workingFrame.rows(), originalFrame.rows(), 0, _workingFrame.cols()));
 			
-			if(_trackedBox != null){
-				if(_tld == null){ // run the 1st time only
-					Imgproc.cvtColor(_workingFrame, _lastGray, Imgproc.COLOR_RGB2GRAY);
-					_tld = new Tld(_tldProperties);
-					final Rect scaledDownTrackedBox = scaleDown(_trackedBox, workingRatio);
-					Log.i(Util.TAG, "Working Ration: " + workingRatio + " / Tracking Box: " + _trackedBox + " / Scaled down to: " + scaledDownTrackedBox);
-					try {
-						_tld.init(_lastGray, scaledDownTrackedBox);
-					}catch(Exception eInit){
-				        // start from scratch, you have to select an init box again !
-						_trackedBox = null;
-						_tld = null;
-						throw eInit; // re-throw it as it will be dealt with later
-					}
-				}else{
-					Imgproc.cvtColor(_workingFrame, _currentGray, Imgproc.COLOR_RGB2GRAY);
+			final Rect trackedBox = _trackedBox.get();
+			if(trackedBox != null){
+				if(trackedBox != _submittedBox){ // a new box has been selected
+					final Rect scaledDownTrackedBox = scaleDown(trackedBox, workingRatio);
+					Log.i(Util.TAG, "Working Ration: " + workingRatio + " / Tracking Box: " + trackedBox + " / Scaled down to: " + scaledDownTrackedBox);
+					_tracker.init(scaledDownTrackedBox, trackedBox);
+					_submittedBox = trackedBox;
+				}
+				
+				Imgproc.cvtColor(_workingFrame, _currentGray, Imgproc.COLOR_RGB2GRAY);
+				_pipeline.submit(_currentGray);
+				if(_pipeline.getSubmitted() % STATS_INTERVAL == 0){
+					Log.i(Util.TAG, "Frames submitted: " + _pipeline.getSubmitted() + " / processed: " + _pipeline.getProcessed() 
+							+ " / dropped: " + _pipeline.getDropped() + " / failed: " + _pipeline.getFailed());
+				}
 				
-					_processFrameStruct = _tld.processFrame(_lastGray, _currentGray);
-					drawPoints(originalFrame, _processFrameStruct.lastPoints, workingRatio, new Scalar(255, 0, 0));
-					drawPoints(originalFrame, _processFrameStruct.currentPoints, workingRatio, new Scalar(0, 255, 0));
-					drawBox(originalFrame, scaleUp(_processFrameStruct.currentBBox, workingRatio), new Scalar(0, 0, 255));
-						
-					_currentGray.copyTo(_lastGray);
-					
-					// overlay the current positive examples on the real image(needs converting at the same time !)
-					//copyTo(_tld.getPPatterns(), originalFrame);
+				// overlay whatever the worker has come up with most recently, it may be a few frames behind
+				final TrackResult result = _pipeline.latestResult();
+				if(result != null){
+					drawPoints(originalFrame, result.lastPoints, result.pointsCount, workingRatio, new Scalar(255, 0, 0));
+					drawPoints(originalFrame, result.currentPoints, result.pointsCount, workingRatio, new Scalar(0, 255, 0));
+					drawBox(originalFrame, scaleUp(result.currentBBox, workingRatio), new Scalar(0, 0, 255));
 				}
 			}
 		} catch(Exception e) {
@@ -177,8 +178,9 @@ public class TLDView extends JavaCameraView implements CameraBridgeViewBase.CvCa
 		}
 
 		
-		if(_errMessage !=  null){
-			Core.putText(originalFrame, _errMessage, new Point(0, 300), Core.FONT_HERSHEY_PLAIN, 1.3d, new Scalar(255, 0, 0), 2);
+		final String errMessage = _errMessage;
+		if(errMessage !=  null){
+			Core.putText(originalFrame, errMessage, new Point(0, 300), Core.FONT_HERSHEY_PLAIN, 1.3d, new Scalar(255, 0, 0), 2);
 		}
 		
         return originalFrame;
@@ -205,18 +207,149 @@ public class TLDView extends JavaCameraView implements CameraBridgeViewBase.CvCa
 	public void onCameraViewStarted(int width, int height) {
     	_canvasImgXOffset = (getWidth() - width) / 2;
     	_canvasImgYOffset = (getHeight() - height) / 2;
+    	_pipeline.start();
 	}
 
 	@Override
 	public void onCameraViewStopped() {
-		// TODO Auto-generated method stub
+		_pipeline.stop();
+		_tracker.shutdown();
+		// re-initialised with the same box when the camera starts again
+		_submittedBox = null;
+	}
+	
+	
+	/**
+	 * Runs on the pipeline's worker thread, owns the Tld.
+	 */
+	private class Tracker implements FramePipeline.Processor<TrackResult> {
+		private final AtomicReference<Rect[]> _init = new AtomicReference<Rect[]>();	// {scaled down box, the selection it comes from}
+		private volatile boolean _reset;
+		private Tld _tld = null;
+		private final Mat _lastGray = new Mat();
+		
+		/**
+		 * @param box the tracker will be initialised with on the next frame
+		 * @param selection the on screen box it comes from, dropped if the initialisation fails
+		 */
+		void init(final Rect box, final Rect selection){
+			_init.set(new Rect[]{box, selection});
+		}
+		
+		/**
+		 * The tracker will be dropped on the next frame
+		 */
+		void reset(){
+			_init.set(null);
+			_reset = true;
+		}
+		
+		/**
+		 * Only once the pipeline has been stopped
+		 */
+		void shutdown(){
+			if(_tld != null){
+				_tld.shutdown();
+				_tld = null;
+			}
+		}
+		
+		@Override
+		public TrackResult newResult() {
+			return new TrackResult();
+		}
+		
+		@Override
+		public void process(final Mat currentGray, final long frameNumber, final TrackResult result) {
+			if(_reset){
+				_reset = false;
+				shutdown();
+			}
+			
+			final Rect[] init = _init.getAndSet(null);
+			if(init != null){ // 1st frame with this box
+				shutdown();
+				currentGray.copyTo(_lastGray);
+				_tld = new Tld(_tldProperties);
+				try {
+					_tld.init(_lastGray, init[0]);
+				}catch(RuntimeException eInit){
+					shutdown();
+			        Log.e(Util.TAG, "TLD init PROBLEM", eInit);
+			        // start from scratch, you have to select an init box again ! Unless a new one has been selected meanwhile
+					if(_trackedBox.compareAndSet(init[1], null)){
+						_errMessage = eInit.getClass().getSimpleName() + " / " + eInit.getMessage();
+					}
+				}
+				result.set(null);
+				return;
+			}
+			
+			if(_tld == null){
+				result.set(null);
+				return;
+			}
+			
+			try{
+				result.set(_tld.processFrame(_lastGray, currentGray));
+			}catch(RuntimeException e){
+		        _errMessage = e.getClass().getSimpleName() + " / " + e.getMessage();
+				throw e;
+			}finally{
+				currentGray.copyTo(_lastGray);
+			}
+		}
+	}
+	
+	/**
+	 * A copy of what Tld.processFrame() returned, as the Tld overwrites its own on the next frame while this one is being drawn.
+	 */
+	private static class TrackResult {
+		Point[] lastPoints = new Point[0];
+		Point[] currentPoints = new Point[0];
+		int pointsCount;
+		Rect currentBBox;	// null if lost
+		
+		void set(final ProcessFrameStruct struct){
+			pointsCount = struct == null || struct.lastPoints == null ? 0 : struct.pointsCount;
+			if(lastPoints.length < pointsCount){
+				lastPoints = grow(lastPoints, pointsCount);
+				currentPoints = grow(currentPoints, pointsCount);
+			}
+			for(int i = 0; i < pointsCount; i++){
+				lastPoints[i].x = struct.lastPoints[i].x;
+				lastPoints[i].y = struct.lastPoints[i].y;
+				currentPoints[i].x = struct.currentPoints[i].x;
+				currentPoints[i].y = struct.currentPoints[i].y;
+			}
+			
+			if(struct == null || struct.currentBBox == null){
+				currentBBox = null;
+			}else{
+				if(currentBBox == null){
+					currentBBox = new Rect();
+				}
+				currentBBox.x = struct.currentBBox.x;
+				currentBBox.y = struct.currentBBox.y;
+				currentBBox.width = struct.currentBBox.width;
+				currentBBox.height = struct.currentBBox.height;
+			}
+		}
+		
+		private static Point[] grow(final Point[] points, final int size){
+			final Point[] result = new Point[size];
+			for(int i = 0; i < size; i++){
+				result[i] = i < points.length ? points[i] : new Point();
+			}
+			return result;
+		}
 	}
 	
 	
-	private static void drawPoints(Mat image, final Point[] points, final Size scale, final Scalar colour){
+	private static void drawPoints(Mat image, final Point[] points, final int count, final Size scale, final Scalar colour){
 		if(points != null){
-			for(Point point : points){
-				Core.circle(image, scaleUp(point, scale), 2, colour);
+			for(int i = 0; i < count; i++){
+				Core.circle(image, scaleUp(points[i], scale), 2, colour);
 			}
 		}
 	}
@@ -0,0 +1,37 @@
+/**
+ * Copyright 2013 Dan Oprescu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trandi.opentld.runner;
+
+import java.io.Closeable;
+
+import org.opencv.core.Mat;
+
+/**
+ * Where the headless runner gets its frames from, in order. NOT thread safe.
+ */
+public interface FrameSource extends Closeable {
+	/**
+	 * @param frame filled with the next frame, BGR as read by OpenCV. Only re-allocated if the size / type changes.
+	 * @return false when there are no more frames
+	 */
+	boolean read(Mat frame);
+	
+	/**
+	 * @return what the frames are read from, for the report
+	 */
+	String getName();
+}
@@ -0,0 +1,96 @@
+/**
+ * Copyright 2013 Dan Oprescu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trandi.opentld.runner;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.util.Arrays;
+import java.util.Locale;
+
+import org.opencv.core.Mat;
+import org.opencv.highgui.Highgui;
+
+/**
+ * All the images in a folder, in file name order (so name them 00001.jpg, 00002.jpg... as most datasets do).
+ */
+public class ImageSequenceSource implements FrameSource {
+	private static final String[] EXTENSIONS = {".jpg", ".jpeg", ".png", ".bmp", ".pgm", ".ppm", ".tif", ".tiff"};
+	
+	private final File _folder;
+	private final File[] _files;
+	private int _next = 0;
+	
+	public ImageSequenceSource(final File folder){
+		_folder = folder;
+		_files = folder.listFiles(new FileFilter() {
+			@Override
+			public boolean accept(File file) {
+				return file.isFile() && isImage(file.getName());
+			}
+		});
+		if(_files == null){
+			throw new IllegalArgumentException("Can't list folder: " + folder);
+		}
+		if(_files.length == 0){
+			throw new IllegalArgumentException("No images in folder: " + folder);
+		}
+		Arrays.sort(_files);
+	}
+	
+	static boolean isImage(final String fileName){
+		final String lowerCase = fileName.toLowerCase(Locale.ENGLISH);
+		for(String extension : EXTENSIONS){
+			if(lowerCase.endsWith(extension)){
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	@Override
+	public boolean read(Mat frame) {
+		if(_next >= _files.length){
+			return false;
+		}
+		
+		final File file = _files[_next++];
+		final Mat img = Highgui.imread(file.getPath());
+		try{
+			if(img.empty()){
+				throw new IllegalStateException("Can't read image: " + file);
+			}
+			img.copyTo(frame);
+		}finally{
+			img.release();
+		}
+		return true;
+	}
+	
+	public int getFrameCount(){
+		return _files.length;
+	}
+	
+	@Override
+	public String getName() {
+		return _folder.getPath() + " (" + _files.length + " images)";
+	}
+	
+	@Override
+	public void close() {
+		// nothing to release, the images are read one at a time
+	}
+}
@@ -0,0 +1,416 @@
+/**
+ * Copyright 2013 Dan Oprescu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trandi.opentld.runner;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.Properties;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import com.trandi.opentld.tld.Tld;
+import com.trandi.opentld.tld.Tld.ProcessFrameStruct;
+import com.trandi.opentld.tld.TldLog;
+import com.trandi.opentld.tld.TldMetrics;
+
+/**
+ * Drives Tld from a video file or a folder of images, as TLDView does from the camera, but at full speed and without any display.
+ * Reports the throughput, the per stage latency percentiles (every frame is sampled, see TldMetrics) and the peak memory.
+ */
+public class TldRunner {
+	private static final String USAGE = 
+			"Usage: java -jar tld-runner.jar --box x,y,width,height [options] <video file | images folder>\n"
+			+ "  --box x,y,width,height  the object to track, in the 1st frame (source pixels)\n"
+			+ "  --resize WIDTHxHEIGHT   working frame size (e.g. 352x288 as the app), default: the source size\n"
+			+ "  --params FILE           TLD parameters, default: the ones the app ships with\n"
+			+ "  --set key=value         overrides 1 parameter, can be repeated (e.g. --set detection_threads=4)\n"
+			+ "  --csv FILE              writes the box of every frame (source pixels, empty if lost) and its latency\n"
+			+ "  --max-frames N          stops after N frames\n"
+			+ "  --warmup N              the first N processed frames are NOT measured (JIT warm up)\n"
+			+ "  --verbose               TLD info logs";
+	
+	private final Options _options;
+	private final Properties _params;
+	
+	
+	TldRunner(final Options options) throws IOException{
+		_options = options;
+		_params = options.loadParams();
+	}
+	
+	public static void main(String[] args) throws IOException {
+		final Options options;
+		try{
+			options = Options.parse(args);
+		}catch(IllegalArgumentException e){
+			System.err.println(e.getMessage());
+			System.err.println(USAGE);
+			System.exit(1);
+			return;
+		}
+		
+		nu.pattern.OpenCV.loadLocally();
+		TldLog.setSink(TldLog.JUL_SINK);
+		TldLog.setLevel(options.verbose ? TldLog.LEVEL_INFO : TldLog.LEVEL_WARN);
+		
+		final TldRunner runner = new TldRunner(options);
+		final FrameSource source = openSource(new File(options.source));
+		try{
+			System.out.println(runner.run(source));
+		}finally{
+			source.close();
+		}
+	}
+	
+	static FrameSource openSource(final File file){
+		return file.isDirectory() ? new ImageSequenceSource(file) : new VideoFileSource(file);
+	}
+	
+	
+	Report run(final FrameSource source) throws IOException {
+		final Report report = new Report(source.getName());
+		final Writer csv = _options.csvFile == null ? null : new BufferedWriter(new OutputStreamWriter(new FileOutputStream(_options.csvFile), "UTF-8"));
+		final Mat frame = new Mat();
+		final Mat working = _options.workingSize == null ? frame : new Mat();
+		Mat lastGray = new Mat();
+		Mat currentGray = new Mat();
+		Tld tld = null;
+		try{
+			if(csv != null){
+				csv.write("frame,x,y,width,height,latency_us\n");
+			}
+			resetPeakMemory();
+			
+			if(!source.read(frame)){
+				throw new IllegalArgumentException("No frames in: " + source.getName());
+			}
+			final Size ratio = _options.workingSize == null ? new Size(1, 1) 
+					: new Size(frame.width() / _options.workingSize.width, frame.height() / _options.workingSize.height);
+			toGray(frame, working, lastGray);
+			
+			tld = new Tld(_params);
+			final long initStart = System.nanoTime();
+			tld.init(lastGray, scale(_options.box, 1 / ratio.width, 1 / ratio.height));
+			report.initNanos = System.nanoTime() - initStart;
+			writeCsv(csv, 0, _options.box, report.initNanos);
+			
+			int frameIdx = 1;
+			long runStart = System.nanoTime();
+			while((_options.maxFrames <= 0 || frameIdx < _options.maxFrames) && source.read(frame)){
+				toGray(frame, working, currentGray);
+				
+				final long start = System.nanoTime();
+				final ProcessFrameStruct result = tld.processFrame(lastGray, currentGray);
+				final long nanos = System.nanoTime() - start;
+				
+				final Rect box = result.currentBBox == null ? null : scale(result.currentBBox, ratio.width, ratio.height);
+				writeCsv(csv, frameIdx, box, nanos);
+				
+				if(frameIdx > _options.warmupFrames){
+					report.measuredFrames++;
+					report.processNanos += nanos;
+					if(box != null){
+						report.trackedFrames++;
+					}
+				}else if(frameIdx == _options.warmupFrames){
+					tld.resetMetrics();
+					runStart = System.nanoTime();
+				}
+				
+				// no copy, the next frame is decoded into the other Mat, so lastGray is never written to in place, see Tld.processFrame()
+				final Mat tmp = lastGray;
+				lastGray = currentGray;
+				currentGray = tmp;
+				frameIdx++;
+			}
+			report.wallNanos = System.nanoTime() - runStart;
+			report.frames = frameIdx;
+		}finally{
+			if(tld != null){
+				tld.shutdown();
+			}
+			if(csv != null){
+				csv.close();
+			}
+			frame.release();
+			working.release();
+			lastGray.release();
+			currentGray.release();
+		}
+		
+		report.metrics = tld.getMetrics();
+		report.peakHeap = peakMemory(MemoryType.HEAP);
+		report.peakNonHeap = peakMemory(MemoryType.NON_HEAP);
+		report.peakResident = peakResidentMemory();
+		return report;
+	}
+	
+	private void toGray(final Mat frame, final Mat working, final Mat gray){
+		if(working != frame){
+			Imgproc.resize(frame, working, _options.workingSize);
+		}
+		if(working.channels() == 1){
+			working.copyTo(gray);
+		}else{
+			Imgproc.cvtColor(working, gray, Imgproc.COLOR_BGR2GRAY);
+		}
+	}
+	
+	private static Rect scale(final Rect rect, final double xRatio, final double yRatio){
+		return new Rect((int)Math.round(rect.x * xRatio), (int)Math.round(rect.y * yRatio), 
+				(int)Math.round(rect.width * xRatio), (int)Math.round(rect.height * yRatio));
+	}
+	
+	private static void writeCsv(final Writer csv, final int frameIdx, final Rect box, final long nanos) throws IOException{
+		if(csv == null){
+			return;
+		}
+		
+		csv.write(Integer.toString(frameIdx));
+		if(box == null){
+			csv.write(",,,,");
+		}else{
+			csv.write("," + box.x + "," + box.y + "," + box.width + "," + box.height);
+		}
+		csv.write("," + nanos / 1000 + "\n");
+	}
+	
+	private static void resetPeakMemory(){
+		for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()){
+			pool.resetPeakUsage();
+		}
+	}
+	
+	/**
+	 * @return the sum of the pools' peaks, an upper bound as they don't necessarily peak at the same time
+	 */
+	private static long peakMemory(final MemoryType type){
+		long result = 0;
+		for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()){
+			if(pool.getType() == type && pool.getPeakUsage() != null){
+				result += pool.getPeakUsage().getUsed();
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * The OpenCV Mats live outside the Java heap, so this is the number that matters on the device. 
+	 * @return the process' peak resident set size (VmHWM), -1 if not on Linux
+	 */
+	static long peakResidentMemory(){
+		final File status = new File("/proc/self/status");
+		if(!status.canRead()){
+			return -1;
+		}
+		
+		BufferedReader reader = null;
+		try{
+			reader = new BufferedReader(new FileReader(status));
+			String line;
+			while((line = reader.readLine()) != null){
+				if(line.startsWith("VmHWM:")){
+					// e.g. "VmHWM:	  123456 kB"
+					return Long.parseLong(line.substring("VmHWM:".length()).replace("kB", "").trim()) * 1024;
+				}
+			}
+			return -1;
+		}catch(IOException e){
+			return -1;
+		}catch(NumberFormatException e){
+			return -1;
+		}finally{
+			if(reader != null){
+				try{
+					reader.close();
+				}catch(IOException e){
+					// nothing we can do
+				}
+			}
+		}
+	}
+	
+	
+	static final class Options {
+		String source;
+		Rect box;
+		Size workingSize;
+		File paramsFile;
+		final Properties overrides = new Properties();
+		File csvFile;
+		int maxFrames;
+		int warmupFrames;
+		boolean verbose;
+		
+		static Options parse(final String[] args){
+			final Options result = new Options();
+			for(int i = 0; i < args.length; i++){
+				final String arg = args[i];
+				if("--box".equals(arg)){
+					result.box = parseBox(value(args, ++i, arg));
+				}else if("--resize".equals(arg)){
+					result.workingSize = parseSize(value(args, ++i, arg));
+				}else if("--params".equals(arg)){
+					result.paramsFile = new File(value(args, ++i, arg));
+				}else if("--set".equals(arg)){
+					final String keyValue = value(args, ++i, arg);
+					final int eq = keyValue.indexOf('=');
+					if(eq <= 0){
+						throw new IllegalArgumentException("Expected --set key=value, got: " + keyValue);
+					}
+					result.overrides.setProperty(keyValue.substring(0, eq).trim(), keyValue.substring(eq + 1).trim());
+				}else if("--csv".equals(arg)){
+					result.csvFile = new File(value(args, ++i, arg));
+				}else if("--max-frames".equals(arg)){
+					result.maxFrames = parseInt(value(args, ++i, arg), arg);
+				}else if("--warmup".equals(arg)){
+					result.warmupFrames = parseInt(value(args, ++i, arg), arg);
+				}else if("--verbose".equals(arg)){
+					result.verbose = true;
+				}else if(arg.startsWith("--")){
+					throw new IllegalArgumentException("Unknown option: " + arg);
+				}else if(result.source == null){
+					result.source = arg;
+				}else{
+					throw new IllegalArgumentException("Only 1 video file or images folder expected, got: " + result.source + " and " + arg);
+				}
+			}
+			
+			if(result.source == null){
+				throw new IllegalArgumentException("Missing the video file or images folder");
+			}
+			if(result.box == null){
+				throw new IllegalArgumentException("Missing --box");
+			}
+			return result;
+		}
+		
+		/**
+		 * The app's parameters (or --params), then the --set overrides. 
+		 * Every frame's metrics are recorded, unless metrics_sample_interval is explicitly set.
+		 */
+		Properties loadParams() throws IOException{
+			final Properties result = new Properties();
+			final InputStream in = paramsFile == null ? TldRunner.class.getResourceAsStream("/parameters.properties") : new FileInputStream(paramsFile);
+			if(in == null){
+				throw new IllegalStateException("parameters.properties NOT found on the classpath, use --params");
+			}
+			try{
+				result.load(in);
+			}finally{
+				in.close();
+			}
+			result.setProperty("metrics_sample_interval", "1");
+			result.putAll(overrides);
+			return result;
+		}
+		
+		private static String value(final String[] args, final int idx, final String option){
+			if(idx >= args.length){
+				throw new IllegalArgumentException("Missing the value of " + option);
+			}
+			return args[idx];
+		}
+		
+		private static int parseInt(final String value, final String option){
+			try{
+				return Integer.parseInt(value);
+			}catch(NumberFormatException e){
+				throw new IllegalArgumentException("Expected a number for " + option + ", got: " + value);
+			}
+		}
+		
+		static Rect parseBox(final String box){
+			final String[] parts = box.split(",");
+			if(parts.length != 4){
+				throw new IllegalArgumentException("Expected --box x,y,width,height, got: " + box);
+			}
+			final Rect result = new Rect(parseInt(parts[0].trim(), "x"), parseInt(parts[1].trim(), "y"), parseInt(parts[2].trim(), "width"), parseInt(parts[3].trim(), "height"));
+			if(result.width <= 0 || result.height <= 0){
+				throw new IllegalArgumentException("Empty --box: " + box);
+			}
+			return result;
+		}
+		
+		static Size parseSize(final String size){
+			final String[] parts = size.split("x");
+			if(parts.length != 2){
+				throw new IllegalArgumentException("Expected --resize WIDTHxHEIGHT, got: " + size);
+			}
+			return new Size(parseInt(parts[0].trim(), "width"), parseInt(parts[1].trim(), "height"));
+		}
+	}
+	
+	
+	static final class Report {
+		final String source;
+		int frames;				// read, including the 1st one used for the init
+		int measuredFrames;		// processed, minus the warm up
+		int trackedFrames;		// of the measured ones, with a box
+		long initNanos;
+		long processNanos;		// sum of the processFrame() calls
+		long wallNanos;			// including the decoding and the grey conversion
+		TldMetrics.Snapshot metrics;
+		long peakHeap;
+		long peakNonHeap;
+		long peakResident;
+		
+		Report(final String source){
+			this.source = source;
+		}
+		
+		double getProcessFps(){
+			return processNanos == 0 ? 0 : measuredFrames * 1e9 / processNanos;
+		}
+		
+		double getWallFps(){
+			return wallNanos == 0 ? 0 : measuredFrames * 1e9 / wallNanos;
+		}
+		
+		@Override
+		public String toString(){
+			final StringBuilder result = new StringBuilder();
+			result.append("Source: ").append(source)
+				.append("\nFrames: ").append(frames).append(" read, ").append(measuredFrames).append(" measured, ")
+					.append(trackedFrames).append(" with a box")
+				.append("\nInit: ").append(initNanos / 1000000).append(" ms")
+				.append(String.format("\nThroughput: %.1f fps processFrame() only, %.1f fps including decoding", getProcessFps(), getWallFps()))
+				.append("\nLatencies (us):\n").append(metrics)
+				.append("\nPeak memory: heap ").append(toMB(peakHeap)).append(" MB, non heap ").append(toMB(peakNonHeap)).append(" MB, process RSS ")
+					.append(peakResident < 0 ? "n/a" : toMB(peakResident) + " MB");
+			return result.toString();
+		}
+		
+		private static long toMB(final long bytes){
+			return bytes / (1024 * 1024);
+		}
+	}
+}
@@ -0,0 +1,57 @@
+/**
+ * Copyright 2013 Dan Oprescu
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.trandi.opentld.runner;
+
+import java.io.File;
+
+import org.opencv.core.Mat;
+import org.opencv.highgui.VideoCapture;
+
+/**
+ * A video file, decoded by OpenCV (i.e. whatever codecs its native library has been built with, ffmpeg on Linux).
+ */
+public class VideoFileSource implements FrameSource {
+	private final File _file;
+	private final VideoCapture _capture;
+	
+	public VideoFileSource(final File file){
+		if(!file.isFile()){
+			throw new IllegalArgumentException("No such video file: " + file);
+		}
+		_file = file;
+		_capture = new VideoCapture(file.getPath());
+		if(!_capture.isOpened()){
+			_capture.release();
+			throw new IllegalArgumentException("Can't open video (unknown format or codec ?): " + file);
+		}
+	}
+	
+	@Override
+	public boolean read(Mat frame) {
+		return _capture.read(frame) && !frame.empty();
+	}
+	
+	@Override
+	public String getName() {
+		return _file.getPath();
+	}
+	
+	@Override
+	public void close() {
+		_capture.release();
+	}
+}
@@ -20,8 +20,10 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
+import org.opencv.core.CvType;
 import org.opencv.core.Mat;
 import org.opencv.core.Point;
+import org.opencv.core.Size;
 import org.opencv.imgproc.Imgproc;
 
 import android.util.Log;
@@ -57,6 +59,38 @@ Log.i(UtilTest.TAG, Arrays.asList(result.second).toString());
 	}
 	
 	
+	/**
+	 * The Java sub pixel patches and cross correlation have to match the OpenCV getRectSubPix + matchTemplate(TM_CCOEFF_NORMED)
+	 */
+	public void testNormCrossCorrelationSameAsOpenCV() {
+		Mat img1 = readMatFromFile("track_frame_1");
+		Mat img2 = readMatFromFile("track_frame_2");
+		
+		Imgproc.cvtColor(img1, img1, Imgproc.COLOR_RGB2GRAY);
+		Imgproc.cvtColor(img2, img2, Imgproc.COLOR_RGB2GRAY);
+		final byte[] data1 = Util.getByteArray(img1, null);
+		final byte[] data2 = Util.getByteArray(img2, null);
+		
+		final Size patchSize = new Size(10, 10);
+		final Mat patch1 = new Mat(patchSize, CvType.CV_8U);
+		final Mat patch2 = new Mat(patchSize, CvType.CV_8U);
+		final Mat res = new Mat(new Size(1, 1), CvType.CV_32F);
+		final int[] javaPatch1 = new int[100];
+		final int[] javaPatch2 = new int[100];
+		for(int i = 0; i < CURR_POINTS.length; i++){
+			final Point last = new Point(LAST_POINTS_OUT[i]);
+			final Point current = new Point(CURR_POINTS[i]);
+			Imgproc.getRectSubPix(img1, patchSize, last, patch1);
+			Imgproc.getRectSubPix(img2, patchSize, current, patch2);
+			Imgproc.matchTemplate(patch1, patch2, res, Imgproc.TM_CCOEFF_NORMED);
+			
+			LKTracker.getRectSubPix(data1, img1.cols(), img1.rows(), last, 10, 10, javaPatch1);
+			LKTracker.getRectSubPix(data2, img2.cols(), img2.rows(), current, 10, 10, javaPatch2);
+			assertEquals("Different NCC for point " + i, Util.getFloat(0, 0, res), LKTracker.ccoeffNormed(javaPatch1, javaPatch2, 100), 0.02f);
+		}
+	}
+	
+	
 	private static Point[] toPoints(double[][] coordinates){
 		final Point[] result = new Point[coordinates.length];
 		for(int i=0; i<result.length; i++){
@@ -79,10 +79,8 @@ public class TldTest extends OpenCVTestCase {
 		tld._pExample.create(patch_size, patch_size, CvType.CV_64F);
 		
 		final Grid grid = new Grid();
-		grid.bestBox = best_box;
-		grid.bbHull = best_box; // only 1 box actually
-		grid.goodBoxes.add(best_box);
-		grid.grid.add(best_box);
+		grid.add(best_box); // only 1 box actually, so it's the best, the only good one and the hull
+		grid.updateGoodBadBoxes(best_box, 1);
 		
 		final Size[] scales = new Size[]{new Size(2, 2)};
 		tld._classifier = new FerNNClassifier();